@@ -0,0 +1,318 @@
+/*
+ * #%L
+ * UniProt ID Mapping
+ * %%
+ * Copyright (C) 2024 Hugo López-Fernández
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+package org.sing_group.uniprot_id_mapping;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardOpenOption.APPEND;
+import static java.nio.file.StandardOpenOption.CREATE;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Append-only log of the remote jobs run by an {@code UniProtBatchProcessor}. It records the identifier of
+ * every submitted job and the results of every completed one, so that a restarted run reuses the results
+ * already obtained and reattaches to the jobs that were still running instead of resubmitting them.
+ *
+ * Records are tab-separated lines of four kinds: {@code JOB from to jobId ids},
+ * {@code MAP from to id mappedIds}, {@code DONE jobId} and {@code DROP jobId} (for expired jobs). Results
+ * are not kept in memory: only the position of the {@code MAP} record of each completed identifier is, and
+ * results are read back from the file when they are requested.
+ */
+public class BatchCheckpoint implements Closeable {
+    private static final String JOB = "JOB";
+    private static final String MAP = "MAP";
+    private static final String DONE = "DONE";
+    private static final String DROP = "DROP";
+    private static final long NO_RESULTS = -1;
+
+    private final Path checkpointFile;
+    private final Map<String, PendingJob> pendingJobs = new LinkedHashMap<>();
+    private final Map<String, Map<String, Long>> completedIds = new HashMap<>();
+    private BufferedWriter writer;
+    private FileChannel reader;
+    private long fileLength;
+    private boolean incompleteLastLine;
+
+    public BatchCheckpoint(Path checkpointFile) throws IOException {
+        this.checkpointFile = checkpointFile;
+        if (Files.exists(checkpointFile)) {
+            load();
+        }
+        this.writer = Files.newBufferedWriter(checkpointFile, UTF_8, CREATE, APPEND);
+        this.reader = FileChannel.open(checkpointFile, StandardOpenOption.READ);
+        if (this.incompleteLastLine) {
+            // Ends the incomplete line, so that it is not joined to the next record
+            write("");
+        }
+    }
+
+    private void load() throws IOException {
+        // MAP records are written right before the DONE record of their job, so their positions are kept
+        // until it is read. Those of jobs without a DONE record, written when a run was killed, are ignored
+        Map<String, Long> resultPositions = new HashMap<>();
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(checkpointFile), 1 << 16)) {
+            ByteArrayOutputStream lineBytes = new ByteArrayOutputStream();
+            long position = 0;
+            long lineStart = 0;
+            int b;
+            while ((b = in.read()) >= 0) {
+                position++;
+                if (b != '\n') {
+                    lineBytes.write(b);
+                    continue;
+                }
+
+                loadRecord(new String(lineBytes.toByteArray(), UTF_8), lineStart, resultPositions);
+                lineBytes.reset();
+                lineStart = position;
+            }
+            // Incomplete lines written when a run was killed are ignored
+            this.fileLength = position;
+            this.incompleteLastLine = lineStart < position;
+        }
+    }
+
+    private void loadRecord(String line, long position, Map<String, Long> resultPositions) {
+        String[] fields = stripCarriageReturn(line).split("\t", -1);
+        if (fields[0].equals(JOB) && fields.length == 5) {
+            pendingJobs.put(fields[3], new PendingJob(
+                UniProtDbFrom.valueOf(fields[1]), UniProtDbTo.valueOf(fields[2]), fields[3], split(fields[4])
+            ));
+        } else if (fields[0].equals(MAP) && fields.length == 5) {
+            resultPositions.put(pairKey(fields[1], fields[2]) + "\t" + fields[3], position);
+        } else if (fields[0].equals(DONE) && fields.length == 2) {
+            PendingJob job = pendingJobs.remove(fields[1]);
+            if (job != null) {
+                String pairKey = pairKey(job.from.name(), job.to.name());
+                Map<String, Long> pairIds = completedIds.computeIfAbsent(pairKey, k -> new HashMap<>());
+                for (String id : job.ids) {
+                    Long resultPosition = resultPositions.remove(pairKey + "\t" + id);
+                    pairIds.put(id, resultPosition == null ? NO_RESULTS : resultPosition);
+                }
+            }
+        } else if (fields[0].equals(DROP) && fields.length == 2) {
+            pendingJobs.remove(fields[1]);
+        }
+    }
+
+    public Path getCheckpointFile() {
+        return checkpointFile;
+    }
+
+    public synchronized void jobSubmitted(UniProtDbFrom from, UniProtDbTo to, String jobId, List<String> ids) {
+        pendingJobs.put(jobId, new PendingJob(from, to, jobId, new ArrayList<>(ids)));
+        write(JOB + "\t" + from.name() + "\t" + to.name() + "\t" + jobId + "\t" + String.join(",", ids));
+    }
+
+    public synchronized void jobCompleted(String jobId, Map<String, List<String>> jobResults) {
+        PendingJob job = pendingJobs.remove(jobId);
+        if (job == null) {
+            return;
+        }
+
+        String pairKey = pairKey(job.from.name(), job.to.name());
+        Map<String, Long> pairIds = completedIds.computeIfAbsent(pairKey, k -> new HashMap<>());
+        for (String id : job.ids) {
+            pairIds.put(id, NO_RESULTS);
+        }
+
+        StringBuilder records = new StringBuilder();
+        long position = this.fileLength;
+        for (Map.Entry<String, List<String>> result : jobResults.entrySet()) {
+            String record = MAP + "\t" + job.from.name() + "\t" + job.to.name() + "\t" + result.getKey() + "\t"
+                + String.join(",", result.getValue()) + "\n";
+            pairIds.put(result.getKey(), position);
+            position += record.getBytes(UTF_8).length;
+            records.append(record);
+        }
+
+        write(records.append(DONE).append('\t').append(jobId).toString());
+    }
+
+    public synchronized List<PendingJob> getPendingJobs(UniProtDbFrom from, UniProtDbTo to) {
+        List<PendingJob> toret = new ArrayList<>();
+        for (PendingJob job : pendingJobs.values()) {
+            if (job.from.equals(from) && job.to.equals(to)) {
+                toret.add(job);
+            }
+        }
+
+        return toret;
+    }
+
+    public synchronized void jobDiscarded(String jobId) {
+        if (pendingJobs.remove(jobId) != null) {
+            write(DROP + "\t" + jobId);
+        }
+    }
+
+    public synchronized boolean isCompleted(UniProtDbFrom from, UniProtDbTo to, String id) {
+        return completedIds.getOrDefault(pairKey(from.name(), to.name()), Collections.emptyMap()).containsKey(id);
+    }
+
+    /**
+     * Returns the checkpointed results of some identifiers, reading them from the checkpoint file.
+     *
+     * @param from the source database.
+     * @param to the target database.
+     * @param ids the identifiers whose results are returned.
+     * @return the mapped identifiers of each completed identifier with results. Identifiers that are not
+     *  completed or that were not mapped are not included.
+     */
+    public synchronized Map<String, List<String>> getResults(
+        UniProtDbFrom from, UniProtDbTo to, Collection<String> ids
+    ) {
+        Map<String, Long> pairIds = completedIds.getOrDefault(
+            pairKey(from.name(), to.name()), Collections.emptyMap()
+        );
+        Map<String, List<String>> toret = new HashMap<>();
+        try {
+            for (String id : ids) {
+                Long position = pairIds.get(id);
+                if (position != null && position != NO_RESULTS) {
+                    String[] fields = readRecord(position).split("\t", -1);
+                    toret.put(id, split(fields[4]));
+                }
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to read checkpoint file.", e);
+        }
+
+        return toret;
+    }
+
+    private String readRecord(long position) throws IOException {
+        ByteArrayOutputStream record = new ByteArrayOutputStream();
+        ByteBuffer buffer = ByteBuffer.allocate(256);
+        long next = position;
+        while (reader.read(buffer, next) > 0) {
+            byte[] bytes = buffer.array();
+            for (int i = 0; i < buffer.position(); i++) {
+                if (bytes[i] == '\n') {
+                    record.write(bytes, 0, i);
+                    return stripCarriageReturn(new String(record.toByteArray(), UTF_8));
+                }
+            }
+            record.write(bytes, 0, buffer.position());
+            next += buffer.position();
+            // Casts keep the calls binary compatible with Java 8, where Buffer methods are not covariant
+            ((Buffer) buffer).clear();
+        }
+
+        return stripCarriageReturn(new String(record.toByteArray(), UTF_8));
+    }
+
+    private void write(String record) {
+        try {
+            writer.write(record);
+            writer.write('\n');
+            writer.flush();
+            this.fileLength += record.getBytes(UTF_8).length + 1;
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to write checkpoint file.", e);
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        try {
+            writer.close();
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Closes and deletes the checkpoint file, usually once a run has finished successfully.
+     *
+     * @throws IOException if an I/O error occurs.
+     */
+    public synchronized void delete() throws IOException {
+        close();
+        Files.deleteIfExists(checkpointFile);
+    }
+
+    private static String pairKey(String from, String to) {
+        return from + "\t" + to;
+    }
+
+    private static String stripCarriageReturn(String line) {
+        return line.endsWith("\r") ? line.substring(0, line.length() - 1) : line;
+    }
+
+    private static List<String> split(String ids) {
+        return ids.isEmpty() ? new ArrayList<>() : new ArrayList<>(Arrays.asList(ids.split(",")));
+    }
+
+    public static class PendingJob {
+        private final UniProtDbFrom from;
+        private final UniProtDbTo to;
+        private final String jobId;
+        private final List<String> ids;
+
+        PendingJob(UniProtDbFrom from, UniProtDbTo to, String jobId, List<String> ids) {
+            this.from = from;
+            this.to = to;
+            this.jobId = jobId;
+            this.ids = ids;
+        }
+
+        public UniProtDbFrom getFrom() {
+            return from;
+        }
+
+        public UniProtDbTo getTo() {
+            return to;
+        }
+
+        public String getJobId() {
+            return jobId;
+        }
+
+        public List<String> getIds() {
+            return ids;
+        }
+    }
+}
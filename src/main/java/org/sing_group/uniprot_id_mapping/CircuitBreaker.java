@@ -0,0 +1,75 @@
+/*
+ * #%L
+ * UniProt ID Mapping
+ * %%
+ * Copyright (C) 2024 Hugo López-Fernández
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+package org.sing_group.uniprot_id_mapping;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+class CircuitBreaker {
+    private static final Logger LOGGER = LoggerFactory.getLogger(CircuitBreaker.class);
+
+    private final int failureThreshold;
+    private final long openTime;
+
+    private int consecutiveFailures;
+    private long openUntil;
+
+    CircuitBreaker(int failureThreshold, long openTime) {
+        this.failureThreshold = failureThreshold;
+        this.openTime = openTime;
+    }
+
+    public void awaitClosed() {
+        long waitTime;
+        synchronized (this) {
+            waitTime = this.openUntil - System.currentTimeMillis();
+        }
+
+        if (waitTime > 0) {
+            LOGGER.warn("Circuit breaker open after {} consecutive failures, waiting {} ms", consecutiveFailures, waitTime);
+            try {
+                Thread.sleep(waitTime);
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+
+    public synchronized void recordSuccess() {
+        this.consecutiveFailures = 0;
+        this.openUntil = 0;
+    }
+
+    public synchronized void recordFailure() {
+        this.consecutiveFailures++;
+
+        // Once the threshold is reached, every new failure (including the trial call made when the
+        // open time expires) opens the circuit again
+        if (this.consecutiveFailures >= this.failureThreshold) {
+            this.openUntil = System.currentTimeMillis() + this.openTime;
+        }
+    }
+}
@@ -0,0 +1,155 @@
+/*
+ * #%L
+ * UniProt ID Mapping
+ * %%
+ * Copyright (C) 2024 Hugo López-Fernández
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+package org.sing_group.uniprot_id_mapping;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+
+import org.apache.http.entity.AbstractHttpEntity;
+import org.apache.http.entity.ContentType;
+
+/**
+ * Form body of an ID mapping job submission that URL-encodes the identifiers directly into the request
+ * stream, so that large batches never need to be joined and encoded as a single string in memory.
+ */
+class IdMappingRequestEntity extends AbstractHttpEntity {
+    private static final byte[] ENCODED_SEPARATOR = "%2C".getBytes(StandardCharsets.US_ASCII);
+
+    private final byte[] header;
+    private final Collection<String> ids;
+    private final long contentLength;
+
+    IdMappingRequestEntity(UniProtDbFrom from, UniProtDbTo to, Collection<String> ids) {
+        this.header = ("from=" + encode(from.toString()) + "&to=" + encode(to.toString()) + "&ids=")
+            .getBytes(StandardCharsets.US_ASCII);
+        this.ids = ids;
+
+        long length = this.header.length + Math.max(0, ids.size() - 1) * ENCODED_SEPARATOR.length;
+        for (String id : ids) {
+            length += encodedLength(id);
+        }
+        this.contentLength = length;
+
+        this.setContentType(ContentType.APPLICATION_FORM_URLENCODED.getMimeType());
+    }
+
+    @Override
+    public boolean isRepeatable() {
+        return true;
+    }
+
+    @Override
+    public long getContentLength() {
+        return contentLength;
+    }
+
+    @Override
+    public InputStream getContent() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream((int) Math.min(contentLength, Integer.MAX_VALUE));
+        writeTo(out);
+
+        return new ByteArrayInputStream(out.toByteArray());
+    }
+
+    @Override
+    public void writeTo(OutputStream out) throws IOException {
+        out.write(header);
+
+        boolean first = true;
+        for (String id : ids) {
+            if (!first) {
+                out.write(ENCODED_SEPARATOR);
+            }
+            writeEncoded(id, out);
+            first = false;
+        }
+        out.flush();
+    }
+
+    @Override
+    public boolean isStreaming() {
+        return false;
+    }
+
+    private static String encode(String value) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try {
+            writeEncoded(value, out);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+
+        return new String(out.toByteArray(), StandardCharsets.US_ASCII);
+    }
+
+    private static boolean isUnreserved(int b) {
+        return (b >= 'a' && b <= 'z') || (b >= 'A' && b <= 'Z') || (b >= '0' && b <= '9')
+            || b == '.' || b == '-' || b == '_' || b == '*';
+    }
+
+    private static long encodedLength(String value) {
+        long length = 0;
+        for (byte b : toBytes(value)) {
+            length += isUnreserved(b & 0xFF) || b == ' ' ? 1 : 3;
+        }
+
+        return length;
+    }
+
+    private static void writeEncoded(String value, OutputStream out) throws IOException {
+        for (byte b : toBytes(value)) {
+            writeEncodedByte(b & 0xFF, out);
+        }
+    }
+
+    private static byte[] toBytes(String value) {
+        // Identifiers are almost always ASCII, for which the cheaper single-byte conversion is exact
+        for (int i = 0; i < value.length(); i++) {
+            if (value.charAt(i) >= 0x80) {
+                return value.getBytes(StandardCharsets.UTF_8);
+            }
+        }
+
+        return value.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private static void writeEncodedByte(int b, OutputStream out) throws IOException {
+        if (isUnreserved(b)) {
+            out.write(b);
+        } else if (b == ' ') {
+            out.write('+');
+        } else {
+            out.write('%');
+            out.write(Character.toUpperCase(Character.forDigit(b >> 4, 16)));
+            out.write(Character.toUpperCase(Character.forDigit(b & 0xF, 16)));
+        }
+    }
+}
@@ -0,0 +1,302 @@
+/*
+ * #%L
+ * UniProt ID Mapping
+ * %%
+ * Copyright (C) 2024 Hugo López-Fernández
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+package org.sing_group.uniprot_id_mapping;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.sing_group.uniprot_id_mapping.index.IdColumn;
+import org.sing_group.uniprot_id_mapping.index.IdColumnBuilder;
+
+/**
+ * Columnar mapping results: each row has a source identifier and one or more target identifiers. All the
+ * identifiers are stored contiguously as UTF-8 bytes, with offsets delimiting each of them and the targets
+ * of each row, instead of as one map entry, one list and several strings per source identifier.
+ */
+public final class IdMappingTable {
+  private final IdColumn fromIds;
+  private final int[] targetOffsets;
+  private final IdColumn toIds;
+
+  private IdMappingTable(IdColumn fromIds, int[] targetOffsets, IdColumn toIds) {
+    this.fromIds = fromIds;
+    this.targetOffsets = targetOffsets;
+    this.toIds = toIds;
+  }
+
+  public int size() {
+    return fromIds.size();
+  }
+
+  public String getFrom(int row) {
+    return fromIds.get(row);
+  }
+
+  public int getTargetCount(int row) {
+    return targetOffsets[row + 1] - targetOffsets[row];
+  }
+
+  public String getTarget(int row, int target) {
+    return toIds.get(targetOffsets[row] + target);
+  }
+
+  public List<String> getTargets(int row) {
+    List<String> targets = new ArrayList<>(getTargetCount(row));
+    for (int target = targetOffsets[row]; target < targetOffsets[row + 1]; target++) {
+      targets.add(toIds.get(target));
+    }
+
+    return targets;
+  }
+
+  public Map<String, List<String>> toMap() {
+    Map<String, List<String>> map = new HashMap<>();
+    for (int row = 0; row < size(); row++) {
+      map.computeIfAbsent(getFrom(row), from -> new ArrayList<>()).addAll(getTargets(row));
+    }
+
+    return map;
+  }
+
+  /**
+   * Returns the column of source identifiers. Together with {@link #getToIds()},
+   * {@link #getTargetStart(int)} and {@link #getTargetEnd(int)} it allows iterating the results without
+   * allocating any object, for instance comparing or writing the identifier bytes directly.
+   *
+   * @return the column of source identifiers, with one identifier per row.
+   */
+  public IdColumn getFromIds() {
+    return fromIds;
+  }
+
+  public IdColumn getToIds() {
+    return toIds;
+  }
+
+  public int getTargetStart(int row) {
+    return targetOffsets[row];
+  }
+
+  public int getTargetEnd(int row) {
+    return targetOffsets[row + 1];
+  }
+
+  /**
+   * Returns a copy of this table with the rows sorted by source identifier. The order of the targets of
+   * each row is kept.
+   *
+   * @return a sorted copy of this table.
+   */
+  public IdMappingTable sorted() {
+    Builder builder = new Builder();
+    for (int row : fromIds.sortedOrder()) {
+      builder.addRow(this, row);
+    }
+
+    return builder.build();
+  }
+
+  /**
+   * Writes the table in the same TSV format used by the UniProt REST API: a {@code From\tTo} header and one
+   * line per pair of source and target identifiers. Identifiers are written as stored, without decoding
+   * them.
+   *
+   * @param out the stream where the table is written. It is not closed.
+   * @throws IOException if an I/O error occurs.
+   */
+  public void writeTsv(OutputStream out) throws IOException {
+    writeTsv(out, true);
+  }
+
+  /**
+   * Writes the table in TSV format, optionally without the header line, so that the results of several
+   * tables can be streamed into the same output.
+   *
+   * @param out the stream where the table is written. It is not closed.
+   * @param header whether the {@code From\tTo} header is written.
+   * @throws IOException if an I/O error occurs.
+   */
+  public void writeTsv(OutputStream out, boolean header) throws IOException {
+    OutputStream buffered = out instanceof BufferedOutputStream ? out : new BufferedOutputStream(out, 1 << 16);
+    if (header) {
+      buffered.write(HEADER);
+    }
+    for (int row = 0; row < size(); row++) {
+      for (int target = targetOffsets[row]; target < targetOffsets[row + 1]; target++) {
+        fromIds.writeTo(row, buffered);
+        buffered.write('\t');
+        toIds.writeTo(target, buffered);
+        buffered.write('\n');
+      }
+    }
+    buffered.flush();
+  }
+
+  public static IdMappingTable fromMap(Map<String, List<String>> map) {
+    Builder builder = new Builder();
+    map.forEach(builder::addRow);
+
+    return builder.build();
+  }
+
+  /**
+   * Reads a table in the TSV format of the UniProt REST API, where the lines of each source identifier
+   * are usually consecutive. Extra columns are ignored.
+   *
+   * @param tsvReader the reader of the TSV content.
+   * @return the table read.
+   * @throws IOException if an I/O error occurs.
+   */
+  public static IdMappingTable readTsv(Reader tsvReader) throws IOException {
+    BufferedReader reader = tsvReader instanceof BufferedReader
+      ? (BufferedReader) tsvReader : new BufferedReader(tsvReader, 1 << 16);
+
+    Builder builder = new Builder();
+    String currentFrom = null;
+    String line;
+    while ((line = reader.readLine()) != null) {
+      int tab = line.indexOf('\t');
+      if (tab < 0 || line.startsWith("From\t")) {
+        continue;
+      }
+
+      int end = line.indexOf('\t', tab + 1);
+      if (currentFrom == null || currentFrom.length() != tab || !line.regionMatches(0, currentFrom, 0, tab)) {
+        if (currentFrom != null) {
+          builder.endRow();
+        }
+        currentFrom = line.substring(0, tab);
+        builder.beginRow(currentFrom);
+      }
+      builder.addTarget(end < 0 ? line.substring(tab + 1) : line.substring(tab + 1, end));
+    }
+    if (currentFrom != null) {
+      builder.endRow();
+    }
+
+    return builder.build();
+  }
+
+  public static IdMappingTable concat(List<IdMappingTable> tables) {
+    Builder builder = new Builder();
+    tables.forEach(builder::addAll);
+
+    return builder.build();
+  }
+
+  private static final byte[] HEADER = "From\tTo\n".getBytes(StandardCharsets.UTF_8);
+
+  public static final class Builder {
+    private final IdColumnBuilder fromIds = new IdColumnBuilder();
+    private final IdColumnBuilder toIds = new IdColumnBuilder();
+    private int[] targetOffsets = new int[1024];
+    private byte[] currentFrom;
+
+    public Builder beginRow(String from) {
+      return beginRow(IdColumn.encode(from));
+    }
+
+    public Builder beginRow(byte[] from) {
+      this.currentFrom = from;
+
+      return this;
+    }
+
+    public Builder addTarget(String to) {
+      toIds.add(to);
+
+      return this;
+    }
+
+    public Builder addTarget(IdColumn column, int index) {
+      toIds.add(column, index);
+
+      return this;
+    }
+
+    /**
+     * Ends the current row. Rows without targets are discarded, as unmapped identifiers are not part of the
+     * results.
+     *
+     * @return this builder.
+     */
+    public Builder endRow() {
+      int row = fromIds.size();
+      if (toIds.size() > targetOffsets[row]) {
+        fromIds.add(currentFrom);
+        if (row + 2 > targetOffsets.length) {
+          targetOffsets = Arrays.copyOf(targetOffsets, targetOffsets.length * 2);
+        }
+        targetOffsets[row + 1] = toIds.size();
+      }
+      this.currentFrom = null;
+
+      return this;
+    }
+
+    public Builder addRow(String from, List<String> to) {
+      beginRow(from);
+      to.forEach(this::addTarget);
+
+      return endRow();
+    }
+
+    public Builder addRow(IdMappingTable table, int row) {
+      fromIds.add(table.fromIds, row);
+      for (int target = table.targetOffsets[row]; target < table.targetOffsets[row + 1]; target++) {
+        toIds.add(table.toIds, target);
+      }
+      int newRow = fromIds.size() - 1;
+      if (newRow + 2 > targetOffsets.length) {
+        targetOffsets = Arrays.copyOf(targetOffsets, targetOffsets.length * 2);
+      }
+      targetOffsets[newRow + 1] = toIds.size();
+
+      return this;
+    }
+
+    public Builder addAll(IdMappingTable table) {
+      for (int row = 0; row < table.size(); row++) {
+        addRow(table, row);
+      }
+
+      return this;
+    }
+
+    public IdMappingTable build() {
+      return new IdMappingTable(fromIds.build(), Arrays.copyOf(targetOffsets, fromIds.size() + 1), toIds.build());
+    }
+  }
+}
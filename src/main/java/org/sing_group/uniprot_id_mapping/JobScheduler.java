@@ -0,0 +1,270 @@
+/*
+ * #%L
+ * UniProt ID Mapping
+ * %%
+ * Copyright (C) 2024 Hugo López-Fernández
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+package org.sing_group.uniprot_id_mapping;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Shares the remote job slots and the job submission rate among several tenants, such as interactive users
+ * and bulk pipelines using the same UniProt quota. Each {@link UniProtBatchProcessor} created with a
+ * scheduler acquires a permit from it before submitting a job and releases it when the job finishes.
+ * <p>
+ * Waiting jobs are granted by strict priority between tenants and by weighted fair sharing (stride
+ * scheduling) between tenants with the same priority, so that a tenant with weight 2 gets twice the jobs of
+ * a tenant with weight 1 while both have jobs waiting. Running remote jobs cannot be interrupted, so while
+ * a tenant with a higher priority is active, the batches of lower priority tenants are split into batches
+ * of at most {@code preemptionBatchSize} identifiers, releasing their slots more often.
+ */
+public class JobScheduler {
+    private static final Logger LOGGER = LoggerFactory.getLogger(JobScheduler.class);
+
+    private final int maxInFlightJobs;
+    private final long submissionInterval;
+    private final int preemptionBatchSize;
+    private final Map<Tenant, TenantQueue> queues = new HashMap<>();
+
+    private int inFlightJobs;
+    private long nextSubmissionTime;
+    private double virtualTime;
+    private long ticketCounter;
+
+    /**
+     * @param maxInFlightJobs the maximum number of remote jobs running at the same time among all tenants.
+     * @param maxJobsPerSecond the maximum number of jobs submitted per second among all tenants, or a
+     *  non-positive value for no limit.
+     * @param preemptionBatchSize the maximum number of identifiers per job of the tenants with a lower
+     *  priority than other active tenants.
+     */
+    public JobScheduler(int maxInFlightJobs, double maxJobsPerSecond, int preemptionBatchSize) {
+        this.maxInFlightJobs = Math.max(1, maxInFlightJobs);
+        this.submissionInterval = maxJobsPerSecond > 0 ? (long) (1_000_000_000L / maxJobsPerSecond) : 0;
+        this.preemptionBatchSize = Math.max(1, preemptionBatchSize);
+    }
+
+    /**
+     * Waits until a job of the tenant can be submitted.
+     *
+     * @param tenant the tenant that submits the job.
+     * @return the permit of the job, that must be closed when the job finishes.
+     */
+    public synchronized Permit acquire(Tenant tenant) {
+        TenantQueue queue = getQueue(tenant);
+        if (queue.isIdle()) {
+            // Tenants that become active do not keep the credit of the time they were idle
+            queue.pass = Math.max(queue.pass, this.virtualTime);
+        }
+
+        long ticket = ++this.ticketCounter;
+        queue.tickets.add(ticket);
+        long waitStart = System.nanoTime();
+        try {
+            while (true) {
+                if (this.inFlightJobs < this.maxInFlightJobs && nextQueue() == queue && queue.tickets.peek() == ticket) {
+                    long delay = this.nextSubmissionTime - System.nanoTime();
+                    if (delay <= 0) {
+                        break;
+                    }
+                    wait(Math.max(1, delay / 1_000_000));
+                } else {
+                    wait();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            queue.tickets.remove(ticket);
+            notifyAll();
+            throw new RuntimeException(e);
+        }
+
+        queue.tickets.poll();
+        queue.inFlightJobs++;
+        queue.grantedJobs++;
+        queue.waitTime += System.nanoTime() - waitStart;
+        this.virtualTime = queue.pass;
+        queue.pass += 1d / tenant.getWeight();
+        this.inFlightJobs++;
+        this.nextSubmissionTime = Math.max(System.nanoTime(), this.nextSubmissionTime) + this.submissionInterval;
+        LOGGER.debug("Job slot granted to tenant {} ({} jobs in flight)", tenant.getName(), this.inFlightJobs);
+        notifyAll();
+
+        return new Permit(queue);
+    }
+
+    private synchronized void release(TenantQueue queue) {
+        queue.inFlightJobs--;
+        this.inFlightJobs--;
+        notifyAll();
+    }
+
+    private TenantQueue nextQueue() {
+        TenantQueue next = null;
+        for (TenantQueue queue : this.queues.values()) {
+            if (!queue.tickets.isEmpty() && (next == null || queue.isBefore(next))) {
+                next = queue;
+            }
+        }
+
+        return next;
+    }
+
+    private TenantQueue getQueue(Tenant tenant) {
+        return this.queues.computeIfAbsent(tenant, TenantQueue::new);
+    }
+
+    /**
+     * Returns the maximum number of identifiers of the next job of a tenant, which is limited to the
+     * preemption batch size while a tenant with a higher priority has jobs waiting or running.
+     *
+     * @param tenant the tenant that submits the job.
+     * @return the maximum number of identifiers of the job.
+     */
+    public synchronized int getBatchSizeLimit(Tenant tenant) {
+        for (TenantQueue queue : this.queues.values()) {
+            if (queue.tenant.getPriority() > tenant.getPriority() && !queue.isIdle()) {
+                return this.preemptionBatchSize;
+            }
+        }
+
+        return Integer.MAX_VALUE;
+    }
+
+    public synchronized long getGrantedJobs(Tenant tenant) {
+        return getQueue(tenant).grantedJobs;
+    }
+
+    public synchronized int getWaitingJobs(Tenant tenant) {
+        return getQueue(tenant).tickets.size();
+    }
+
+    /**
+     * Returns the average time that the jobs of a tenant waited for a slot.
+     *
+     * @param tenant the tenant whose jobs are considered.
+     * @return the average wait time, in milliseconds.
+     */
+    public synchronized double getAverageWaitTime(Tenant tenant) {
+        TenantQueue queue = getQueue(tenant);
+
+        return queue.grantedJobs == 0 ? 0 : queue.waitTime / 1_000_000d / queue.grantedJobs;
+    }
+
+    /**
+     * A user of the scheduler. Tenants with a higher priority are always served first, and tenants with the
+     * same priority share the slots in proportion to their weights. Tenants are identified by their name.
+     */
+    public static final class Tenant {
+        private final String name;
+        private final int priority;
+        private final int weight;
+
+        public Tenant(String name, int priority, int weight) {
+            if (weight < 1) {
+                throw new IllegalArgumentException("Tenant weight must be positive: " + weight);
+            }
+            this.name = name;
+            this.priority = priority;
+            this.weight = weight;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public int getPriority() {
+            return priority;
+        }
+
+        public int getWeight() {
+            return weight;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return this == obj || obj instanceof Tenant && name.equals(((Tenant) obj).name);
+        }
+
+        @Override
+        public int hashCode() {
+            return name.hashCode();
+        }
+
+        @Override
+        public String toString() {
+            return name + " (priority " + priority + ", weight " + weight + ")";
+        }
+    }
+
+    public final class Permit implements AutoCloseable {
+        private final TenantQueue queue;
+        private boolean released;
+
+        private Permit(TenantQueue queue) {
+            this.queue = queue;
+        }
+
+        @Override
+        public void close() {
+            if (!this.released) {
+                this.released = true;
+                release(this.queue);
+            }
+        }
+    }
+
+    private static final class TenantQueue {
+        private final Tenant tenant;
+        private final Deque<Long> tickets = new ArrayDeque<>();
+        private double pass;
+        private int inFlightJobs;
+        private long grantedJobs;
+        private long waitTime;
+
+        TenantQueue(Tenant tenant) {
+            this.tenant = tenant;
+        }
+
+        boolean isIdle() {
+            return tickets.isEmpty() && inFlightJobs == 0;
+        }
+
+        boolean isBefore(TenantQueue other) {
+            if (tenant.getPriority() != other.tenant.getPriority()) {
+                return tenant.getPriority() > other.tenant.getPriority();
+            }
+            if (pass != other.pass) {
+                return pass < other.pass;
+            }
+
+            return tickets.peek() < other.tickets.peek();
+        }
+    }
+}
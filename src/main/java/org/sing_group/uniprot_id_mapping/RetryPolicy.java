@@ -0,0 +1,91 @@
+/*
+ * #%L
+ * UniProt ID Mapping
+ * %%
+ * Copyright (C) 2024 Hugo López-Fernández
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+package org.sing_group.uniprot_id_mapping;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Configuration of the retries of transient remote failures (I/O errors, HTTP 5xx and 429 responses)
+ * and of the circuit breaker that pauses all remote calls after too many consecutive failures.
+ */
+public class RetryPolicy {
+    public static final RetryPolicy DEFAULT = new RetryPolicy(5, 2_000, 120_000, 10, 300_000);
+    public static final RetryPolicy NONE = new RetryPolicy(1, 0, 0, Integer.MAX_VALUE, 0);
+
+    private final int maxAttempts;
+    private final long initialBackoff;
+    private final long maxBackoff;
+    private final int circuitBreakerThreshold;
+    private final long circuitBreakerOpenTime;
+
+    /**
+     * @param maxAttempts the maximum number of attempts of each remote call.
+     * @param initialBackoff the time, in milliseconds, to wait before the first retry. It doubles in each retry.
+     * @param maxBackoff the maximum time, in milliseconds, to wait between retries.
+     * @param circuitBreakerThreshold the number of consecutive failures that opens the circuit breaker.
+     * @param circuitBreakerOpenTime the time, in milliseconds, the circuit breaker stays open before a new
+     *  call is allowed.
+     */
+    public RetryPolicy(
+        int maxAttempts, long initialBackoff, long maxBackoff, int circuitBreakerThreshold, long circuitBreakerOpenTime
+    ) {
+        if (maxAttempts < 1) {
+            throw new IllegalArgumentException("maxAttempts must be greater than zero");
+        }
+        this.maxAttempts = maxAttempts;
+        this.initialBackoff = initialBackoff;
+        this.maxBackoff = maxBackoff;
+        this.circuitBreakerThreshold = circuitBreakerThreshold;
+        this.circuitBreakerOpenTime = circuitBreakerOpenTime;
+    }
+
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    public long getInitialBackoff() {
+        return initialBackoff;
+    }
+
+    public long getMaxBackoff() {
+        return maxBackoff;
+    }
+
+    public int getCircuitBreakerThreshold() {
+        return circuitBreakerThreshold;
+    }
+
+    public long getCircuitBreakerOpenTime() {
+        return circuitBreakerOpenTime;
+    }
+
+    public long getBackoff(int attempt) {
+        long backoff = Math.min(this.maxBackoff, this.initialBackoff << Math.min(attempt - 1, 30));
+
+        // Jitter avoids synchronized retries from concurrent jobs
+        return backoff / 2 + ThreadLocalRandom.current().nextLong(backoff / 2 + 1);
+    }
+}
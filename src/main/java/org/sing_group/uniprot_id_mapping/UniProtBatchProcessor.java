@@ -27,11 +27,20 @@ package org.sing_group.uniprot_id_mapping;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
 
 import org.sing_group.uniprot_id_mapping.cache.IdCache;
+import org.sing_group.uniprot_id_mapping.cache.PairedIdCache;
 import org.sing_group.uniprot_id_mapping.cache.PersistentIdCache;
 import org.sing_group.uniprot_id_mapping.cache.VolatileIdCache;
 import org.slf4j.Logger;
@@ -40,17 +49,32 @@ import org.slf4j.LoggerFactory;
 public class UniProtBatchProcessor implements UniProtIdMapper {
     private static final Logger LOGGER = LoggerFactory.getLogger(UniProtBatchProcessor.class);
     private static final int DEFAULT_BATCH_SIZE = 100;
+    private static final long TARGET_JOB_TIME = 60_000;
+
+    public static final long DEFAULT_JOB_DELAY = 1000;
+
+    public static final int MAX_IDS_PER_JOB = 100_000;
 
     private UniProtClient client;
     private IdCache cache;
-    private int batchSize;
+    private int minBatchSize;
+    private int maxBatchSize;
+    private volatile int batchSize;
+    private int maxInFlightJobs;
+    private RetryPolicy retryPolicy;
+    private CircuitBreaker circuitBreaker;
+    private BatchCheckpoint checkpoint;
+    private JobScheduler scheduler;
+    private JobScheduler.Tenant tenant;
+    private volatile long jobDelay = DEFAULT_JOB_DELAY;
+    private volatile long targetJobTime = TARGET_JOB_TIME;
 
     public UniProtBatchProcessor() {
-        this(DEFAULT_BATCH_SIZE, new UniProtClient(), new VolatileIdCache());
+        this(DEFAULT_BATCH_SIZE, new UniProtClient(), new PairedIdCache((from, to) -> new VolatileIdCache()));
     }
 
     public UniProtBatchProcessor(int batchSize) {
-        this(batchSize, new UniProtClient(), new VolatileIdCache());
+        this(batchSize, new UniProtClient(), new PairedIdCache((from, to) -> new VolatileIdCache()));
     }
 
     public UniProtBatchProcessor(IdCache cache) {
@@ -58,61 +82,524 @@ public class UniProtBatchProcessor implements UniProtIdMapper {
     }
 
     public UniProtBatchProcessor(int batchSize, UniProtClient client, IdCache cache) {
-        this.batchSize = batchSize;
+        this(batchSize, batchSize, client, cache);
+    }
+
+    /**
+     * Creates a batch processor whose batch size adapts to the observed job latency: it starts with
+     * {@code batchSize} identifiers per job and doubles them while jobs finish quickly, up to
+     * {@code maxBatchSize}, halving them again when jobs become slow. Batches rejected by the server
+     * for having too many identifiers are split automatically and the maximum is lowered accordingly.
+     *
+     * @param batchSize the initial (and minimum) number of identifiers per job.
+     * @param maxBatchSize the maximum number of identifiers per job, capped at {@link #MAX_IDS_PER_JOB}.
+     * @param client the {@code UniProtClient} used to run the jobs.
+     * @param cache the cache used to avoid repeating queries.
+     */
+    public UniProtBatchProcessor(int batchSize, int maxBatchSize, UniProtClient client, IdCache cache) {
+        this(batchSize, maxBatchSize, client, cache, RetryPolicy.DEFAULT, null);
+    }
+
+    /**
+     * Creates a batch processor that retries transient remote failures according to {@code retryPolicy} and,
+     * if a {@code checkpoint} is given, records every job in it so that an interrupted run can be resumed by
+     * creating a new processor with the same checkpoint and calling {@code mapIds} again with the same input.
+     *
+     * @param batchSize the initial (and minimum) number of identifiers per job.
+     * @param maxBatchSize the maximum number of identifiers per job, capped at {@link #MAX_IDS_PER_JOB}.
+     * @param client the {@code UniProtClient} used to run the jobs.
+     * @param cache the cache used to avoid repeating queries.
+     * @param retryPolicy the retry and circuit breaker configuration.
+     * @param checkpoint the checkpoint where jobs are recorded, or {@code null} to disable checkpointing.
+     */
+    public UniProtBatchProcessor(
+        int batchSize, int maxBatchSize, UniProtClient client, IdCache cache, RetryPolicy retryPolicy,
+        BatchCheckpoint checkpoint
+    ) {
+        this(batchSize, maxBatchSize, 1, client, cache, retryPolicy, checkpoint);
+    }
+
+    /**
+     * Creates a batch processor that runs up to {@code maxInFlightJobs} remote jobs concurrently. Each job
+     * runs on its own virtual thread on JDK 21 or newer, or on a pool of platform threads otherwise (see
+     * {@link JobExecutors}). With a single job in flight, batches are run sequentially on the calling thread.
+     * Note that the cache must be thread-safe when several jobs run concurrently.
+     *
+     * @param batchSize the initial (and minimum) number of identifiers per job.
+     * @param maxBatchSize the maximum number of identifiers per job, capped at {@link #MAX_IDS_PER_JOB}.
+     * @param maxInFlightJobs the maximum number of remote jobs running at the same time.
+     * @param client the {@code UniProtClient} used to run the jobs.
+     * @param cache the cache used to avoid repeating queries.
+     * @param retryPolicy the retry and circuit breaker configuration.
+     * @param checkpoint the checkpoint where jobs are recorded, or {@code null} to disable checkpointing.
+     */
+    public UniProtBatchProcessor(
+        int batchSize, int maxBatchSize, int maxInFlightJobs, UniProtClient client, IdCache cache,
+        RetryPolicy retryPolicy, BatchCheckpoint checkpoint
+    ) {
+        this(batchSize, maxBatchSize, maxInFlightJobs, client, cache, retryPolicy, checkpoint, null, null);
+    }
+
+    /**
+     * Creates a batch processor whose jobs are scheduled by a {@link JobScheduler} shared with the batch
+     * processors of other tenants. Each job waits for a permit of the scheduler before being submitted, and
+     * its batch is split while tenants with a higher priority are active.
+     *
+     * @param batchSize the initial (and minimum) number of identifiers per job.
+     * @param maxBatchSize the maximum number of identifiers per job, capped at {@link #MAX_IDS_PER_JOB}.
+     * @param maxInFlightJobs the maximum number of remote jobs of this processor running at the same time.
+     * @param client the {@code UniProtClient} used to run the jobs.
+     * @param cache the cache used to avoid repeating queries.
+     * @param retryPolicy the retry and circuit breaker configuration.
+     * @param checkpoint the checkpoint where jobs are recorded, or {@code null} to disable checkpointing.
+     * @param scheduler the scheduler of the jobs, or {@code null} to submit them without waiting.
+     * @param tenant the tenant on whose behalf the jobs are submitted.
+     */
+    public UniProtBatchProcessor(
+        int batchSize, int maxBatchSize, int maxInFlightJobs, UniProtClient client, IdCache cache,
+        RetryPolicy retryPolicy, BatchCheckpoint checkpoint, JobScheduler scheduler, JobScheduler.Tenant tenant
+    ) {
+        if (scheduler != null && tenant == null) {
+            throw new IllegalArgumentException("A tenant is required to schedule jobs");
+        }
+        this.maxInFlightJobs = Math.max(1, maxInFlightJobs);
+        this.minBatchSize = Math.min(batchSize, MAX_IDS_PER_JOB);
+        this.maxBatchSize = Math.max(this.minBatchSize, Math.min(maxBatchSize, MAX_IDS_PER_JOB));
+        this.batchSize = this.minBatchSize;
         this.client = client;
         this.cache = cache;
+        this.retryPolicy = retryPolicy;
+        this.circuitBreaker = new CircuitBreaker(
+            retryPolicy.getCircuitBreakerThreshold(), retryPolicy.getCircuitBreakerOpenTime()
+        );
+        this.checkpoint = checkpoint;
+        this.scheduler = scheduler;
+        this.tenant = tenant;
+    }
+
+    /**
+     * Sets the pause after each finished job, which spaces out the requests sent to UniProt.
+     *
+     * @param jobDelay the pause in milliseconds, or 0 to disable it. By default, {@link #DEFAULT_JOB_DELAY}.
+     */
+    public void setJobDelay(long jobDelay) {
+        this.jobDelay = Math.max(0, jobDelay);
+    }
+
+    public long getJobDelay() {
+        return jobDelay;
+    }
+
+    /**
+     * Returns the current number of identifiers per job, which adapts to the time taken by the jobs.
+     *
+     * @return the current number of identifiers per job.
+     */
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    void setTargetJobTime(long targetJobTime) {
+        this.targetJobTime = targetJobTime;
     }
 
     public Map<String, List<String>> mapIds(UniProtDbFrom from, UniProtDbTo to, List<String> ids) {
-        int batchCounter = 1;
-        List<String> batch = new ArrayList<>();
-        Map<String, List<String>> allResults = new HashMap<>();
-        for (String id : ids) {
-            if (cache.getFromCache(id) == null) {
-                batch.add(id);
-                if (batch.size() == this.batchSize) {
-                    LOGGER.debug("Processing batch {} ...", batchCounter++);
-                    try {
-                        allResults.putAll(processBatch(from, to, batch));
-                    } catch (IOException e) {
-                        throw new RuntimeException(e);
+        return mapIds(from, to, ids, new ConcurrentHashMap<>(), true);
+    }
+
+    /**
+     * Maps the identifiers to several target databases. The cache is checked for all the targets in a
+     * single pass over the identifiers, and then the jobs of each target run concurrently, each of them
+     * with up to {@code maxInFlightJobs} jobs in flight. The cache must be thread-safe and, with several
+     * targets, keep the mappings of each pair of databases apart, like a {@link PairedIdCache}.
+     *
+     * @throws IllegalArgumentException if there are several targets and the cache does not keep the mappings
+     *  of each pair of databases apart.
+     */
+    @Override
+    public Map<UniProtDbTo, Map<String, List<String>>> mapIds(
+        UniProtDbFrom from, Set<UniProtDbTo> to, List<String> ids
+    ) {
+        if (to.size() > 1 && !cache.keepsPairsApart()) {
+            throw new IllegalArgumentException(
+                "Mapping to several target databases requires a cache that keeps each pair of databases apart"
+            );
+        }
+
+        Map<UniProtDbTo, Map<String, List<String>>> allResults = new EnumMap<>(UniProtDbTo.class);
+        Map<UniProtDbTo, List<String>> uncachedIds = new EnumMap<>(UniProtDbTo.class);
+        for (UniProtDbTo target : to) {
+            allResults.put(target, new ConcurrentHashMap<>());
+            uncachedIds.put(target, new ArrayList<>());
+        }
+
+        for (int start = 0; start < ids.size(); start += this.batchSize) {
+            List<String> chunk = ids.subList(start, Math.min(ids.size(), start + this.batchSize));
+            for (UniProtDbTo target : to) {
+                Map<String, List<String>> cached = cache.getAllFromCache(from, target, chunk);
+                allResults.get(target).putAll(cached);
+                for (String id : chunk) {
+                    if (!cached.containsKey(id)) {
+                        uncachedIds.get(target).add(id);
                     }
-                    batch.clear();
                 }
-            } else {
-                allResults.put(id, cache.getFromCache(id));
             }
         }
 
-        if (!batch.isEmpty()) {
-            LOGGER.debug("Processing batch {} ...", batchCounter++);
+        ExecutorService executor = JobExecutors.newJobExecutor(to.size());
+        try {
+            List<Future<?>> targets = new ArrayList<>();
+            uncachedIds.forEach((target, targetIds) -> {
+                if (!targetIds.isEmpty() || this.checkpoint != null) {
+                    targets.add(executor.submit(
+                        () -> mapIds(from, target, targetIds, allResults.get(target), false)
+                    ));
+                }
+            });
+
+            for (Future<?> target : targets) {
+                try {
+                    target.get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new RuntimeException(e);
+                } catch (ExecutionException e) {
+                    throw e.getCause() instanceof RuntimeException
+                        ? (RuntimeException) e.getCause() : new RuntimeException(e.getCause());
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        return allResults;
+    }
+
+    private Map<String, List<String>> mapIds(
+        UniProtDbFrom from, UniProtDbTo to, List<String> ids, Map<String, List<String>> allResults,
+        boolean checkCache
+    ) {
+        BatchRunner runner = new BatchRunner(from, to, allResults);
+        try {
+            if (this.checkpoint != null) {
+                // Only the checkpointed results of the requested identifiers are merged, and the
+                // identifiers of expired jobs are submitted again only if they are requested
+                resumePendingJobs(from, to);
+                allResults.putAll(this.checkpoint.getResults(from, to, ids));
+            }
+
+            // Cache lookups are grouped, so that caches backed by shared stores can answer them at once
+            List<String> candidates = new ArrayList<>();
+            for (String id : ids) {
+                if (this.checkpoint != null && this.checkpoint.isCompleted(from, to, id)) {
+                    continue;
+                }
+
+                candidates.add(id);
+                if (candidates.size() >= this.batchSize) {
+                    runner.addAll(candidates, checkCache);
+                    candidates = new ArrayList<>();
+                }
+            }
+
+            runner.addAll(candidates, checkCache);
+            runner.flush();
+            runner.awaitAll();
+        } catch (IOException | RuntimeException e) {
+            runner.cancelAll();
+            throw new UniProtBatchException("Batch mapping aborted at batch " + runner.batchCounter, e, allResults);
+        } finally {
+            runner.shutdown();
+        }
+
+        return allResults;
+    }
+
+    private class BatchRunner {
+        private final UniProtDbFrom from;
+        private final UniProtDbTo to;
+        private final Map<String, List<String>> allResults;
+        private final ExecutorService executor;
+        private final Semaphore inFlightJobs;
+        private final List<Future<?>> runningBatches = new ArrayList<>();
+        private List<String> batch = new ArrayList<>();
+        private int batchCounter;
+
+        BatchRunner(UniProtDbFrom from, UniProtDbTo to, Map<String, List<String>> allResults) {
+            this.from = from;
+            this.to = to;
+            this.allResults = allResults;
+            this.executor = maxInFlightJobs > 1 ? JobExecutors.newJobExecutor(maxInFlightJobs) : null;
+            this.inFlightJobs = new Semaphore(maxInFlightJobs);
+        }
+
+        void addAll(List<String> ids, boolean checkCache) throws IOException {
+            Map<String, List<String>> cached = checkCache
+                ? cache.getAllFromCache(from, to, ids) : Collections.emptyMap();
+            this.allResults.putAll(cached);
+            for (String id : ids) {
+                if (!cached.containsKey(id)) {
+                    this.batch.add(id);
+                    if (this.batch.size() >= batchSize) {
+                        flush();
+                    }
+                }
+            }
+        }
+
+        void flush() throws IOException {
+            if (!this.batch.isEmpty()) {
+                List<String> fullBatch = this.batch;
+                this.batch = new ArrayList<>();
+                run(fullBatch);
+            }
+        }
+
+        void run(List<String> batch) throws IOException {
+            int batchNumber = ++this.batchCounter;
+            LOGGER.debug("Processing batch {} ({} identifiers) ...", batchNumber, batch.size());
+            if (this.executor == null) {
+                this.allResults.putAll(processBatch(from, to, batch));
+                return;
+            }
+
             try {
-                allResults.putAll(processBatch(from, to, batch));
-            } catch (IOException e) {
+                this.inFlightJobs.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
                 throw new RuntimeException(e);
             }
+            checkCompletedBatches();
+
+            this.runningBatches.add(this.executor.submit(() -> {
+                try {
+                    this.allResults.putAll(processBatch(from, to, batch));
+                } finally {
+                    this.inFlightJobs.release();
+                }
+
+                return null;
+            }));
+        }
+
+        private void checkCompletedBatches() throws IOException {
+            // Stops submitting new batches as soon as one of the running ones has failed
+            for (Future<?> batch : this.runningBatches) {
+                if (batch.isDone()) {
+                    getBatch(batch);
+                }
+            }
+            this.runningBatches.removeIf(Future::isDone);
         }
 
-        return allResults;
+        void awaitAll() throws IOException {
+            for (Future<?> batch : this.runningBatches) {
+                getBatch(batch);
+            }
+        }
+
+        private void getBatch(Future<?> batch) throws IOException {
+            try {
+                batch.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException(e);
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof IOException) {
+                    throw (IOException) e.getCause();
+                } else if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                } else {
+                    throw new RuntimeException(e.getCause());
+                }
+            }
+        }
+
+        void cancelAll() {
+            this.runningBatches.forEach(batch -> batch.cancel(true));
+        }
+
+        void shutdown() {
+            if (this.executor != null) {
+                this.executor.shutdownNow();
+            }
+        }
+    }
+
+    private void resumePendingJobs(UniProtDbFrom from, UniProtDbTo to) throws IOException {
+        for (BatchCheckpoint.PendingJob pendingJob : this.checkpoint.getPendingJobs(from, to)) {
+            LOGGER.info("Reattaching to job {} ({} identifiers)", pendingJob.getJobId(), pendingJob.getIds().size());
+            UniProtJob job = null;
+            try {
+                job = withRetry(() -> client.getJob(pendingJob.getJobId()));
+            } catch (UniProtClientException e) {
+                LOGGER.warn("Job {} is no longer available: {}", pendingJob.getJobId(), e.getMessage());
+            }
+
+            if (job != null && job.getStatus().equals(JobStatus.FINISHED)) {
+                processJobResults(from, to, job);
+            } else {
+                this.checkpoint.jobDiscarded(pendingJob.getJobId());
+            }
+        }
     }
 
     private Map<String, List<String>> processBatch(UniProtDbFrom from, UniProtDbTo to, List<String> batch) throws IOException {
-        UniProtJob job = client.mapIds(from, to, batch);
-        Map<String, List<String>> results;
-        if (job.getStatus().equals(JobStatus.FINISHED)) {
-            results = job.getResults();
-            results.forEach((id, mappedIds) -> cache.addToCache(id, mappedIds));
+        if (this.scheduler != null) {
+            int batchSizeLimit = this.scheduler.getBatchSizeLimit(this.tenant);
+            if (batch.size() > batchSizeLimit) {
+                return preemptBatch(from, to, batch, batchSizeLimit);
+            }
+        }
+
+        try {
+            if (this.scheduler == null) {
+                return runJob(from, to, batch);
+            }
+            JobScheduler.Permit permit = this.scheduler.acquire(this.tenant);
             try {
-                Thread.sleep(1000);
+                return runJob(from, to, batch);
+            } finally {
+                permit.close();
+            }
+        } catch (UniProtClientException e) {
+            if (e.isTooManyIds() && batch.size() > 1) {
+                return splitBatch(from, to, batch);
+            }
+            throw e;
+        }
+    }
+
+    private Map<String, List<String>> runJob(UniProtDbFrom from, UniProtDbTo to, List<String> batch) throws IOException {
+        long start = System.currentTimeMillis();
+        String jobId = withRetry(() -> client.submitIdMappingRequest(from, to, batch));
+        LOGGER.debug("Submitted job ID: {}", jobId);
+        if (this.checkpoint != null) {
+            this.checkpoint.jobSubmitted(from, to, jobId, batch);
+        }
+
+        // Transient failures while waiting for the job reattach to it instead of submitting it again
+        UniProtJob job = withRetry(() -> client.getJob(jobId));
+        adaptBatchSize(batch.size(), System.currentTimeMillis() - start);
+
+        // A job that did not finish has no results, but that does not mean that its identifiers are not mapped
+        if (!job.getStatus().equals(JobStatus.FINISHED)) {
+            if (this.checkpoint != null) {
+                this.checkpoint.jobDiscarded(jobId);
+            }
+            throw new UniProtJobFailedException(jobId, job.getStatus());
+        }
+
+        return processJobResults(from, to, job);
+    }
+
+    private Map<String, List<String>> processJobResults(UniProtDbFrom from, UniProtDbTo to, UniProtJob job) {
+        Map<String, List<String>> results = job.getResults();
+        results.forEach((id, mappedIds) -> cache.addToCache(from, to, id, mappedIds));
+        if (this.checkpoint != null) {
+            this.checkpoint.jobCompleted(job.getJobId(), results);
+        }
+        if (this.jobDelay > 0) {
+            try {
+                Thread.sleep(this.jobDelay);
             } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
                 throw new RuntimeException(e);
             }
-        } else {
-            results = new HashMap<>();
         }
+
+        return results;
+    }
+
+    private <T> T withRetry(RemoteCall<T> call) throws IOException {
+        for (int attempt = 1; ; attempt++) {
+            this.circuitBreaker.awaitClosed();
+            try {
+                T result = call.call();
+                this.circuitBreaker.recordSuccess();
+
+                return result;
+            } catch (IOException | UniProtClientException e) {
+                if (e instanceof UniProtClientException && !((UniProtClientException) e).isTransient()) {
+                    throw e;
+                }
+
+                this.circuitBreaker.recordFailure();
+                if (attempt >= this.retryPolicy.getMaxAttempts()) {
+                    throw e;
+                }
+
+                long backoff = this.retryPolicy.getBackoff(attempt);
+                LOGGER.warn("Remote call failed (attempt {}): {}; retrying in {} ms", attempt, e.getMessage(), backoff);
+                try {
+                    Thread.sleep(backoff);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    throw new RuntimeException(ie);
+                }
+            }
+        }
+    }
+
+    @FunctionalInterface
+    private interface RemoteCall<T> {
+        T call() throws IOException;
+    }
+
+    private Map<String, List<String>> splitBatch(UniProtDbFrom from, UniProtDbTo to, List<String> batch) throws IOException {
+        int half = batch.size() / 2;
+        lowerMaxBatchSize(half);
+        LOGGER.warn("Batch of {} identifiers rejected by the server, splitting it in two", batch.size());
+
+        Map<String, List<String>> results = new HashMap<>();
+        results.putAll(processBatch(from, to, new ArrayList<>(batch.subList(0, half))));
+        results.putAll(processBatch(from, to, new ArrayList<>(batch.subList(half, batch.size()))));
+
+        return results;
+    }
+
+    private Map<String, List<String>> preemptBatch(
+        UniProtDbFrom from, UniProtDbTo to, List<String> batch, int batchSizeLimit
+    ) throws IOException {
+        LOGGER.debug(
+            "Batch of {} identifiers of tenant {} split in batches of {} for tenants with a higher priority",
+            batch.size(), this.tenant.getName(), batchSizeLimit
+        );
+
+        // Each part is scheduled on its own, so that higher priority jobs can be granted between them
+        Map<String, List<String>> results = new HashMap<>();
+        for (int start = 0; start < batch.size(); start += batchSizeLimit) {
+            List<String> part = batch.subList(start, Math.min(batch.size(), start + batchSizeLimit));
+            results.putAll(processBatch(from, to, new ArrayList<>(part)));
+        }
+
         return results;
     }
 
+    private synchronized void lowerMaxBatchSize(int newMaxBatchSize) {
+        this.maxBatchSize = Math.max(1, Math.min(this.maxBatchSize, newMaxBatchSize));
+        this.minBatchSize = Math.min(this.minBatchSize, this.maxBatchSize);
+        this.batchSize = Math.min(this.batchSize, this.maxBatchSize);
+    }
+
+    private synchronized void adaptBatchSize(int jobSize, long jobTime) {
+        if (this.minBatchSize == this.maxBatchSize || jobSize < this.batchSize) {
+            return;
+        }
+
+        int newBatchSize = this.batchSize;
+        if (jobTime < this.targetJobTime / 2) {
+            newBatchSize = Math.min(this.maxBatchSize, this.batchSize * 2);
+        } else if (jobTime > this.targetJobTime) {
+            newBatchSize = Math.max(this.minBatchSize, this.batchSize / 2);
+        }
+
+        if (newBatchSize != this.batchSize) {
+            LOGGER.debug("Job of {} identifiers took {} ms, batch size changed to {}", jobSize, jobTime, newBatchSize);
+            this.batchSize = newBatchSize;
+        }
+    }
+
     public static void main(String[] args) {
         IdCache cache = new PersistentIdCache("/tmp/cache.txt");
         cache.addToCache("P92177", "12345", "67890");
@@ -27,22 +27,35 @@ package org.sing_group.uniprot_id_mapping;
 
 import static java.util.Arrays.asList;
 
+import java.io.BufferedReader;
 import java.io.IOException;
-import java.net.URLEncoder;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
 import org.apache.http.HttpResponse;
 import org.apache.http.client.HttpClient;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpPost;
-import org.apache.http.entity.StringEntity;
+import org.apache.http.entity.ContentType;
 import org.apache.http.impl.client.HttpClientBuilder;
-import org.apache.http.impl.client.HttpClients;
 import org.apache.http.util.EntityUtils;
 import org.json.JSONArray;
 import org.json.JSONException;
@@ -52,16 +65,83 @@ import org.slf4j.LoggerFactory;
 
 public class UniProtClient {
     private static final Logger LOGGER = LoggerFactory.getLogger(UniProtClient.class);
-    private static final String API_URL = "https://rest.uniprot.org";
+    public static final String API_URL = "https://rest.uniprot.org";
+    private static final Pattern NEXT_LINK_PATTERN = Pattern.compile("<([^>]+)>\\s*;\\s*rel=\"next\"");
+    public static final RetryPolicy DEFAULT_PAGE_RETRY_POLICY = new RetryPolicy(5, 1_000, 30_000, Integer.MAX_VALUE, 0);
+    private static final int MAX_CONNECTIONS = 200;
 
+    private String apiUrl;
     private int pollingWaitTime;
+    private int resultsPageSize;
+    private ResultsFormat resultsFormat;
+    private volatile RetryPolicy pageRetryPolicy = DEFAULT_PAGE_RETRY_POLICY;
+    private HttpClient httpClient;
+    private HttpClient statusHttpClient;
 
     public UniProtClient() {
         this(5000);
     }
 
     public UniProtClient(int pollingWaitTime) {
+        this(pollingWaitTime, 0);
+    }
+
+    /**
+     * @param pollingWaitTime the time, in milliseconds, to wait between job status checks.
+     * @param resultsPageSize the number of results requested per page. When it is greater than zero,
+     *  results are retrieved from the paginated endpoint instead of the single stream endpoint.
+     */
+    public UniProtClient(int pollingWaitTime, int resultsPageSize) {
+        this(pollingWaitTime, resultsPageSize, ResultsFormat.JSON);
+    }
+
+    /**
+     * @param pollingWaitTime the time, in milliseconds, to wait between job status checks.
+     * @param resultsPageSize the number of results requested per page, or zero to use the stream endpoint.
+     * @param resultsFormat the format in which results are requested. {@code TSV} is much more compact
+     *  than {@code JSON} and it is parsed line by line as it is received.
+     */
+    public UniProtClient(int pollingWaitTime, int resultsPageSize, ResultsFormat resultsFormat) {
+        this(API_URL, pollingWaitTime, resultsPageSize, resultsFormat);
+    }
+
+    /**
+     * @param apiUrl the base URL of the UniProt REST API, such as {@link #API_URL} or that of a mirror.
+     * @param pollingWaitTime the time, in milliseconds, to wait between job status checks.
+     * @param resultsPageSize the number of results requested per page, or zero to use the stream endpoint.
+     * @param resultsFormat the format in which results are requested.
+     */
+    public UniProtClient(String apiUrl, int pollingWaitTime, int resultsPageSize, ResultsFormat resultsFormat) {
+        this.apiUrl = apiUrl.endsWith("/") ? apiUrl.substring(0, apiUrl.length() - 1) : apiUrl;
         this.pollingWaitTime = pollingWaitTime;
+        this.resultsPageSize = resultsPageSize;
+        this.resultsFormat = resultsFormat;
+        // The default builder negotiates gzip/deflate transfer encoding and decompresses responses transparently
+        this.httpClient = HttpClientBuilder.create()
+            .setMaxConnPerRoute(MAX_CONNECTIONS)
+            .setMaxConnTotal(MAX_CONNECTIONS)
+            .build();
+        this.statusHttpClient = HttpClientBuilder.create()
+            .setMaxConnPerRoute(MAX_CONNECTIONS)
+            .setMaxConnTotal(MAX_CONNECTIONS)
+            // Disable automatic redirection to the results page when finished to be able to check its status
+            .disableRedirectHandling()
+            .build();
+    }
+
+    /**
+     * Sets how failed pages of paginated results are retried. Only the maximum number of attempts and the
+     * backoff of the policy are used, so that the wait between retries is independent of the job polling
+     * time and bounded by the maximum backoff.
+     *
+     * @param pageRetryPolicy the retry policy of results pages.
+     */
+    public void setPageRetryPolicy(RetryPolicy pageRetryPolicy) {
+        this.pageRetryPolicy = pageRetryPolicy;
+    }
+
+    public RetryPolicy getPageRetryPolicy() {
+        return pageRetryPolicy;
     }
 
     public UniProtJob mapIds(UniProtDbFrom from, UniProtDbTo to, String...ids) throws IOException {
@@ -71,6 +151,19 @@ public class UniProtClient {
     public UniProtJob mapIds(UniProtDbFrom from, UniProtDbTo to, List<String> ids) throws IOException {
         String jobId = submitIdMappingRequest(from, to, ids);
         LOGGER.debug("Submitted job ID: {}", jobId);
+
+        return getJob(jobId);
+    }
+
+    /**
+     * Waits for a previously submitted job to finish and retrieves its results, which allows reattaching
+     * to jobs that are still running on the server.
+     *
+     * @param jobId the job identifier.
+     * @return the job with its final status and, if it finished, its results.
+     * @throws IOException if an I/O error occurs.
+     */
+    public UniProtJob getJob(String jobId) throws IOException {
         JobStatus status = checkJobStatus(jobId);
         Map<String, List<String>> results = new HashMap<>();
         if (status.equals(JobStatus.FINISHED)) {
@@ -80,19 +173,13 @@ public class UniProtClient {
         return new UniProtJob(jobId, status, results);
     }
 
-    private String submitIdMappingRequest(UniProtDbFrom from, UniProtDbTo to, List<String> ids) throws IOException {
+    public String submitIdMappingRequest(UniProtDbFrom from, UniProtDbTo to, List<String> ids) throws IOException {
         Set<String> setIds = new HashSet<>(ids);
 
-        HttpClient client = HttpClients.createDefault();
-        HttpPost post = new HttpPost(API_URL + "/idmapping/run");
-        String body = String.format("from=%s&to=%s&ids=%s",
-                                    URLEncoder.encode(from.toString(), "UTF-8"),
-                                    URLEncoder.encode(to.toString(), "UTF-8"),
-                                    URLEncoder.encode(String.join(",", setIds), "UTF-8"));
-        post.setEntity(new StringEntity(body));
-        post.setHeader("Content-Type", "application/x-www-form-urlencoded");
+        HttpPost post = new HttpPost(this.apiUrl + "/idmapping/run");
+        post.setEntity(new IdMappingRequestEntity(from, to, setIds));
 
-        HttpResponse response = client.execute(post);
+        HttpResponse response = this.httpClient.execute(post);
         String responseString = EntityUtils.toString(response.getEntity());
         if (response.getStatusLine().getStatusCode() == 200) {
             try {
@@ -102,19 +189,18 @@ public class UniProtClient {
                 throw new RuntimeException("Failed to parse JSON response: " + responseString, e);
             }
         } else {
-            throw new RuntimeException("Failed to submit ID mapping: " + responseString);
+            throw new UniProtClientException(
+                "Failed to submit ID mapping: " + responseString, response.getStatusLine().getStatusCode(),
+                UniProtClientException.parseErrorMessages(responseString)
+            );
         }
     }
 
     public JobStatus checkJobStatus(String jobId) throws IOException {
-        HttpClient client = HttpClientBuilder.create()
-            // Disable automatic redirection to the results page when finished to be able to check its status
-            .disableRedirectHandling()
-            .build();
-        HttpGet get = new HttpGet(API_URL + "/idmapping/status/" + jobId);
+        HttpGet get = new HttpGet(this.apiUrl + "/idmapping/status/" + jobId);
 
         while (true) {
-            HttpResponse response = client.execute(get);
+            HttpResponse response = this.statusHttpClient.execute(get);
             String responseString = EntityUtils.toString(response.getEntity());
             if (response.getStatusLine().getStatusCode() == 303 || response.getStatusLine().getStatusCode() == 200) {
                 String status = new JSONObject(responseString).getString("jobStatus");
@@ -132,7 +218,9 @@ public class UniProtClient {
                     return JobStatus.valueOf(status);
                 }
             } else {
-                throw new RuntimeException("Failed to check job status: " + responseString);
+                throw new UniProtClientException(
+                    "Failed to check job status: " + responseString, response.getStatusLine().getStatusCode()
+                );
             }
         }
     }
@@ -159,17 +247,204 @@ public class UniProtClient {
 
       return fromToMap;
   }
+
+    public static Map<String, List<String>> buildIdMappingFromTsv(Reader tsvReader) throws IOException {
+        Map<String, List<String>> fromToMap = new HashMap<>();
+        BufferedReader reader = tsvReader instanceof BufferedReader
+            ? (BufferedReader) tsvReader : new BufferedReader(tsvReader, 1 << 16);
+
+        String line;
+        while ((line = reader.readLine()) != null) {
+            int tab = line.indexOf('\t');
+            if (tab < 0 || line.startsWith("From\t")) {
+                continue;
+            }
+
+            int end = line.indexOf('\t', tab + 1);
+            String from = line.substring(0, tab);
+            String to = end < 0 ? line.substring(tab + 1) : line.substring(tab + 1, end);
+
+            fromToMap.computeIfAbsent(from, k -> new ArrayList<>(1)).add(to);
+        }
+
+        LOGGER.debug("Results processed, mapped {} identifiers", fromToMap.size());
+
+        return fromToMap;
+    }
+
+    private Map<String, List<String>> parseResults(String responseString) throws IOException {
+        if (this.resultsFormat == ResultsFormat.TSV) {
+            return buildIdMappingFromTsv(new StringReader(responseString));
+        } else {
+            return buildIdMapping(responseString);
+        }
+    }
     
     public Map<String, List<String>> getResults(String jobId) throws IOException {
-        HttpClient client = HttpClients.createDefault();
-        HttpGet get = new HttpGet(API_URL + "/idmapping/stream/" + jobId);
+        if (this.resultsPageSize > 0) {
+            Map<String, List<String>> results = new HashMap<>();
+            getResults(jobId, page -> page.forEach(
+                (from, to) -> results.computeIfAbsent(from, k -> new ArrayList<>()).addAll(to))
+            );
+
+            return results;
+        }
+
+        HttpGet get = new HttpGet(this.apiUrl + "/idmapping/stream/" + jobId + "?format=" + this.resultsFormat);
+
+        HttpResponse response = this.httpClient.execute(get);
+        if (response.getStatusLine().getStatusCode() == 200 && this.resultsFormat == ResultsFormat.TSV) {
+            HttpEntity entity = response.getEntity();
+            try (Reader reader = new InputStreamReader(entity.getContent(), getCharset(entity))) {
+                return buildIdMappingFromTsv(reader);
+            }
+        }
 
-        HttpResponse response = client.execute(get);
         String responseString = EntityUtils.toString(response.getEntity());
         if (response.getStatusLine().getStatusCode() == 200) {
             return buildIdMapping(responseString);
         } else {
-            throw new RuntimeException("Failed to retrieve results: " + responseString);
+            throw new UniProtClientException(
+                "Failed to retrieve results: " + responseString, response.getStatusLine().getStatusCode()
+            );
+        }
+    }
+
+    /**
+     * Retrieves the results of a finished job as an {@code IdMappingTable}. With the TSV format and no
+     * pagination, the response is parsed from the stream straight into the table columns.
+     *
+     * @param jobId the job identifier.
+     * @return the job results.
+     * @throws IOException if the results cannot be retrieved.
+     */
+    public IdMappingTable getResultsTable(String jobId) throws IOException {
+        if (this.resultsPageSize > 0 || this.resultsFormat != ResultsFormat.TSV) {
+            return IdMappingTable.fromMap(getResults(jobId));
+        }
+
+        HttpGet get = new HttpGet(this.apiUrl + "/idmapping/stream/" + jobId + "?format=" + this.resultsFormat);
+
+        HttpResponse response = this.httpClient.execute(get);
+        HttpEntity entity = response.getEntity();
+        if (response.getStatusLine().getStatusCode() == 200) {
+            try (Reader reader = new InputStreamReader(entity.getContent(), getCharset(entity))) {
+                return IdMappingTable.readTsv(reader);
+            }
+        } else {
+            throw new UniProtClientException(
+                "Failed to retrieve results: " + EntityUtils.toString(entity), response.getStatusLine().getStatusCode()
+            );
+        }
+    }
+
+    /**
+     * Retrieves the results of a finished job from the paginated endpoint, handing each page to the
+     * consumer as soon as it is available. The next page is downloaded while the current one is being
+     * consumed and failed pages are retried from their own cursor, so a dropped connection only costs
+     * one page. Note that the mappings of one identifier may be split between consecutive pages.
+     *
+     * @param jobId the job identifier.
+     * @param pageConsumer the consumer of the results of each page.
+     * @throws IOException if a page cannot be retrieved after retrying.
+     */
+    public void getResults(String jobId, Consumer<Map<String, List<String>>> pageConsumer) throws IOException {
+        int pageSize = this.resultsPageSize > 0 ? this.resultsPageSize : 500;
+        String firstPageUrl = this.apiUrl + "/idmapping/results/" + jobId
+            + "?size=" + pageSize + "&format=" + this.resultsFormat;
+
+        ExecutorService prefetcher = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "uniprot-results-" + jobId);
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            Future<ResultsPage> nextPage = prefetcher.submit(() -> fetchResultsPage(firstPageUrl));
+            int pageCounter = 1;
+            while (nextPage != null) {
+                ResultsPage page = waitForPage(nextPage);
+                nextPage = page.nextPageUrl == null ? null
+                    : prefetcher.submit(() -> fetchResultsPage(page.nextPageUrl));
+
+                LOGGER.debug("Processing results page {} of job {}", pageCounter++, jobId);
+                pageConsumer.accept(parseResults(page.body));
+            }
+        } finally {
+            prefetcher.shutdownNow();
+        }
+    }
+
+    private ResultsPage fetchResultsPage(String pageUrl) throws IOException {
+        RetryPolicy retryPolicy = this.pageRetryPolicy;
+        for (int attempt = 1; ; attempt++) {
+            try {
+                HttpResponse response = this.httpClient.execute(new HttpGet(pageUrl));
+                String responseString = EntityUtils.toString(response.getEntity());
+                int statusCode = response.getStatusLine().getStatusCode();
+                if (statusCode == 200) {
+                    return new ResultsPage(responseString, getNextPageUrl(response));
+                } else if ((statusCode != 429 && statusCode < 500) || attempt >= retryPolicy.getMaxAttempts()) {
+                    throw new UniProtClientException("Failed to retrieve results: " + responseString, statusCode);
+                }
+                LOGGER.warn("Failed to retrieve results page (HTTP {}); retrying", statusCode);
+            } catch (IOException e) {
+                if (attempt >= retryPolicy.getMaxAttempts()) {
+                    throw e;
+                }
+                LOGGER.warn("Failed to retrieve results page ({}); retrying", e.getMessage());
+            }
+
+            try {
+                Thread.sleep(retryPolicy.getBackoff(attempt));
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+
+    private static Charset getCharset(HttpEntity entity) {
+        ContentType contentType = ContentType.get(entity);
+        if (contentType != null && contentType.getCharset() != null) {
+            return contentType.getCharset();
+        }
+
+        return StandardCharsets.UTF_8;
+    }
+
+    private static String getNextPageUrl(HttpResponse response) {
+        for (Header header : response.getHeaders("Link")) {
+            Matcher matcher = NEXT_LINK_PATTERN.matcher(header.getValue());
+            if (matcher.find()) {
+                return matcher.group(1);
+            }
+        }
+
+        return null;
+    }
+
+    private static ResultsPage waitForPage(Future<ResultsPage> page) throws IOException {
+        try {
+            return page.get();
+        } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            } else if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            } else {
+                throw new RuntimeException(e.getCause());
+            }
+        }
+    }
+
+    private static class ResultsPage {
+        private final String body;
+        private final String nextPageUrl;
+
+        ResultsPage(String body, String nextPageUrl) {
+            this.body = body;
+            this.nextPageUrl = nextPageUrl;
         }
     }
 
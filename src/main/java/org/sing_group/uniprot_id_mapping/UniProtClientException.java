@@ -0,0 +1,110 @@
+/*
+ * #%L
+ * UniProt ID Mapping
+ * %%
+ * Copyright (C) 2024 Hugo López-Fernández
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+package org.sing_group.uniprot_id_mapping;
+
+import static java.util.Collections.emptyList;
+import static java.util.Collections.unmodifiableList;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+public class UniProtClientException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    // Messages about the number of identifiers of a request, such as "Up to 100000 ids are allowed"
+    private static final Pattern TOO_MANY_IDS = Pattern.compile(
+        "(?=.*\\bids\\b)(?=.*\\d)(?=.*\\b(limit|maximum|max|allowed|exceed(s|ed)?|more than|less than)\\b).*",
+        Pattern.CASE_INSENSITIVE
+    );
+
+    private final int statusCode;
+    private final List<String> errorMessages;
+
+    public UniProtClientException(String message, int statusCode) {
+        this(message, statusCode, emptyList());
+    }
+
+    /**
+     * @param message the detail message.
+     * @param statusCode the HTTP status code of the response.
+     * @param errorMessages the messages of the error returned by UniProt.
+     */
+    public UniProtClientException(String message, int statusCode, List<String> errorMessages) {
+        super(message);
+        this.statusCode = statusCode;
+        this.errorMessages = unmodifiableList(new ArrayList<>(errorMessages));
+    }
+
+    public int getStatusCode() {
+        return statusCode;
+    }
+
+    public List<String> getErrorMessages() {
+        return errorMessages;
+    }
+
+    public boolean isTransient() {
+        return statusCode == 429 || statusCode >= 500;
+    }
+
+    /**
+     * Returns whether the request was rejected for having too many identifiers, which UniProt reports with a
+     * {@code 400} status and an error message stating the maximum number of ids.
+     *
+     * @return {@code true} if the request was rejected for having too many identifiers.
+     */
+    public boolean isTooManyIds() {
+        return statusCode == 400 && errorMessages.stream().anyMatch(message -> TOO_MANY_IDS.matcher(message).matches());
+    }
+
+    /**
+     * Parses the messages of an error returned by UniProt, a JSON object such as
+     * {@code {"url": "...", "messages": ["..."]}}.
+     *
+     * @param responseString the body of the error response.
+     * @return the error messages, or an empty list if the body is not a UniProt error.
+     */
+    public static List<String> parseErrorMessages(String responseString) {
+        List<String> messages = new ArrayList<>();
+        try {
+            JSONArray jsonMessages = new JSONObject(responseString).optJSONArray("messages");
+            if (jsonMessages != null) {
+                for (int i = 0; i < jsonMessages.length(); i++) {
+                    messages.add(jsonMessages.optString(i));
+                }
+            }
+        } catch (JSONException e) {
+            // Not a JSON error, so there are no messages
+        }
+
+        return messages;
+    }
+}
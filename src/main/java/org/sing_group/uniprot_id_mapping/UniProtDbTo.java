@@ -176,4 +176,20 @@ public enum UniProtDbTo {
           || value.getDatabaseName().replace(" ", "-").equalsIgnoreCase(string)
       ).findAny();
   }
+
+  /**
+   * Parses a database given either by its constant name (case-insensitive) or by its database name, as
+   * accepted by {@link #get(String)}.
+   *
+   * @param name the name of the database.
+   * @return the database.
+   * @throws IllegalArgumentException if the name does not match any database.
+   */
+  public static UniProtDbTo parse(String name) {
+    try {
+      return valueOf(name.toUpperCase());
+    } catch (IllegalArgumentException e) {
+      return get(name).orElseThrow(() -> new IllegalArgumentException("Unknown database: " + name));
+    }
+  }
 }
@@ -25,34 +25,70 @@
  */
 package org.sing_group.uniprot_id_mapping;
 
-import static java.util.stream.Collectors.joining;
+import static java.util.stream.Collectors.toList;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.Deque;
+import java.util.EnumMap;
 import java.util.HashMap;
-import java.util.LinkedList;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.ForkJoinPool;
-import java.util.stream.Stream;
+import java.util.concurrent.Future;
+import java.util.stream.IntStream;
 
+import org.sing_group.uniprot_id_mapping.index.BloomFilter;
+import org.sing_group.uniprot_id_mapping.index.EdgeSection;
+import org.sing_group.uniprot_id_mapping.index.ExternalMappingIndexBuilder;
+import org.sing_group.uniprot_id_mapping.index.IdColumn;
+import org.sing_group.uniprot_id_mapping.index.IndexFilters;
+import org.sing_group.uniprot_id_mapping.index.MappingIndex;
+import org.sing_group.uniprot_id_mapping.index.MappingIndexBuilder;
+import org.sing_group.uniprot_id_mapping.index.MappingIndexSnapshot;
+import org.sing_group.uniprot_id_mapping.index.SourceFingerprint;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 public class UniProtIdLocalMapper implements UniProtIdMapper {
   private static final Logger LOGGER = LoggerFactory.getLogger(UniProtIdLocalMapper.class);
+  private static final int PARSING_BLOCK_LINES = 1 << 14;
 
   private InputStream uniprotMappingDatStream;
-  private boolean addsDeVersionedIdentifiers;
-  private Map<UniProtDbFrom, Map<String, Map<UniProtDbTo, List<String>>>> dbMapping;
+  private IdMatching defaultMatching;
+  private MappingIndex index;
+  private SourceFingerprint sourceFingerprint;
+  private IdShard shard;
+  private IndexFilters filters;
+  private List<String> taxa = Collections.emptyList();
+  private final BloomFilter.Statistics filterStatistics = new BloomFilter.Statistics();
+  private Map<UniProtDbTo, List<EdgeSection>> forwardSections;
+  private Map<UniProtDbFrom, List<EdgeSection>> reverseSections;
 
   public UniProtIdLocalMapper(File uniprotMappingDatFile) throws IOException {
     this(uniprotMappingDatFile, false);
@@ -66,95 +102,876 @@ public class UniProtIdLocalMapper implements UniProtIdMapper {
     this(uniprotMappingDatStream, false);
   }
 
+  /**
+   * @param uniprotMappingDatStream the stream of a UniProt {@code idmapping.dat} file.
+   * @param addsDeVersionedIdentifiers whether identifiers are matched ignoring their version by default
+   *  ({@link IdMatching#ANY_VERSION}) instead of exactly ({@link IdMatching#EXACT}). As versions are
+   *  resolved at query time, the matching can also be chosen for each query.
+   * @throws IOException if an I/O error occurs reading the stream.
+   */
   public UniProtIdLocalMapper(InputStream uniprotMappingDatStream, boolean addsDeVersionedIdentifiers) throws IOException {
+    this(uniprotMappingDatStream, addsDeVersionedIdentifiers, null);
+  }
+
+  public UniProtIdLocalMapper(File uniprotMappingDatFile, boolean addsDeVersionedIdentifiers, IdShard shard)
+    throws IOException {
+    this(new FileInputStream(uniprotMappingDatFile), addsDeVersionedIdentifiers, shard);
+  }
+
+  /**
+   * Creates a mapper that only loads one shard of the mappings, for deployments where the mappings are
+   * split among several nodes. Lines are loaded when their UniProtKB accession or their database
+   * identifier belongs to the shard, so the shard answers every query about the identifiers it owns, in
+   * both directions. Queries must therefore be routed to the shard of their identifiers, as the
+   * {@code ShardedIdMapper} does.
+   *
+   * @param uniprotMappingDatStream the stream of a UniProt {@code idmapping.dat} file.
+   * @param addsDeVersionedIdentifiers whether identifiers are matched ignoring their version by default.
+   * @param shard the shard to load, or {@code null} to load all the mappings.
+   * @throws IOException if an I/O error occurs reading the stream.
+   */
+  public UniProtIdLocalMapper(InputStream uniprotMappingDatStream, boolean addsDeVersionedIdentifiers, IdShard shard)
+    throws IOException {
     this.uniprotMappingDatStream = uniprotMappingDatStream;
-    this.addsDeVersionedIdentifiers = addsDeVersionedIdentifiers;
-    this.createMaps();
+    this.defaultMatching = addsDeVersionedIdentifiers ? IdMatching.ANY_VERSION : IdMatching.EXACT;
+    this.shard = shard;
+    this.createMaps(shard);
+  }
+
+  public UniProtIdLocalMapper(List<File> uniprotMappingDatFiles, boolean addsDeVersionedIdentifiers)
+    throws IOException {
+    this(uniprotMappingDatFiles, null, addsDeVersionedIdentifiers);
+  }
+
+  /**
+   * Creates a mapper of several files, usually of different organisms, whose accessions are tagged with the
+   * taxon of their file. Lookups answer across all the taxa, and {@link #mapIdsInTaxon} restricts them to
+   * one of them.
+   *
+   * @param uniprotMappingDatFilesByTaxon the UniProt {@code idmapping.dat} files of each taxon, such as
+   *  {@code "7227"} or {@code "DROME"}.
+   * @param addsDeVersionedIdentifiers whether identifiers are matched ignoring their version by default.
+   * @throws IOException if an I/O error occurs reading the files.
+   */
+  public UniProtIdLocalMapper(Map<String, File> uniprotMappingDatFilesByTaxon, boolean addsDeVersionedIdentifiers)
+    throws IOException {
+    this(
+      new ArrayList<>(uniprotMappingDatFilesByTaxon.values()), new ArrayList<>(uniprotMappingDatFilesByTaxon.keySet()),
+      addsDeVersionedIdentifiers
+    );
+  }
+
+  /*
+   * Files are parsed concurrently, each one into its own builder, and the builders are merged in file order
+   * as they finish, so that loading takes about as long as parsing the largest file.
+   */
+  private UniProtIdLocalMapper(List<File> uniprotMappingDatFiles, List<String> taxa, boolean addsDeVersionedIdentifiers)
+    throws IOException {
+    if (taxa != null && taxa.size() > Short.MAX_VALUE) {
+      throw new IllegalArgumentException("Too many taxa: " + taxa.size());
+    }
+    this.defaultMatching = addsDeVersionedIdentifiers ? IdMatching.ANY_VERSION : IdMatching.EXACT;
+    this.taxa = taxa == null ? Collections.emptyList() : Collections.unmodifiableList(taxa);
+
+    int fileCount = uniprotMappingDatFiles.size();
+    SourceFingerprint[] fingerprints = new SourceFingerprint[fileCount];
+    ExecutorService executor = Executors.newFixedThreadPool(
+      Math.max(1, Math.min(fileCount, Runtime.getRuntime().availableProcessors()))
+    );
+    try {
+      List<Future<MappingIndexBuilder>> parsedFiles = new ArrayList<>(fileCount);
+      for (int i = 0; i < fileCount; i++) {
+        File file = uniprotMappingDatFiles.get(i);
+        int fileIndex = i;
+        parsedFiles.add(executor.submit(() -> {
+          SourceFingerprint.TrackingInputStream trackingStream =
+            new SourceFingerprint.TrackingInputStream(new FileInputStream(file));
+          MappingIndexBuilder builder = parse(trackingStream, null);
+          fingerprints[fileIndex] = trackingStream.getFingerprint();
+
+          return builder;
+        }));
+      }
+
+      MappingIndexBuilder merged = newIndexBuilder();
+      for (int i = 0; i < fileCount; i++) {
+        merged.addAll(parsedFiles.get(i).get(), taxa == null ? -1 : i);
+        parsedFiles.set(i, null);
+      }
+
+      this.sourceFingerprint = SourceFingerprint.combine(Arrays.asList(fingerprints));
+      this.setIndex(merged.build());
+    } catch (InterruptedException e) {
+      throw new RuntimeException(e);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof IOException) {
+        throw (IOException) e.getCause();
+      }
+      throw new RuntimeException("Failed to load mapping files.", e.getCause());
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  private UniProtIdLocalMapper(
+    MappingIndexSnapshot snapshot, Path snapshotFile, boolean addsDeVersionedIdentifiers
+  ) throws IOException {
+    this.defaultMatching = addsDeVersionedIdentifiers ? IdMatching.ANY_VERSION : IdMatching.EXACT;
+    this.sourceFingerprint = snapshot.getSourceFingerprint();
+    this.shard = toShard(snapshot);
+    this.setIndex(snapshot.getIndex());
+
+    Path filtersFile = getFiltersFile(snapshotFile);
+    if (Files.exists(filtersFile)) {
+      IndexFilters savedFilters = IndexFilters.read(filtersFile);
+      if (savedFilters.getSourceFingerprint().equals(this.sourceFingerprint)) {
+        this.filters = savedFilters;
+      } else {
+        LOGGER.warn("Ignoring filters {}, which belong to a different source file", filtersFile);
+      }
+    }
+
+    Path taxaFile = getTaxaFile(snapshotFile);
+    if (Files.exists(taxaFile)) {
+      readTaxa(taxaFile);
+    }
+  }
+
+  /**
+   * Loads a mapper from a snapshot written by {@link #save(Path)}, without checking whether it is up to
+   * date with its source file.
+   *
+   * @param snapshot the path of the snapshot.
+   * @param addsDeVersionedIdentifiers whether identifiers are matched ignoring their version by default.
+   * @return the loaded mapper.
+   * @throws IOException if an I/O error occurs or the snapshot is not valid.
+   */
+  public static UniProtIdLocalMapper load(Path snapshot, boolean addsDeVersionedIdentifiers) throws IOException {
+    return new UniProtIdLocalMapper(MappingIndexSnapshot.read(snapshot), snapshot, addsDeVersionedIdentifiers);
+  }
+
+  /**
+   * Loads a mapper from a snapshot if it was built from the current content of the source file. Otherwise,
+   * the source file is parsed and the snapshot is (re)written, so that the next start is fast.
+   *
+   * @param uniprotMappingDatFile the UniProt {@code idmapping.dat} file.
+   * @param snapshot the path of the snapshot.
+   * @param addsDeVersionedIdentifiers whether identifiers are matched ignoring their version by default.
+   * @return the loaded mapper.
+   * @throws IOException if an I/O error occurs reading the source file or writing the snapshot.
+   */
+  public static UniProtIdLocalMapper load(
+    File uniprotMappingDatFile, Path snapshot, boolean addsDeVersionedIdentifiers
+  ) throws IOException {
+    return load(uniprotMappingDatFile, snapshot, addsDeVersionedIdentifiers, null);
+  }
+
+  /**
+   * Loads a mapper of one shard from a snapshot if it was built from the current content of the source
+   * file, or otherwise loads the shard from the source file and saves its snapshot. Snapshots record their
+   * shard, so each shard must use its own snapshot path: a snapshot of a different shard (or of all the
+   * mappings) is rejected instead of being overwritten.
+   *
+   * @param uniprotMappingDatFile the UniProt {@code idmapping.dat} file.
+   * @param snapshot the path of the snapshot of the shard.
+   * @param addsDeVersionedIdentifiers whether identifiers are matched ignoring their version by default.
+   * @param shard the shard to load, or {@code null} to load all the mappings.
+   * @return the loaded mapper.
+   * @throws IOException if an I/O error occurs reading the source file or writing the snapshot.
+   * @throws IllegalArgumentException if the snapshot is of a different shard.
+   */
+  public static UniProtIdLocalMapper load(
+    File uniprotMappingDatFile, Path snapshot, boolean addsDeVersionedIdentifiers, IdShard shard
+  ) throws IOException {
+    if (Files.exists(snapshot)) {
+      MappingIndexSnapshot header = null;
+      try {
+        header = MappingIndexSnapshot.readHeader(snapshot);
+      } catch (IOException e) {
+        LOGGER.warn("Invalid snapshot " + snapshot + ", rebuilding it from " + uniprotMappingDatFile, e);
+      }
+
+      if (header != null) {
+        IdShard snapshotShard = toShard(header);
+        if (!Objects.equals(snapshotShard, shard)) {
+          throw new IllegalArgumentException(
+            "Snapshot " + snapshot + " is of " + describe(snapshotShard) + " instead of " + describe(shard)
+          );
+        }
+
+        // Checksumming the source file is much faster than parsing it
+        if (header.getSourceFingerprint().equals(SourceFingerprint.of(uniprotMappingDatFile.toPath()))) {
+          return load(snapshot, addsDeVersionedIdentifiers);
+        }
+        LOGGER.info("Snapshot {} is stale, rebuilding it from {}", snapshot, uniprotMappingDatFile);
+      }
+    }
+
+    UniProtIdLocalMapper mapper = new UniProtIdLocalMapper(uniprotMappingDatFile, addsDeVersionedIdentifiers, shard);
+    mapper.save(snapshot);
+
+    return mapper;
+  }
+
+  /**
+   * Maps a snapshot written by {@link #save(Path)} read-only into memory. The index is accessed through the
+   * page cache, so several JVMs mapping the same snapshot share one copy of it.
+   *
+   * @param snapshot the path of the snapshot.
+   * @param addsDeVersionedIdentifiers whether identifiers are matched ignoring their version by default.
+   * @return the mapper.
+   * @throws IOException if an I/O error occurs or the snapshot is not valid.
+   */
+  public static UniProtIdLocalMapper map(Path snapshot, boolean addsDeVersionedIdentifiers) throws IOException {
+    return new UniProtIdLocalMapper(MappingIndexSnapshot.map(snapshot), snapshot, addsDeVersionedIdentifiers);
+  }
+
+  /**
+   * Maps a snapshot shared by several processes on the same host, usually placed in a memory-backed
+   * location like {@code /dev/shm}. The first process that finds the snapshot missing or older than the
+   * source file builds it while holding a lock on {@code <snapshot>.lock}, and the rest wait for it and map
+   * the result. Only the source length and modification time are checked, so that starting a process does
+   * not require reading the source file.
+   *
+   * @param uniprotMappingDatFile the UniProt {@code idmapping.dat} file.
+   * @param snapshot the path of the shared snapshot.
+   * @param addsDeVersionedIdentifiers whether identifiers are matched ignoring their version by default.
+   * @return the mapper.
+   * @throws IOException if an I/O error occurs.
+   */
+  public static UniProtIdLocalMapper mapShared(
+    File uniprotMappingDatFile, Path snapshot, boolean addsDeVersionedIdentifiers
+  ) throws IOException {
+    Path lockFile = snapshot.resolveSibling(snapshot.getFileName() + ".lock");
+
+    // File locks are held by the whole JVM, so threads of the same process are serialized here
+    synchronized (UniProtIdLocalMapper.class) {
+      try (
+        FileChannel lockChannel = FileChannel.open(lockFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE)
+      ) {
+        FileLock lock = lockChannel.lock();
+        try {
+          if (!isSharedSnapshotUpToDate(uniprotMappingDatFile, snapshot)) {
+            LOGGER.info("Building shared snapshot {} from {}", snapshot, uniprotMappingDatFile);
+            new UniProtIdLocalMapper(uniprotMappingDatFile, addsDeVersionedIdentifiers).save(snapshot);
+          }
+        } finally {
+          lock.release();
+        }
+      }
+    }
+
+    return map(snapshot, addsDeVersionedIdentifiers);
+  }
+
+  private static boolean isSharedSnapshotUpToDate(File uniprotMappingDatFile, Path snapshot) {
+    if (!Files.exists(snapshot)) {
+      return false;
+    }
+
+    try {
+      return MappingIndexSnapshot.readSourceFingerprint(snapshot).getLength() == uniprotMappingDatFile.length()
+        && Files.getLastModifiedTime(snapshot).toMillis() >= uniprotMappingDatFile.lastModified();
+    } catch (IOException e) {
+      LOGGER.warn("Invalid shared snapshot " + snapshot, e);
+      return false;
+    }
   }
 
-  private void createMaps() throws IOException {
-      this.dbMapping = new ConcurrentHashMap<>();
+  /**
+   * Builds a snapshot of a mapping file whose index does not fit in memory, using about
+   * {@code memoryBudget} bytes of heap and spilling sorted runs to temporary files in {@code java.io.tmpdir}.
+   * The snapshot can then be mapped into memory with {@link #map(Path, boolean)}.
+   *
+   * @param uniprotMappingDatFile the UniProt {@code idmapping.dat} file.
+   * @param snapshot the path of the snapshot.
+   * @param memoryBudget the approximate number of bytes of heap used to build the snapshot.
+   * @throws IOException if an I/O error occurs.
+   */
+  public static void buildSnapshot(File uniprotMappingDatFile, Path snapshot, long memoryBudget) throws IOException {
+    buildSnapshot(uniprotMappingDatFile, snapshot, memoryBudget, Paths.get(System.getProperty("java.io.tmpdir")));
+  }
 
-      try (Stream<String> lines = readFile()) {
-          ForkJoinPool customThreadPool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
-          customThreadPool.submit(() -> lines.parallel().forEach(this::processLine)).join();
+  public static void buildSnapshot(
+    File uniprotMappingDatFile, Path snapshot, long memoryBudget, Path temporaryDirectory
+  ) throws IOException {
+    try (
+      ExternalMappingIndexBuilder builder = new ExternalMappingIndexBuilder(
+        database -> UniProtDbTo.get(database).isPresent(), memoryBudget, temporaryDirectory
+      )
+    ) {
+      SourceFingerprint.TrackingInputStream trackingStream =
+        new SourceFingerprint.TrackingInputStream(new FileInputStream(uniprotMappingDatFile));
+      try (BufferedReader reader = new BufferedReader(new InputStreamReader(trackingStream), 1 << 16)) {
+        builder.addLines(reader);
       }
+
+      builder.build(trackingStream.getFingerprint(), snapshot);
+    }
   }
 
-  private String deversion(String id) {
-    if (id.contains(".")) {
-      String[] split = id.split("\\.");
-      return Arrays.stream(split).limit(split.length - 1).collect(joining("."));
+  /**
+   * Saves the loaded mappings as a binary snapshot that can be loaded with {@link #load(Path, boolean)}
+   * much faster than parsing the source file again. If filters were created, they are saved next to it, in
+   * {@code <snapshot>.filters}.
+   *
+   * @param snapshot the path of the snapshot.
+   * @throws IOException if an I/O error occurs.
+   */
+  public void save(Path snapshot) throws IOException {
+    MappingIndexSnapshot.write(
+      this.index, this.sourceFingerprint, shard == null ? 0 : shard.getIndex(), shard == null ? 0 : shard.getCount(),
+      snapshot
+    );
+    if (this.filters == null) {
+      Files.deleteIfExists(getFiltersFile(snapshot));
     } else {
-      return id;
+      this.filters.write(getFiltersFile(snapshot));
     }
+    if (this.taxa.isEmpty()) {
+      Files.deleteIfExists(getTaxaFile(snapshot));
+    } else {
+      writeTaxa(getTaxaFile(snapshot));
+    }
+  }
+
+  private static Path getFiltersFile(Path snapshot) {
+    return snapshot.resolveSibling(snapshot.getFileName() + ".filters");
   }
 
-  private void processLine(String line) {
-      String[] fields = line.split("\t");
-      if (fields.length != 3) {
-          LOGGER.warn("Ignoring line: " + line);
-          return;
+  private static Path getTaxaFile(Path snapshot) {
+    return snapshot.resolveSibling(snapshot.getFileName() + ".taxa");
+  }
+
+  // The taxa and the taxon of each accession are saved next to the snapshot, as snapshots do not store tags
+  private void writeTaxa(Path taxaFile) throws IOException {
+    try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(taxaFile)))) {
+      out.writeInt(taxa.size());
+      for (String taxon : taxa) {
+        out.writeUTF(taxon);
+      }
+      short[] tags = this.index.getAccessionTags();
+      out.writeInt(tags.length);
+      for (short tag : tags) {
+        out.writeShort(tag);
       }
+    }
+  }
 
-      Optional<UniProtDbTo> optionalDbTo = UniProtDbTo.get(fields[1]);
-      if (!optionalDbTo.isPresent()) {
-          LOGGER.debug("Unknown to database: " + fields[1]);
-          return;
+  private void readTaxa(Path taxaFile) throws IOException {
+    try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(taxaFile)))) {
+      List<String> savedTaxa = new ArrayList<>();
+      for (int i = in.readInt(); i > 0; i--) {
+        savedTaxa.add(in.readUTF());
+      }
+      short[] tags = new short[in.readInt()];
+      if (tags.length != this.index.getAccessions().size()) {
+        LOGGER.warn("Ignoring taxa {}, which belong to a different snapshot", taxaFile);
+        return;
+      }
+      for (int i = 0; i < tags.length; i++) {
+        tags[i] = in.readShort();
       }
 
-      String uniprotKbID = fields[0];
-      String dbID = fields[2];
+      this.taxa = Collections.unmodifiableList(savedTaxa);
+      this.index = this.index.withAccessionTags(tags);
+    }
+  }
+
+  /**
+   * Creates Bloom filters of the identifiers of each (from, to) pair, so that exact lookups of identifiers
+   * that are not in the pair are rejected without searching the index. This is worthwhile when most of the
+   * queried identifiers are absent. Filters are saved and loaded along with snapshots.
+   *
+   * @param falsePositiveRate the target false positive rate of the filters, such as 0.01.
+   */
+  public void createFilters(double falsePositiveRate) {
+    this.filters = IndexFilters.build(this.index, this.sourceFingerprint, falsePositiveRate);
+  }
+
+  public boolean hasFilters() {
+    return this.filters != null;
+  }
 
-      dbMapping.computeIfAbsent(UniProtDbFrom.UNIPROTKB_AC_ID, k -> new ConcurrentHashMap<>())
-              .computeIfAbsent(uniprotKbID, k -> new ConcurrentHashMap<>())
-              .computeIfAbsent(optionalDbTo.get(), k -> Collections.synchronizedList(new LinkedList<>()))
-              .add(dbID);
+  /**
+   * Returns the counters of the lookups checked against the filters, including the observed false positive
+   * rate.
+   *
+   * @return the filter statistics.
+   */
+  public BloomFilter.Statistics getFilterStatistics() {
+    return filterStatistics;
+  }
 
-      Optional<UniProtDbFrom> optionalDbFrom = UniProtDbFrom.get(fields[1]);
-      if (!optionalDbFrom.isPresent()) {
-          LOGGER.debug("Unknown from database: " + fields[1]);
-          return;
+  public SourceFingerprint getSourceFingerprint() {
+    return sourceFingerprint;
+  }
+
+  /**
+   * Returns the shard loaded by this mapper.
+   *
+   * @return the shard, or {@code null} if all the mappings were loaded.
+   */
+  public IdShard getShard() {
+    return shard;
+  }
+
+  private static String describe(IdShard shard) {
+    return shard == null ? "all the mappings" : "shard " + shard;
+  }
+
+  private static IdShard toShard(MappingIndexSnapshot snapshot) {
+    return snapshot.getShardCount() == 0 ? null : new IdShard(snapshot.getShardIndex(), snapshot.getShardCount());
+  }
+
+  /*
+   * The stream is read on this thread in blocks of lines, which are parsed concurrently, each one into its own
+   * builder, and merged in stream order, as the files of the multi-file constructor are. At most two blocks per
+   * thread are kept in memory at the same time.
+   */
+  private void createMaps(IdShard shard) throws IOException {
+    SourceFingerprint.TrackingInputStream trackingStream =
+      new SourceFingerprint.TrackingInputStream(uniprotMappingDatStream);
+    int threads = Runtime.getRuntime().availableProcessors();
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    try (BufferedReader reader = new BufferedReader(new InputStreamReader(trackingStream), 1 << 16)) {
+      MappingIndexBuilder merged = newIndexBuilder();
+      Deque<Future<MappingIndexBuilder>> parsedBlocks = new ArrayDeque<>();
+      List<String> block = new ArrayList<>(PARSING_BLOCK_LINES);
+      String line;
+      while ((line = reader.readLine()) != null) {
+        block.add(line);
+        if (block.size() == PARSING_BLOCK_LINES) {
+          List<String> lines = block;
+          parsedBlocks.add(executor.submit(() -> parse(lines, shard)));
+          block = new ArrayList<>(PARSING_BLOCK_LINES);
+
+          if (parsedBlocks.size() >= 2 * threads) {
+            merged.addAll(parsedBlocks.remove().get(), -1);
+          }
+        }
+      }
+      if (!block.isEmpty()) {
+        List<String> lines = block;
+        parsedBlocks.add(executor.submit(() -> parse(lines, shard)));
+      }
+      while (!parsedBlocks.isEmpty()) {
+        merged.addAll(parsedBlocks.remove().get(), -1);
       }
 
-      dbMapping.computeIfAbsent(optionalDbFrom.get(), k -> new ConcurrentHashMap<>())
-              .computeIfAbsent(dbID, k -> new ConcurrentHashMap<>())
-              .computeIfAbsent(UniProtDbTo.UNIPROTKB, k -> Collections.synchronizedList(new LinkedList<>()))
-              .add(uniprotKbID);
+      this.sourceFingerprint = trackingStream.getFingerprint();
+      this.setIndex(merged.build());
+    } catch (InterruptedException e) {
+      throw new RuntimeException(e);
+    } catch (ExecutionException e) {
+      throw new RuntimeException("Failed to parse mappings.", e.getCause());
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  private static MappingIndexBuilder newIndexBuilder() {
+    return new MappingIndexBuilder(database -> UniProtDbTo.get(database).isPresent());
+  }
 
-      if(this.addsDeVersionedIdentifiers) {
-        String deversionedDbID = deversion(dbID);
-        dbMapping.computeIfAbsent(optionalDbFrom.get(), k -> new ConcurrentHashMap<>())
-          .computeIfAbsent(deversionedDbID, k -> new ConcurrentHashMap<>())
-          .computeIfAbsent(UniProtDbTo.UNIPROTKB, k -> Collections.synchronizedList(new LinkedList<>()))
-          .add(uniprotKbID);
+  private static MappingIndexBuilder parse(InputStream uniprotMappingDatStream, IdShard shard) throws IOException {
+    try (BufferedReader reader = new BufferedReader(new InputStreamReader(uniprotMappingDatStream), 1 << 16)) {
+      MappingIndexBuilder builder = newIndexBuilder();
+      String line;
+      while ((line = reader.readLine()) != null) {
+        addLine(builder, line, shard);
       }
+
+      return builder;
+    }
   }
 
-  private Stream<String> readFile() throws IOException {
-      BufferedReader br = new BufferedReader(new InputStreamReader(uniprotMappingDatStream));
-      return br.lines();
+  private static MappingIndexBuilder parse(List<String> lines, IdShard shard) {
+    MappingIndexBuilder builder = newIndexBuilder();
+    for (String line : lines) {
+      addLine(builder, line, shard);
+    }
+
+    return builder;
+  }
+
+  private static void addLine(MappingIndexBuilder builder, String line, IdShard shard) {
+    if (shard != null) {
+      int firstTab = line.indexOf('\t');
+      int secondTab = firstTab < 0 ? -1 : line.indexOf('\t', firstTab + 1);
+      if (
+        secondTab >= 0 && !shard.owns(line.substring(0, firstTab)) && !shard.owns(line.substring(secondTab + 1))
+      ) {
+        return;
+      }
+    }
+    builder.addLine(line);
+  }
+
+  private void setIndex(MappingIndex index) {
+    this.index = index;
+    this.forwardSections = new EnumMap<>(UniProtDbTo.class);
+    this.reverseSections = new EnumMap<>(UniProtDbFrom.class);
+
+    // Every edge can be traversed forward (from UniProtKB accessions) and, when the database is also a
+    // valid source database, reverse (to UniProtKB accessions)
+    for (EdgeSection section : index.getSections()) {
+      UniProtDbTo.get(section.getDatabase()).ifPresent(
+        to -> forwardSections.computeIfAbsent(to, k -> new ArrayList<>()).add(section)
+      );
+
+      Optional<UniProtDbFrom> optionalDbFrom = UniProtDbFrom.get(section.getDatabase());
+      if (optionalDbFrom.isPresent()) {
+        reverseSections.computeIfAbsent(optionalDbFrom.get(), k -> new ArrayList<>()).add(section);
+      } else {
+        LOGGER.debug("Unknown from database: " + section.getDatabase());
+      }
+    }
   }
 
   public Map<String, List<String>> mapIds(UniProtDbFrom from, UniProtDbTo to, List<String> ids) {
+    return mapIds(from, to, this.defaultMatching, ids);
+  }
+
+  public Map<String, List<String>> mapIds(UniProtDbFrom from, UniProtDbTo to, IdMatching matching, String... ids) {
+    return mapIds(from, to, matching, Arrays.asList(ids));
+  }
+
+  public Map<String, List<String>> mapIds(UniProtDbFrom from, UniProtDbTo to, IdMatching matching, List<String> ids) {
     Map<String, List<String>> toret = new HashMap<>();
 
+    List<EdgeSection> sections = getSections(from, to);
+    if (sections.isEmpty()) {
+      return toret;
+    }
+
+    for (String id : ids) {
+      List<String> result = lookup(from, sections, matching, id);
+      if (!result.isEmpty()) {
+        toret.put(id, result);
+      }
+    }
+
+    return toret;
+  }
+
+  /**
+   * Maps the identifiers to several target databases in a single pass: the UniProtKB accessions of each
+   * identifier are looked up once and then the identifiers of every target database are collected from
+   * them. Mappings to UniProtKB have a single target, so they are mapped as usual.
+   */
+  @Override
+  public Map<UniProtDbTo, Map<String, List<String>>> mapIds(
+    UniProtDbFrom from, Set<UniProtDbTo> to, List<String> ids
+  ) {
+    if (!from.equals(UniProtDbFrom.UNIPROTKB_AC_ID)) {
+      return UniProtIdMapper.super.mapIds(from, to, ids);
+    }
+
+    Map<UniProtDbTo, Map<String, List<String>>> toret = new EnumMap<>(UniProtDbTo.class);
+    Map<UniProtDbTo, List<EdgeSection>> targetSections = new EnumMap<>(UniProtDbTo.class);
+    for (UniProtDbTo target : to) {
+      toret.put(target, new HashMap<>());
+      List<EdgeSection> sections = getSections(from, target);
+      if (!sections.isEmpty()) {
+        targetSections.put(target, sections);
+      }
+    }
+    if (targetSections.isEmpty()) {
+      return toret;
+    }
+
+    IdMatching matching = this.defaultMatching;
     for (String id : ids) {
-      Map<String, Map<UniProtDbTo, List<String>>> fromDbMapping = this.dbMapping.get(from);
-      if (fromDbMapping != null) {
-        Map<UniProtDbTo, List<String>> fromDbIdMappings = fromDbMapping.get(id);
-        if (fromDbIdMappings != null) {
-          List<String> result = fromDbIdMappings.get(to);
-          if (result != null && !result.isEmpty()) {
-            toret.put(id, result);
+      int[] accessions = accessionRange(matching, toKey(matching, id));
+      if (accessions[0] == accessions[1]) {
+        continue;
+      }
+
+      for (Map.Entry<UniProtDbTo, List<EdgeSection>> target : targetSections.entrySet()) {
+        List<String> result = new ArrayList<>();
+        for (int accession = accessions[0]; accession < accessions[1]; accession++) {
+          for (EdgeSection section : target.getValue()) {
+            this.index.forward(section, accession, result);
           }
         }
+
+        if (!result.isEmpty()) {
+          toret.get(target.getKey()).put(id, distinct(matching, result));
+        }
       }
     }
 
     return toret;
   }
-  
+
+  /**
+   * Maps the identifiers directly into an {@code IdMappingTable}, without building intermediate strings or
+   * lists, when the default matching is exact. Rows are sorted by source identifier.
+   */
+  @Override
+  public IdMappingTable mapIdsTable(UniProtDbFrom from, UniProtDbTo to, List<String> ids) {
+    if (this.defaultMatching == IdMatching.EXACT) {
+      return mapIdsBulk(from, to, ids, Runtime.getRuntime().availableProcessors());
+    } else {
+      return UniProtIdMapper.super.mapIdsTable(from, to, ids);
+    }
+  }
+
+  /**
+   * Maps a large list of identifiers with a sorted-merge join: the identifiers are sorted in parallel and
+   * split in ranges, and each range is joined against the sorted index in one forward pass. Identifiers are
+   * matched exactly and the results are returned as an {@code IdMappingTable} sorted by source identifier.
+   *
+   * @param from the source database.
+   * @param to the target database.
+   * @param ids the identifiers to map. Duplicates are mapped once.
+   * @param parallelism the number of threads used.
+   * @return the mapping results.
+   */
+  public IdMappingTable mapIdsBulk(UniProtDbFrom from, UniProtDbTo to, List<String> ids, int parallelism) {
+    List<EdgeSection> sections = getSections(from, to);
+    if (sections.isEmpty() || ids.isEmpty()) {
+      return new IdMappingTable.Builder().build();
+    }
+
+    ForkJoinPool customThreadPool = new ForkJoinPool(parallelism);
+    try {
+      return customThreadPool.submit(() -> {
+        byte[][] keys = ids.parallelStream().map(IdColumn::encode).toArray(byte[][]::new);
+        Arrays.parallelSort(keys, IdColumn::compare);
+
+        int ranges = Math.min(keys.length, parallelism * 4);
+        List<IdMappingTable> results = IntStream.range(0, ranges).parallel()
+          .mapToObj(range -> joinRange(
+            from, sections, keys, rangeStart(keys, range, ranges), rangeStart(keys, range + 1, ranges)
+          ))
+          .collect(toList());
+
+        return IdMappingTable.concat(results);
+      }).join();
+    } finally {
+      customThreadPool.shutdown();
+    }
+  }
+
+  private static int rangeStart(byte[][] keys, int range, int ranges) {
+    int start = (int) ((long) keys.length * range / ranges);
+
+    // Duplicated identifiers must fall in the same range to be mapped once
+    while (start > 0 && start < keys.length && IdColumn.compare(keys[start - 1], keys[start]) == 0) {
+      start++;
+    }
+
+    return start;
+  }
+
+  private IdMappingTable joinRange(UniProtDbFrom from, List<EdgeSection> sections, byte[][] keys, int start, int end) {
+    IdMappingTable.Builder results = new IdMappingTable.Builder();
+    IdColumn accessions = this.index.getAccessions();
+    int accession = 0;
+    int[] positions = new int[sections.size()];
+
+    for (int i = start; i < end; i++) {
+      if (i > start && IdColumn.compare(keys[i - 1], keys[i]) == 0) {
+        continue;
+      }
+
+      results.beginRow(keys[i]);
+      if (from.equals(UniProtDbFrom.UNIPROTKB_AC_ID)) {
+        accession = accessions.gallop(keys[i], accession);
+        if (accession < accessions.size() && accessions.compareTo(accession, keys[i]) == 0) {
+          for (int s = 0; s < positions.length; s++) {
+            EdgeSection section = sections.get(s);
+            int edge = section.firstEdgeOf(accession, positions[s]);
+            positions[s] = edge;
+            for (; edge < section.size() && section.getAccession(edge) == accession; edge++) {
+              results.addTarget(section.getXrefs(), edge);
+            }
+          }
+        }
+      } else {
+        for (int s = 0; s < positions.length; s++) {
+          EdgeSection section = sections.get(s);
+          int position = section.reverseGallop(keys[i], positions[s]);
+          positions[s] = position;
+          for (; position < section.size(); position++) {
+            int edge = section.getReverseEdge(position);
+            if (section.getXrefs().compareTo(edge, keys[i]) != 0) {
+              break;
+            }
+            results.addTarget(accessions, section.getAccession(edge));
+          }
+        }
+      }
+      results.endRow();
+    }
+
+    return results.build();
+  }
+
+  private List<EdgeSection> getSections(UniProtDbFrom from, UniProtDbTo to) {
+    List<EdgeSection> sections = null;
+    if (from.equals(UniProtDbFrom.UNIPROTKB_AC_ID)) {
+      sections = this.forwardSections.get(to);
+    } else if (to.equals(UniProtDbTo.UNIPROTKB)) {
+      sections = this.reverseSections.get(from);
+    }
+
+    return sections == null ? Collections.emptyList() : sections;
+  }
+
+  private List<String> lookup(UniProtDbFrom from, List<EdgeSection> sections, IdMatching matching, String id) {
+    List<String> result = new ArrayList<>();
+    byte[] key = toKey(matching, id);
+
+    // Filters only contain complete identifiers, so they can only be used with exact matching
+    boolean filtered = this.filters != null && matching == IdMatching.EXACT;
+    if (filtered && !mightContain(from, sections, key)) {
+      filterStatistics.recordRejected();
+      return result;
+    }
+
+    if (from.equals(UniProtDbFrom.UNIPROTKB_AC_ID)) {
+      int[] accessions = accessionRange(matching, key);
+      for (int accession = accessions[0]; accession < accessions[1]; accession++) {
+        for (EdgeSection section : sections) {
+          this.index.forward(section, accession, result);
+        }
+      }
+    } else {
+      for (EdgeSection section : sections) {
+        if (filtered && !this.filters.getReverseFilter(section.getDatabase()).mightContain(key)) {
+          continue;
+        }
+        if (matching == IdMatching.PREFIX) {
+          this.index.reversePrefix(section, key, result);
+        } else {
+          this.index.reverse(section, key, result);
+          if (matching == IdMatching.ANY_VERSION) {
+            this.index.reverseVersions(section, key, result);
+          }
+        }
+      }
+    }
+
+    if (filtered) {
+      filterStatistics.recordPassed(!result.isEmpty());
+    }
+
+    return distinct(matching, result);
+  }
+
+  private static List<String> distinct(IdMatching matching, List<String> result) {
+    // Inexact matches may reach the same identifier through several versions or prefixed identifiers
+    return matching == IdMatching.EXACT || result.size() < 2 ? result : new ArrayList<>(new LinkedHashSet<>(result));
+  }
+
+  private boolean mightContain(UniProtDbFrom from, List<EdgeSection> sections, byte[] key) {
+    boolean forward = from.equals(UniProtDbFrom.UNIPROTKB_AC_ID);
+    for (EdgeSection section : sections) {
+      BloomFilter filter = forward
+        ? this.filters.getForwardFilter(section.getDatabase())
+        : this.filters.getReverseFilter(section.getDatabase());
+      if (filter.mightContain(key)) {
+        return true;
+      }
+    }
+
+    return false;
+  }
+
+  private static byte[] toKey(IdMatching matching, String id) {
+    byte[] key = IdColumn.encode(id);
+
+    return matching == IdMatching.ANY_VERSION ? Arrays.copyOf(key, MappingIndex.unversionedLength(key)) : key;
+  }
+
+  private int[] accessionRange(IdMatching matching, byte[] key) {
+    if (matching == IdMatching.PREFIX) {
+      return this.index.accessionPrefixRange(key);
+    }
+
+    int accession = this.index.getAccessions().indexOf(key);
+
+    return accession < 0 ? new int[] { 0, 0 } : new int[] { accession, accession + 1 };
+  }
+
+  /**
+   * Returns the taxa of the files of this mapper, or an empty list if its accessions are not tagged.
+   *
+   * @return the taxa of the mapper.
+   */
+  public List<String> getTaxa() {
+    return taxa;
+  }
+
+  /**
+   * Returns the taxon of the file where an accession was found.
+   *
+   * @param accession the UniProtKB accession.
+   * @return the taxon of the accession, or {@code null} if it is unknown or accessions are not tagged.
+   */
+  public String getTaxon(String accession) {
+    int position = this.index.indexOfAccession(accession);
+    int tag = position < 0 ? -1 : this.index.getAccessionTag(position);
+
+    return tag < 0 ? null : taxa.get(tag);
+  }
+
+  /**
+   * Maps the identifiers restricting the results to the accessions of one taxon: when mapping from
+   * UniProtKB, only the accessions of the taxon are mapped, and when mapping to UniProtKB, only the
+   * accessions of the taxon are returned.
+   *
+   * @param from the source database.
+   * @param to the target database.
+   * @param taxon one of the taxa of the mapper.
+   * @param ids the identifiers to map.
+   * @return the mapping results.
+   */
+  public Map<String, List<String>> mapIdsInTaxon(UniProtDbFrom from, UniProtDbTo to, String taxon, List<String> ids) {
+    if (!taxa.contains(taxon)) {
+      throw new IllegalArgumentException("Unknown taxon: " + taxon);
+    }
+
+    Map<String, List<String>> results = mapIds(from, to, ids);
+    if (from.equals(UniProtDbFrom.UNIPROTKB_AC_ID)) {
+      results.keySet().removeIf(accession -> !taxon.equals(getTaxon(accession)));
+    } else {
+      results.values().forEach(accessions -> accessions.removeIf(accession -> !taxon.equals(getTaxon(accession))));
+      results.values().removeIf(List::isEmpty);
+    }
+
+    return results;
+  }
+
+  /**
+   * Returns whether the local index can map identifiers from one database to another, that is, whether one
+   * of them is UniProtKB and the other one has mappings in the source file.
+   *
+   * @param from the source database.
+   * @param to the target database.
+   * @return {@code true} if the index has mappings for the pair, {@code false} otherwise.
+   */
+  public boolean supportsPair(UniProtDbFrom from, UniProtDbTo to) {
+    return !getSections(from, to).isEmpty();
+  }
+
+  public boolean containsId(UniProtDbFrom from, String id) {
+    return containsId(from, this.defaultMatching, id);
+  }
+
+  public boolean containsId(UniProtDbFrom from, IdMatching matching, String id) {
+    if (from.equals(UniProtDbFrom.UNIPROTKB_AC_ID)) {
+      int[] accessions = accessionRange(matching, toKey(matching, id));
+
+      return accessions[0] < accessions[1];
+    } else {
+      return !lookup(from, getSections(from, UniProtDbTo.UNIPROTKB), matching, id).isEmpty();
+    }
+  }
+
   public static void main(String[] args) throws IOException {
     UniProtIdLocalMapper localMapper = new UniProtIdLocalMapper(
         new File("src/test/resources/DROME_7227_idmapping_subset.dat"));
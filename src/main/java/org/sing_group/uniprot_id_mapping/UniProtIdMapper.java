@@ -26,6 +26,7 @@
 package org.sing_group.uniprot_id_mapping;
 
 import java.util.Arrays;
+import java.util.EnumMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -40,4 +41,37 @@ public interface UniProtIdMapper {
     default public Map<String, List<String>> mapIds(UniProtDbFrom from, UniProtDbTo to, String... ids) {
         return mapIds(from, to, Arrays.asList(ids));
     }
+
+    /**
+     * Maps the identifiers and returns the results as an {@code IdMappingTable}, a columnar container
+     * that is more compact than a map for large results and can be written out as TSV directly.
+     *
+     * @param from the source database.
+     * @param to the target database.
+     * @param ids the identifiers to map.
+     * @return the mapping results.
+     */
+    default IdMappingTable mapIdsTable(UniProtDbFrom from, UniProtDbTo to, List<String> ids) {
+        return IdMappingTable.fromMap(mapIds(from, to, ids));
+    }
+
+    /**
+     * Maps the identifiers to several target databases at once. By default, each target is mapped in turn,
+     * but implementations may share the work done for each identifier between the targets.
+     *
+     * @param from the source database.
+     * @param to the target databases.
+     * @param ids the identifiers to map.
+     * @return the mapping results of each target database.
+     */
+    default Map<UniProtDbTo, Map<String, List<String>>> mapIds(
+        UniProtDbFrom from, Set<UniProtDbTo> to, List<String> ids
+    ) {
+        Map<UniProtDbTo, Map<String, List<String>>> results = new EnumMap<>(UniProtDbTo.class);
+        for (UniProtDbTo target : to) {
+            results.put(target, mapIds(from, target, ids));
+        }
+
+        return results;
+    }
 }
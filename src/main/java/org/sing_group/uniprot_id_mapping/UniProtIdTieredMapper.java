@@ -0,0 +1,141 @@
+/*
+ * #%L
+ * UniProt ID Mapping
+ * %%
+ * Copyright (C) 2024 Hugo López-Fernández
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+package org.sing_group.uniprot_id_mapping;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.sing_group.uniprot_id_mapping.cache.IdCache;
+import org.sing_group.uniprot_id_mapping.cache.PersistentIdCache;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public class UniProtIdTieredMapper implements UniProtIdMapper {
+    private static final Logger LOGGER = LoggerFactory.getLogger(UniProtIdTieredMapper.class);
+
+    private UniProtIdLocalMapper localMapper;
+    private UniProtIdMapper remoteMapper;
+
+    public UniProtIdTieredMapper(File uniprotMappingDatFile, IdCache cache) throws IOException {
+        this(new UniProtIdLocalMapper(uniprotMappingDatFile), new UniProtBatchProcessor(cache));
+    }
+
+    public UniProtIdTieredMapper(UniProtIdLocalMapper localMapper, UniProtIdMapper remoteMapper) {
+        this.localMapper = localMapper;
+        this.remoteMapper = remoteMapper;
+    }
+
+    public Map<String, List<String>> mapIds(UniProtDbFrom from, UniProtDbTo to, List<String> ids) {
+        Map<String, List<String>> results = new HashMap<>(localMapper.mapIds(from, to, ids));
+
+        // Identifiers present in the local release without a mapping to the target database are
+        // definitive misses, so only the ones unknown to the local release are sent to the remote mapper.
+        // This only holds for pairs of databases that the local release can map at all
+        boolean supported = localMapper.supportsPair(from, to);
+        Set<String> misses = new LinkedHashSet<>();
+        for (String id : ids) {
+            if (!results.containsKey(id) && (!supported || !localMapper.containsId(from, id))) {
+                misses.add(id);
+            }
+        }
+
+        LOGGER.debug("Mapped {} identifiers locally, {} sent to the remote mapper", results.size(), misses.size());
+
+        if (!misses.isEmpty()) {
+            results.putAll(remoteMapper.mapIds(from, to, new ArrayList<>(misses)));
+        }
+
+        return results;
+    }
+
+    @Override
+    public Map<UniProtDbTo, Map<String, List<String>>> mapIds(
+        UniProtDbFrom from, Set<UniProtDbTo> to, List<String> ids
+    ) {
+        Map<UniProtDbTo, Map<String, List<String>>> results = localMapper.mapIds(from, to, ids);
+
+        // Identifiers unknown to the local release are sent to the remote mapper for every target, while
+        // known ones are only sent for the targets that the local release cannot map
+        Set<UniProtDbTo> unsupportedTargets = EnumSet.noneOf(UniProtDbTo.class);
+        for (UniProtDbTo target : to) {
+            if (!localMapper.supportsPair(from, target)) {
+                unsupportedTargets.add(target);
+            }
+        }
+
+        Set<String> misses = new LinkedHashSet<>();
+        Set<String> unsupportedMisses = new LinkedHashSet<>();
+        for (String id : ids) {
+            if (!localMapper.containsId(from, id)) {
+                misses.add(id);
+            } else if (!unsupportedTargets.isEmpty()) {
+                unsupportedMisses.add(id);
+            }
+        }
+
+        LOGGER.debug(
+            "Mapping {} identifiers locally, {} sent to the remote mapper for all the targets and {} for {}",
+            ids.size(), misses.size(), unsupportedMisses.size(), unsupportedTargets
+        );
+
+        if (!misses.isEmpty()) {
+            remoteMapper.mapIds(from, to, new ArrayList<>(misses)).forEach(
+                (target, targetResults) -> results.get(target).putAll(targetResults)
+            );
+        }
+        if (!unsupportedMisses.isEmpty()) {
+            remoteMapper.mapIds(from, unsupportedTargets, new ArrayList<>(unsupportedMisses)).forEach(
+                (target, targetResults) -> results.get(target).putAll(targetResults)
+            );
+        }
+
+        return results;
+    }
+
+    public static void main(String[] args) throws IOException {
+        UniProtIdTieredMapper mapper = new UniProtIdTieredMapper(
+            new File("src/test/resources/DROME_7227_idmapping_subset.dat"),
+            new PersistentIdCache("/tmp/cache.txt")
+        );
+
+        Map<String, List<String>> results = mapper.mapIds(
+            UniProtDbFrom.UNIPROTKB_AC_ID,
+            UniProtDbTo.GENEID,
+            "P32234", "O77134", "Q7KN62"
+        );
+
+        results.forEach((k, v) -> {
+            System.out.println(k + " -> " + v + " (" + v.size() + ")");
+        });
+    }
+}
@@ -0,0 +1,296 @@
+/*
+ * #%L
+ * UniProt ID Mapping
+ * %%
+ * Copyright (C) 2024 Hugo López-Fernández
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+package org.sing_group.uniprot_id_mapping.cache;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+import org.sing_group.uniprot_id_mapping.UniProtDbFrom;
+import org.sing_group.uniprot_id_mapping.UniProtDbTo;
+import org.sing_group.uniprot_id_mapping.index.BloomFilter;
+
+/**
+ * Cache that checks a Bloom filter of the cached identifiers before querying the underlying cache, so that
+ * lookups of identifiers that were never cached do not reach it. This is worthwhile when the underlying
+ * cache is slow or contended and most lookups are misses.
+ *
+ * When the underlying cache keeps the mappings of each pair of databases apart, each pair has its own filter,
+ * so that identifiers cached for one pair are rejected for the others. Otherwise, one filter is shared by all
+ * the lookups, as they all reach the same entries. Filters are created on first use, so the underlying cache
+ * must be empty unless the filters are given (see {@link PersistentIdCache#createFilter(double, long)}) or
+ * read with {@link #read(IdCache, Path, long, double)}. Identifiers added through this cache are added to them.
+ */
+public class BloomFilteredIdCache implements IdCache {
+    private static final int MAGIC = 0x55504346; // "UPCF"
+    private static final int VERSION = 1;
+    private static final String UNPAIRED = "";
+
+    private final IdCache delegate;
+    private final long expectedIds;
+    private final double falsePositiveRate;
+    private final Map<String, BloomFilter> filters;
+    private final BloomFilter.Statistics statistics = new BloomFilter.Statistics();
+
+    /**
+     * Creates a filtered cache over an empty cache.
+     *
+     * @param delegate the underlying cache, which must be empty.
+     * @param expectedIds the expected number of identifiers that will be cached for each pair of databases.
+     * @param falsePositiveRate the target false positive rate of the filters.
+     */
+    public BloomFilteredIdCache(IdCache delegate, long expectedIds, double falsePositiveRate) {
+        this(delegate, expectedIds, falsePositiveRate, new HashMap<>());
+    }
+
+    /**
+     * Creates a filtered cache over a cache that does not keep the mappings of each pair of databases apart.
+     *
+     * @param delegate the underlying cache.
+     * @param filter the filter of the identifiers of the underlying cache.
+     * @throws IllegalArgumentException if the underlying cache keeps the mappings of each pair apart, as they
+     *  need a filter each.
+     */
+    public BloomFilteredIdCache(IdCache delegate, BloomFilter filter) {
+        this(delegate, 0, 0.01, singleFilter(delegate, filter));
+    }
+
+    private BloomFilteredIdCache(
+        IdCache delegate, long expectedIds, double falsePositiveRate, Map<String, BloomFilter> filters
+    ) {
+        this.delegate = delegate;
+        this.expectedIds = expectedIds;
+        this.falsePositiveRate = falsePositiveRate;
+        this.filters = new ConcurrentHashMap<>(filters);
+    }
+
+    private static Map<String, BloomFilter> singleFilter(IdCache delegate, BloomFilter filter) {
+        if (delegate.keepsPairsApart()) {
+            throw new IllegalArgumentException("A cache that keeps each pair of databases apart needs a filter each");
+        }
+
+        Map<String, BloomFilter> filters = new HashMap<>();
+        filters.put(UNPAIRED, filter);
+
+        return filters;
+    }
+
+    /**
+     * Creates a filtered cache with the filters written by {@link #write(Path)}. Filters must be written
+     * whenever the cache is persisted, as identifiers added after the filters were written would be rejected.
+     *
+     * @param delegate the underlying cache, with the same content as when the filters were written.
+     * @param file the file of the filters.
+     * @param expectedIds the expected number of identifiers of the filters of new pairs of databases.
+     * @param falsePositiveRate the target false positive rate of the filters of new pairs of databases.
+     * @return the filtered cache.
+     * @throws IOException if an I/O error occurs or the file is not valid.
+     */
+    public static BloomFilteredIdCache read(
+        IdCache delegate, Path file, long expectedIds, double falsePositiveRate
+    ) throws IOException {
+        CRC32 crc = new CRC32();
+        try (
+            DataInputStream in = new DataInputStream(
+                new CheckedInputStream(new BufferedInputStream(Files.newInputStream(file), 1 << 16), crc)
+            )
+        ) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("Not a cache filters file: " + file);
+            }
+            int count = in.readInt();
+            Map<String, BloomFilter> filters = new HashMap<>();
+            for (int i = 0; i < count; i++) {
+                String key = in.readUTF();
+                filters.put(key, BloomFilter.readFrom(in));
+            }
+
+            long checksum = crc.getValue();
+            if (in.readLong() != checksum) {
+                throw new IOException("Corrupted cache filters file: " + file);
+            }
+
+            return new BloomFilteredIdCache(delegate, expectedIds, falsePositiveRate, filters);
+        }
+    }
+
+    /**
+     * Writes the filters to a file, through a temporary file that is moved to the target path once complete.
+     *
+     * @param file the file of the filters.
+     * @throws IOException if an I/O error occurs.
+     */
+    public void write(Path file) throws IOException {
+        Path temporaryFile = Files.createTempFile(
+            file.toAbsolutePath().getParent(), file.getFileName().toString(), ".tmp"
+        );
+        try {
+            CRC32 crc = new CRC32();
+            try (
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                    new CheckedOutputStream(Files.newOutputStream(temporaryFile), crc), 1 << 16
+                ))
+            ) {
+                Map<String, BloomFilter> snapshot = new HashMap<>(filters);
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(snapshot.size());
+                for (Map.Entry<String, BloomFilter> filter : snapshot.entrySet()) {
+                    out.writeUTF(filter.getKey());
+                    filter.getValue().writeTo(out);
+                }
+                out.flush();
+                out.writeLong(crc.getValue());
+            }
+            Files.move(temporaryFile, file, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(temporaryFile);
+        }
+    }
+
+    private BloomFilter filter(UniProtDbFrom from, UniProtDbTo to) {
+        String key = from == null || !delegate.keepsPairsApart() ? UNPAIRED : from.name() + "\t" + to.name();
+
+        return filters.computeIfAbsent(key, k -> BloomFilter.create(expectedIds, falsePositiveRate));
+    }
+
+    @Override
+    public List<String> getFromCache(String id) {
+        return getFromCache(filter(null, null), id, () -> delegate.getFromCache(id));
+    }
+
+    @Override
+    public List<String> getFromCache(UniProtDbFrom from, UniProtDbTo to, String id) {
+        return getFromCache(filter(from, to), id, () -> delegate.getFromCache(from, to, id));
+    }
+
+    private List<String> getFromCache(BloomFilter filter, String id, Supplier<List<String>> lookup) {
+        if (!filter.mightContain(id)) {
+            statistics.recordRejected();
+            return null;
+        }
+
+        List<String> mappedIds = lookup.get();
+        statistics.recordPassed(mappedIds != null);
+
+        return mappedIds;
+    }
+
+    @Override
+    public Map<String, List<String>> getAllFromCache(Collection<String> ids) {
+        return getAllFromCache(filter(null, null), ids, delegate::getAllFromCache);
+    }
+
+    @Override
+    public Map<String, List<String>> getAllFromCache(UniProtDbFrom from, UniProtDbTo to, Collection<String> ids) {
+        return getAllFromCache(filter(from, to), ids, passedIds -> delegate.getAllFromCache(from, to, passedIds));
+    }
+
+    private Map<String, List<String>> getAllFromCache(
+        BloomFilter filter, Collection<String> ids, Function<List<String>, Map<String, List<String>>> lookup
+    ) {
+        List<String> passedIds = new ArrayList<>();
+        for (String id : ids) {
+            if (filter.mightContain(id)) {
+                passedIds.add(id);
+            } else {
+                statistics.recordRejected();
+            }
+        }
+        if (passedIds.isEmpty()) {
+            return new HashMap<>();
+        }
+
+        Map<String, List<String>> cached = lookup.apply(passedIds);
+        for (String id : passedIds) {
+            statistics.recordPassed(cached.containsKey(id));
+        }
+
+        return cached;
+    }
+
+    @Override
+    public void addToCache(String id, List<String> mappedIds) {
+        // The identifier is added to the filter first so that it is never rejected once cached
+        filter(null, null).add(id);
+        delegate.addToCache(id, mappedIds);
+    }
+
+    @Override
+    public void addToCache(UniProtDbFrom from, UniProtDbTo to, String id, List<String> mappedIds) {
+        filter(from, to).add(id);
+        delegate.addToCache(from, to, id, mappedIds);
+    }
+
+    @Override
+    public void addAllToCache(Map<String, List<String>> mappings) {
+        mappings.keySet().forEach(filter(null, null)::add);
+        delegate.addAllToCache(mappings);
+    }
+
+    @Override
+    public void addAllToCache(UniProtDbFrom from, UniProtDbTo to, Map<String, List<String>> mappings) {
+        mappings.keySet().forEach(filter(from, to)::add);
+        delegate.addAllToCache(from, to, mappings);
+    }
+
+    @Override
+    public boolean keepsPairsApart() {
+        return delegate.keepsPairsApart();
+    }
+
+    /**
+     * Returns the filter of a pair of databases, which is shared by all of them when the underlying cache
+     * does not keep them apart.
+     *
+     * @param from the source database.
+     * @param to the target database.
+     * @return the filter of the pair.
+     */
+    public BloomFilter getFilter(UniProtDbFrom from, UniProtDbTo to) {
+        return filter(from, to);
+    }
+
+    public BloomFilter.Statistics getStatistics() {
+        return statistics;
+    }
+}
@@ -0,0 +1,181 @@
+/*
+ * #%L
+ * UniProt ID Mapping
+ * %%
+ * Copyright (C) 2024 Hugo López-Fernández
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+package org.sing_group.uniprot_id_mapping.cache;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Cache that keeps its keys and values encoded with {@link IdListCodec} instead of as strings and lists,
+ * which takes several times less memory for typical identifiers at the cost of decoding the values on
+ * every lookup. It can also be persisted to a binary append-only file, which takes several times less disk
+ * space than the text file of the {@link PersistentIdCache}.
+ *
+ * Records of the file are the length and bytes of the encoded key, followed by the length and bytes of the
+ * encoded value. A record left incomplete by an interrupted write is discarded when the file is loaded.
+ */
+public class CompactIdCache implements IdCache {
+    private static final Logger LOGGER = LoggerFactory.getLogger(CompactIdCache.class);
+
+    private final Map<Key, byte[]> cache = new ConcurrentHashMap<>();
+    private final Path cacheFile;
+    private final boolean compress;
+
+    /**
+     * Creates an in-memory cache.
+     */
+    public CompactIdCache() {
+        this(null, true);
+    }
+
+    public CompactIdCache(Path cacheFile) {
+        this(cacheFile, true);
+    }
+
+    /**
+     * @param cacheFile the file where the cache is persisted, or {@code null} to keep it only in memory.
+     * @param compress whether large lists of identifiers are deflated.
+     */
+    public CompactIdCache(Path cacheFile, boolean compress) {
+        this.cacheFile = cacheFile;
+        this.compress = compress;
+        if (cacheFile != null && Files.exists(cacheFile)) {
+            loadCache();
+        }
+    }
+
+    @Override
+    public List<String> getFromCache(String id) {
+        byte[] encoded = cache.get(new Key(IdListCodec.encodeId(id)));
+
+        return encoded == null ? null : IdListCodec.decode(encoded);
+    }
+
+    @Override
+    public void addToCache(String id, List<String> mappedIds) {
+        addAllToCache(Collections.singletonMap(id, mappedIds));
+    }
+
+    @Override
+    public synchronized void addAllToCache(Map<String, List<String>> mappings) {
+        ByteArrayRecords records = cacheFile == null ? null : new ByteArrayRecords();
+        mappings.forEach((id, mappedIds) -> {
+            Key key = new Key(IdListCodec.encodeId(id));
+            byte[] value = IdListCodec.encode(mappedIds, compress);
+            byte[] previous = cache.put(key, value);
+            if (records != null && !Arrays.equals(previous, value)) {
+                records.add(key.bytes, value);
+            }
+        });
+
+        if (records != null && records.size() > 0) {
+            try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(
+                cacheFile, StandardOpenOption.CREATE, StandardOpenOption.APPEND
+            ), 1 << 16)) {
+                records.writeTo(out);
+            } catch (IOException e) {
+                throw new RuntimeException("Failed to append to cache file.", e);
+            }
+        }
+    }
+
+    public int size() {
+        return cache.size();
+    }
+
+    private void loadCache() {
+        try (FileChannel channel = FileChannel.open(cacheFile, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            byte[] data = Files.readAllBytes(cacheFile);
+            int[] position = { 0 };
+            int validLength = 0;
+            try {
+                while (position[0] < data.length) {
+                    byte[] key = readField(data, position);
+                    byte[] value = readField(data, position);
+                    cache.put(new Key(key), value);
+                    validLength = position[0];
+                }
+            } catch (IndexOutOfBoundsException e) {
+                LOGGER.warn("Discarding an incomplete record at the end of {}", cacheFile);
+                channel.truncate(validLength);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to load cache file.", e);
+        }
+    }
+
+    private static byte[] readField(byte[] data, int[] position) {
+        int length = (int) IdListCodec.readVarInt(data, position);
+        if (position[0] + length > data.length) {
+            throw new IndexOutOfBoundsException();
+        }
+        byte[] field = Arrays.copyOfRange(data, position[0], position[0] + length);
+        position[0] += length;
+
+        return field;
+    }
+
+    private static final class ByteArrayRecords extends ByteArrayOutputStream {
+        void add(byte[] key, byte[] value) {
+            IdListCodec.writeVarInt(this, key.length);
+            write(key, 0, key.length);
+            IdListCodec.writeVarInt(this, value.length);
+            write(value, 0, value.length);
+        }
+    }
+
+    private static final class Key {
+        private final byte[] bytes;
+
+        Key(byte[] bytes) {
+            this.bytes = bytes;
+        }
+
+        @Override
+        public int hashCode() {
+            return Arrays.hashCode(bytes);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof Key && Arrays.equals(bytes, ((Key) obj).bytes);
+        }
+    }
+}
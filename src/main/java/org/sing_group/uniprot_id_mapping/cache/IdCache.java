@@ -26,7 +26,13 @@
 package org.sing_group.uniprot_id_mapping.cache;
 
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+
+import org.sing_group.uniprot_id_mapping.UniProtDbFrom;
+import org.sing_group.uniprot_id_mapping.UniProtDbTo;
 
 public interface IdCache {
     List<String> getFromCache(String id);
@@ -36,4 +42,78 @@ public interface IdCache {
     default void addToCache(String id, String... mappedIds) {
         addToCache(id, Arrays.asList(mappedIds));
     }
+
+    /**
+     * Returns the cached mapping of an identifier from one database to another. By default, the databases
+     * are ignored, which is only correct when the cache is used for a single pair of databases. Caches
+     * shared between several pairs, such as {@link PairedIdCache}, keep each pair apart.
+     *
+     * @param from the source database.
+     * @param to the target database.
+     * @param id the identifier.
+     * @return the cached mapped identifiers, or {@code null} if the identifier is not cached.
+     */
+    default List<String> getFromCache(UniProtDbFrom from, UniProtDbTo to, String id) {
+        return getFromCache(id);
+    }
+
+    default void addToCache(UniProtDbFrom from, UniProtDbTo to, String id, List<String> mappedIds) {
+        addToCache(id, mappedIds);
+    }
+
+    /**
+     * Returns whether the mappings of each pair of databases are kept apart, so that the cache can be shared
+     * by several pairs. By default, they are not.
+     *
+     * @return {@code true} if the mappings of each pair of databases are kept apart.
+     */
+    default boolean keepsPairsApart() {
+        return false;
+    }
+
+    /**
+     * Returns the cached mappings of several identifiers at once. Implementations backed by remote stores
+     * should override it to fetch all of them in a single request.
+     *
+     * @param ids the identifiers.
+     * @return the cached mapped identifiers of each cached identifier. Identifiers that are not cached are
+     *  not included.
+     */
+    default Map<String, List<String>> getAllFromCache(Collection<String> ids) {
+        Map<String, List<String>> cached = new HashMap<>();
+        for (String id : ids) {
+            List<String> mappedIds = getFromCache(id);
+            if (mappedIds != null) {
+                cached.put(id, mappedIds);
+            }
+        }
+
+        return cached;
+    }
+
+    default Map<String, List<String>> getAllFromCache(UniProtDbFrom from, UniProtDbTo to, Collection<String> ids) {
+        Map<String, List<String>> cached = new HashMap<>();
+        for (String id : ids) {
+            List<String> mappedIds = getFromCache(from, to, id);
+            if (mappedIds != null) {
+                cached.put(id, mappedIds);
+            }
+        }
+
+        return cached;
+    }
+
+    /**
+     * Adds several mappings at once. Implementations that write to storage should override it to write all
+     * of them together instead of one by one.
+     *
+     * @param mappings the mapped identifiers of each identifier.
+     */
+    default void addAllToCache(Map<String, List<String>> mappings) {
+        mappings.forEach(this::addToCache);
+    }
+
+    default void addAllToCache(UniProtDbFrom from, UniProtDbTo to, Map<String, List<String>> mappings) {
+        mappings.forEach((id, mappedIds) -> addToCache(from, to, id, mappedIds));
+    }
 }
@@ -0,0 +1,244 @@
+/*
+ * #%L
+ * UniProt ID Mapping
+ * %%
+ * Copyright (C) 2024 Hugo López-Fernández
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+package org.sing_group.uniprot_id_mapping.cache;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.zip.GZIPInputStream;
+
+import org.sing_group.uniprot_id_mapping.UniProtDbFrom;
+import org.sing_group.uniprot_id_mapping.UniProtDbTo;
+import org.sing_group.uniprot_id_mapping.index.EdgeSection;
+import org.sing_group.uniprot_id_mapping.index.IdColumn;
+import org.sing_group.uniprot_id_mapping.index.MappingIndex;
+import org.sing_group.uniprot_id_mapping.index.MappingIndexBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Imports the mappings of a local UniProt {@code idmapping.dat} release (plain or gzipped) into an
+ * {@code IdCache}, so that it can be warmed up without querying the remote service. Only the selected pairs
+ * of databases are imported, and entries are written in chunks with {@link IdCache#addAllToCache}.
+ *
+ * Mappings from UniProtKB accessions are streamed, as the lines of each accession are consecutive in
+ * release files. Mappings to UniProtKB need the lines of each identifier to be grouped, so the edges of
+ * their databases are indexed in memory while the file is read and imported at the end.
+ */
+public class IdCacheImporter {
+    private static final Logger LOGGER = LoggerFactory.getLogger(IdCacheImporter.class);
+
+    public static final int DEFAULT_CHUNK_SIZE = 10_000;
+
+    private final IdCache cache;
+    private final int chunkSize;
+    private final Set<UniProtDbTo> forwardTargets = EnumSet.noneOf(UniProtDbTo.class);
+    private final Set<UniProtDbFrom> reverseSources = EnumSet.noneOf(UniProtDbFrom.class);
+
+    public IdCacheImporter(IdCache cache) {
+        this(cache, DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * @param cache the cache where the mappings are imported.
+     * @param chunkSize the number of identifiers written to the cache at once.
+     */
+    public IdCacheImporter(IdCache cache, int chunkSize) {
+        this.cache = cache;
+        this.chunkSize = Math.max(1, chunkSize);
+    }
+
+    /**
+     * Selects a pair of databases to import. As in the local mapper, one of them must be UniProtKB. Several
+     * pairs can only be imported into a cache that keeps the mappings of each pair apart.
+     *
+     * @param from the source database.
+     * @param to the target database.
+     * @return this importer.
+     * @throws IllegalArgumentException if neither the source nor the target database is UniProtKB, or if
+     *  another pair was selected and the cache does not keep the mappings of each pair apart.
+     */
+    public IdCacheImporter addPair(UniProtDbFrom from, UniProtDbTo to) {
+        boolean forward = from.equals(UniProtDbFrom.UNIPROTKB_AC_ID);
+        if (!forward && !to.equals(UniProtDbTo.UNIPROTKB)) {
+            throw new IllegalArgumentException("Unsupported pair of databases: " + from + " to " + to);
+        }
+
+        boolean selected = forward ? forwardTargets.contains(to) : reverseSources.contains(from);
+        if (!selected && !cache.keepsPairsApart() && forwardTargets.size() + reverseSources.size() > 0) {
+            throw new IllegalArgumentException(
+                "The cache does not keep each pair of databases apart, so only one pair can be imported"
+            );
+        }
+
+        if (forward) {
+            forwardTargets.add(to);
+        } else {
+            reverseSources.add(from);
+        }
+
+        return this;
+    }
+
+    /**
+     * Imports the selected pairs from a release file, which is decompressed if its name ends with
+     * {@code .gz}.
+     *
+     * @param datFile the {@code idmapping.dat} file.
+     * @return the number of identifiers imported, adding those of every pair.
+     * @throws IOException if an I/O error occurs reading the file.
+     */
+    public long importFile(Path datFile) throws IOException {
+        InputStream in = Files.newInputStream(datFile);
+        if (datFile.getFileName().toString().endsWith(".gz")) {
+            in = new GZIPInputStream(in, 1 << 16);
+        }
+
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(in, UTF_8), 1 << 16)) {
+            return importLines(reader);
+        }
+    }
+
+    public long importLines(BufferedReader reader) throws IOException {
+        Map<UniProtDbTo, Map<String, List<String>>> chunks = new EnumMap<>(UniProtDbTo.class);
+        forwardTargets.forEach(to -> chunks.put(to, new LinkedHashMap<>()));
+        Map<String, Optional<UniProtDbTo>> targetNames = new HashMap<>();
+
+        // Only the lines of the databases of reverse pairs are indexed
+        MappingIndexBuilder reverseBuilder = reverseSources.isEmpty() ? null : new MappingIndexBuilder(
+            database -> UniProtDbFrom.get(database).filter(reverseSources::contains).isPresent()
+        );
+
+        long imported = 0;
+        Map<UniProtDbTo, List<String>> current = new EnumMap<>(UniProtDbTo.class);
+        String currentAccession = null;
+        String line;
+        while ((line = reader.readLine()) != null) {
+            int firstTab = line.indexOf('\t');
+            int secondTab = firstTab < 0 ? -1 : line.indexOf('\t', firstTab + 1);
+            if (secondTab < 0) {
+                continue;
+            }
+            if (reverseBuilder != null) {
+                reverseBuilder.addLine(line);
+            }
+            if (forwardTargets.isEmpty()) {
+                continue;
+            }
+
+            if (currentAccession == null || !line.regionMatches(0, currentAccession, 0, firstTab)
+                || currentAccession.length() != firstTab) {
+                imported += addAccession(currentAccession, current, chunks);
+                currentAccession = line.substring(0, firstTab);
+            }
+
+            Optional<UniProtDbTo> to = targetNames.computeIfAbsent(
+                line.substring(firstTab + 1, secondTab),
+                database -> UniProtDbTo.get(database).filter(forwardTargets::contains)
+            );
+            if (to.isPresent()) {
+                current.computeIfAbsent(to.get(), k -> new ArrayList<>()).add(line.substring(secondTab + 1));
+            }
+        }
+        imported += addAccession(currentAccession, current, chunks);
+        chunks.forEach((to, chunk) -> flush(UniProtDbFrom.UNIPROTKB_AC_ID, to, chunk));
+
+        if (reverseBuilder != null) {
+            imported += importReverse(reverseBuilder.build());
+        }
+
+        LOGGER.info("Imported {} identifiers into the cache", imported);
+
+        return imported;
+    }
+
+    private int addAccession(
+        String accession, Map<UniProtDbTo, List<String>> mappedIds, Map<UniProtDbTo, Map<String, List<String>>> chunks
+    ) {
+        int added = mappedIds.size();
+        mappedIds.forEach((to, ids) -> {
+            Map<String, List<String>> chunk = chunks.get(to);
+            chunk.put(accession, ids);
+            if (chunk.size() >= chunkSize) {
+                flush(UniProtDbFrom.UNIPROTKB_AC_ID, to, chunk);
+            }
+        });
+        mappedIds.clear();
+
+        return added;
+    }
+
+    private long importReverse(MappingIndex index) {
+        long imported = 0;
+        IdColumn accessions = index.getAccessions();
+        for (EdgeSection section : index.getSections()) {
+            UniProtDbFrom from = UniProtDbFrom.get(section.getDatabase()).get();
+            IdColumn xrefs = section.getXrefs();
+            Map<String, List<String>> chunk = new LinkedHashMap<>();
+
+            // Edges in reverse order are sorted by identifier, so the edges of each identifier are consecutive
+            List<String> mappedIds = null;
+            int previousEdge = -1;
+            for (int position = 0; position < section.size(); position++) {
+                int edge = section.getReverseEdge(position);
+                if (previousEdge < 0 || xrefs.compare(edge, previousEdge) != 0) {
+                    if (chunk.size() >= chunkSize) {
+                        flush(from, UniProtDbTo.UNIPROTKB, chunk);
+                    }
+                    mappedIds = new ArrayList<>();
+                    chunk.put(xrefs.get(edge), mappedIds);
+                    imported++;
+                }
+                mappedIds.add(accessions.get(section.getAccession(edge)));
+                previousEdge = edge;
+            }
+            flush(from, UniProtDbTo.UNIPROTKB, chunk);
+        }
+
+        return imported;
+    }
+
+    private void flush(UniProtDbFrom from, UniProtDbTo to, Map<String, List<String>> chunk) {
+        if (!chunk.isEmpty()) {
+            cache.addAllToCache(from, to, chunk);
+            chunk.clear();
+        }
+    }
+}
@@ -0,0 +1,259 @@
+/*
+ * #%L
+ * UniProt ID Mapping
+ * %%
+ * Copyright (C) 2024 Hugo López-Fernández
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+package org.sing_group.uniprot_id_mapping.cache;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.sing_group.uniprot_id_mapping.UniProtBatchException;
+import org.sing_group.uniprot_id_mapping.UniProtDbFrom;
+import org.sing_group.uniprot_id_mapping.UniProtDbTo;
+import org.sing_group.uniprot_id_mapping.UniProtIdLocalMapper;
+import org.sing_group.uniprot_id_mapping.UniProtIdMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Revalidates the entries of a {@link PersistentIdCache} after a new UniProt release, comparing them with
+ * the mappings of a mapper of the new release: a {@code UniProtIdLocalMapper} of the new release files, or
+ * a {@code UniProtBatchProcessor} (with a cache of its own) to revalidate a sample of the entries remotely.
+ * Only the entries that changed are rewritten, entries no longer mapped are removed, and every revalidated
+ * entry is tagged with the new release, so that later revalidations skip it. Unchanged entries are tagged
+ * without rewriting their mappings (see {@link PersistentIdCache#tagWithCurrentRelease(Collection)}).
+ * <p>
+ * Entries are only removed when the new release reports them as unmapped: identifiers that a local mapper
+ * does not contain (for instance, those of other organisms) and those of remote jobs that failed are
+ * skipped, keeping their entries untouched so that later revalidations check them again.
+ */
+public class IdCacheRevalidator {
+    private static final Logger LOGGER = LoggerFactory.getLogger(IdCacheRevalidator.class);
+
+    public static final int DEFAULT_CHUNK_SIZE = 10_000;
+
+    private final PersistentIdCache cache;
+    private final UniProtDbFrom from;
+    private final UniProtDbTo to;
+    private final int chunkSize;
+
+    public IdCacheRevalidator(PersistentIdCache cache, UniProtDbFrom from, UniProtDbTo to) {
+        this(cache, from, to, DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * @param cache the cache to revalidate.
+     * @param from the source database of the cached mappings.
+     * @param to the target database of the cached mappings.
+     * @param chunkSize the number of identifiers mapped and written to the cache at once.
+     */
+    public IdCacheRevalidator(PersistentIdCache cache, UniProtDbFrom from, UniProtDbTo to, int chunkSize) {
+        this.cache = cache;
+        this.from = from;
+        this.to = to;
+        this.chunkSize = Math.max(1, chunkSize);
+    }
+
+    /**
+     * Revalidates all the entries not tagged with the given release yet, and then compacts the cache file.
+     * If the revalidation is interrupted, the entries already revalidated keep their new tag, so that
+     * running it again continues with the rest.
+     *
+     * @param mapper the mapper of the new release.
+     * @param release the tag of the new release.
+     * @return the differences found.
+     */
+    public Result revalidate(UniProtIdMapper mapper, String release) {
+        checkPair(mapper);
+        Result result = revalidate(mapper, release, getStaleIds(release));
+        cache.compact();
+
+        return result;
+    }
+
+    /**
+     * Revalidates a random sample of the entries not tagged with the given release yet, and then compacts the
+     * cache file, so that repeated samples do not make it grow. The change rate of the sample estimates how
+     * much of the cache is stale, and repeated calls refresh it progressively.
+     *
+     * @param mapper the mapper of the new release.
+     * @param release the tag of the new release.
+     * @param sampleSize the maximum number of entries revalidated.
+     * @param random the source of randomness used to choose the sample.
+     * @return the differences found in the sample.
+     */
+    public Result revalidateSample(UniProtIdMapper mapper, String release, int sampleSize, Random random) {
+        checkPair(mapper);
+        List<String> staleIds = getStaleIds(release);
+        Collections.shuffle(staleIds, random);
+
+        Result result = revalidate(mapper, release, staleIds.subList(0, Math.min(sampleSize, staleIds.size())));
+        cache.compact();
+
+        return result;
+    }
+
+    private void checkPair(UniProtIdMapper mapper) {
+        if (mapper instanceof UniProtIdLocalMapper && !((UniProtIdLocalMapper) mapper).supportsPair(from, to)) {
+            throw new IllegalArgumentException("The local mapper has no mappings from " + from + " to " + to);
+        }
+    }
+
+    private List<String> getStaleIds(String release) {
+        List<String> staleIds = new ArrayList<>();
+        for (String id : cache.getCachedIds()) {
+            if (!release.equals(cache.getRelease(id))) {
+                staleIds.add(id);
+            }
+        }
+        // Sorted so that the chunks (and thus the remote jobs) do not depend on the hash order
+        Collections.sort(staleIds);
+
+        return staleIds;
+    }
+
+    private Result revalidate(UniProtIdMapper mapper, String release, List<String> ids) {
+        String previousRelease = cache.getCurrentRelease();
+        cache.setCurrentRelease(release);
+        Result result = new Result(release);
+        try {
+            for (int start = 0; start < ids.size(); start += chunkSize) {
+                List<String> chunk = ids.subList(start, Math.min(ids.size(), start + chunkSize));
+                Map<String, List<String>> mappings;
+                boolean complete = true;
+                try {
+                    mappings = mapper.mapIds(from, to, chunk);
+                } catch (UniProtBatchException e) {
+                    // Identifiers without results may belong to the failed jobs, so none of them is removed
+                    LOGGER.warn("Failed to revalidate part of {} entries: {}", chunk.size(), e.getMessage());
+                    mappings = e.getPartialResults();
+                    complete = false;
+                }
+
+                Map<String, List<String>> changed = new HashMap<>();
+                List<String> unchanged = new ArrayList<>();
+                List<String> removed = new ArrayList<>();
+                for (String id : chunk) {
+                    List<String> mappedIds = mappings.get(id);
+                    if (mappedIds == null || mappedIds.isEmpty()) {
+                        if (complete && isKnown(mapper, id)) {
+                            removed.add(id);
+                        } else {
+                            result.skippedIds.add(id);
+                        }
+                    } else {
+                        if (mappedIds.equals(cache.getFromCache(id))) {
+                            unchanged.add(id);
+                        } else {
+                            result.changedIds.add(id);
+                            changed.put(id, mappedIds);
+                        }
+                    }
+                }
+
+                cache.addAllToCache(changed);
+                cache.tagWithCurrentRelease(unchanged);
+                cache.removeFromCache(removed);
+                result.checkedIds += changed.size() + unchanged.size() + removed.size();
+                result.removedIds.addAll(removed);
+                LOGGER.debug("Revalidated {} of {} entries against release {}", result.checkedIds, ids.size(), release);
+            }
+        } finally {
+            cache.setCurrentRelease(previousRelease);
+        }
+        LOGGER.info(
+            "Revalidated {} entries against release {}: {} changed, {} removed, {} skipped",
+            result.checkedIds, release, result.changedIds.size(), result.removedIds.size(), result.skippedIds.size()
+        );
+
+        return result;
+    }
+
+    private boolean isKnown(UniProtIdMapper mapper, String id) {
+        // A local release that does not contain an identifier does not tell whether it is still mapped
+        return !(mapper instanceof UniProtIdLocalMapper) || ((UniProtIdLocalMapper) mapper).containsId(from, id);
+    }
+
+    public static final class Result {
+        private final String release;
+        private final List<String> changedIds = new ArrayList<>();
+        private final List<String> removedIds = new ArrayList<>();
+        private final List<String> skippedIds = new ArrayList<>();
+        private int checkedIds;
+
+        private Result(String release) {
+            this.release = release;
+        }
+
+        public String getRelease() {
+            return release;
+        }
+
+        public int getCheckedCount() {
+            return checkedIds;
+        }
+
+        public int getUnchangedCount() {
+            return checkedIds - changedIds.size() - removedIds.size();
+        }
+
+        public List<String> getChangedIds() {
+            return changedIds;
+        }
+
+        public List<String> getRemovedIds() {
+            return removedIds;
+        }
+
+        /**
+         * Returns the identifiers that could not be revalidated, either because the local release does not
+         * contain them or because their remote jobs failed. Their entries are kept without changes.
+         *
+         * @return the identifiers skipped.
+         */
+        public List<String> getSkippedIds() {
+            return skippedIds;
+        }
+
+        /**
+         * Returns the fraction of the revalidated entries that changed or were removed.
+         *
+         * @return the change rate, between 0 and 1.
+         */
+        public double getChangeRate() {
+            return checkedIds == 0 ? 0 : (double) (changedIds.size() + removedIds.size()) / checkedIds;
+        }
+
+        @Override
+        public String toString() {
+            return "Release " + release + ": " + checkedIds + " entries revalidated, " + changedIds.size()
+                + " changed, " + removedIds.size() + " removed, " + skippedIds.size() + " skipped";
+        }
+    }
+}
@@ -0,0 +1,267 @@
+/*
+ * #%L
+ * UniProt ID Mapping
+ * %%
+ * Copyright (C) 2024 Hugo López-Fernández
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+package org.sing_group.uniprot_id_mapping.cache;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Compact binary encoding of identifiers and identifier lists for cache storage.
+ *
+ * Each identifier of a list is front coded against the previous one: the length of the prefix shared with
+ * it is written, followed by the rest of the identifier. When that rest is a number without leading zeros
+ * (GeneID numbers, or the last digits of consecutive Ensembl identifiers), it is packed as a variable-length
+ * integer instead of as text. Lists whose encoding is large enough are also deflated when that makes them
+ * smaller. The order of the identifiers is kept.
+ */
+public final class IdListCodec {
+    private static final int DEFLATED = 1;
+    private static final int MIN_DEFLATED_LENGTH = 128;
+    private static final int MAX_NUMERIC_DIGITS = 18;
+
+    private static final ThreadLocal<Deflater> DEFLATER = ThreadLocal.withInitial(
+        () -> new Deflater(Deflater.BEST_SPEED, true)
+    );
+    private static final ThreadLocal<Inflater> INFLATER = ThreadLocal.withInitial(() -> new Inflater(true));
+
+    private IdListCodec() {}
+
+    public static byte[] encode(List<String> ids) {
+        return encode(ids, true);
+    }
+
+    /**
+     * Encodes a list of identifiers.
+     *
+     * @param ids the identifiers to encode.
+     * @param compress whether the encoding is deflated when it is large enough and deflating shrinks it.
+     * @return the encoded list.
+     */
+    public static byte[] encode(List<String> ids, boolean compress) {
+        Output body = new Output();
+        writeVarInt(body, ids.size());
+        byte[] previous = new byte[0];
+        for (String id : ids) {
+            byte[] current = id.getBytes(UTF_8);
+            int shared = sharedPrefixLength(previous, current);
+            writeVarInt(body, shared);
+            writeSuffix(body, current, shared);
+            previous = current;
+        }
+
+        if (compress && body.size() >= MIN_DEFLATED_LENGTH) {
+            byte[] deflated = deflate(body.buffer(), body.size());
+            if (deflated != null) {
+                return deflated;
+            }
+        }
+
+        Output out = new Output();
+        out.write(0);
+        out.write(body.buffer(), 0, body.size());
+
+        return out.toByteArray();
+    }
+
+    public static List<String> decode(byte[] encoded) {
+        byte[] body = encoded;
+        int[] position = { 1 };
+        if ((encoded[0] & DEFLATED) != 0) {
+            body = inflate(encoded, position, (int) readVarInt(encoded, position));
+            position[0] = 0;
+        }
+
+        int count = (int) readVarInt(body, position);
+        List<String> ids = new ArrayList<>(count);
+        byte[] previous = new byte[0];
+        for (int i = 0; i < count; i++) {
+            int shared = (int) readVarInt(body, position);
+            byte[] current = readSuffix(body, position, previous, shared);
+            ids.add(new String(current, UTF_8));
+            previous = current;
+        }
+
+        return ids;
+    }
+
+    /**
+     * Encodes a single identifier, packing it as an integer when it is a number.
+     *
+     * @param id the identifier to encode.
+     * @return the encoded identifier.
+     */
+    public static byte[] encodeId(String id) {
+        Output out = new Output();
+        writeSuffix(out, id.getBytes(UTF_8), 0);
+
+        return out.toByteArray();
+    }
+
+    public static String decodeId(byte[] encoded) {
+        return new String(readSuffix(encoded, new int[] { 0 }, new byte[0], 0), UTF_8);
+    }
+
+    private static int sharedPrefixLength(byte[] previous, byte[] current) {
+        int length = Math.min(previous.length, current.length);
+        int shared = 0;
+        while (shared < length && previous[shared] == current[shared]) {
+            shared++;
+        }
+
+        return shared;
+    }
+
+    // The suffix header is the number shifted left with the lowest bit set, or the text length shifted left
+    private static void writeSuffix(Output out, byte[] id, int from) {
+        int length = id.length - from;
+        if (isNumber(id, from, length)) {
+            long value = 0;
+            for (int i = from; i < id.length; i++) {
+                value = value * 10 + (id[i] - '0');
+            }
+            writeVarInt(out, value << 1 | 1);
+        } else {
+            writeVarInt(out, (long) length << 1);
+            out.write(id, from, length);
+        }
+    }
+
+    private static boolean isNumber(byte[] id, int from, int length) {
+        if (length == 0 || length > MAX_NUMERIC_DIGITS || (length > 1 && id[from] == '0')) {
+            return false;
+        }
+        for (int i = from; i < from + length; i++) {
+            if (id[i] < '0' || id[i] > '9') {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private static byte[] readSuffix(byte[] data, int[] position, byte[] previous, int shared) {
+        long header = readVarInt(data, position);
+        byte[] suffix;
+        int suffixLength;
+        int suffixStart;
+        if ((header & 1) != 0) {
+            suffix = Long.toString(header >>> 1).getBytes(UTF_8);
+            suffixStart = 0;
+            suffixLength = suffix.length;
+        } else {
+            suffix = data;
+            suffixStart = position[0];
+            suffixLength = (int) (header >>> 1);
+            position[0] += suffixLength;
+        }
+
+        byte[] id = Arrays.copyOf(previous, shared + suffixLength);
+        System.arraycopy(suffix, suffixStart, id, shared, suffixLength);
+
+        return id;
+    }
+
+    private static byte[] deflate(byte[] body, int length) {
+        Deflater deflater = DEFLATER.get();
+        deflater.reset();
+        deflater.setInput(body, 0, length);
+        deflater.finish();
+
+        Output out = new Output();
+        out.write(DEFLATED);
+        writeVarInt(out, length);
+        byte[] buffer = new byte[Math.max(64, length)];
+        while (!deflater.finished()) {
+            out.write(buffer, 0, deflater.deflate(buffer));
+            if (out.size() >= length) {
+                return null;
+            }
+        }
+
+        return out.toByteArray();
+    }
+
+    private static byte[] inflate(byte[] encoded, int[] position, int length) {
+        Inflater inflater = INFLATER.get();
+        inflater.reset();
+        inflater.setInput(encoded, position[0], encoded.length - position[0]);
+
+        byte[] body = new byte[length];
+        try {
+            int inflated = 0;
+            while (inflated < length && !inflater.finished()) {
+                int count = inflater.inflate(body, inflated, length - inflated);
+                if (count == 0 && inflater.needsInput()) {
+                    break;
+                }
+                inflated += count;
+            }
+            if (inflated != length) {
+                throw new IllegalArgumentException("Truncated identifier list");
+            }
+        } catch (DataFormatException e) {
+            throw new IllegalArgumentException("Invalid identifier list", e);
+        }
+
+        return body;
+    }
+
+    static void writeVarInt(ByteArrayOutputStream out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) (value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    static long readVarInt(byte[] data, int[] position) {
+        long value = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = data[position[0]++];
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+    }
+
+    private static final class Output extends ByteArrayOutputStream {
+        Output() {
+            super(64);
+        }
+
+        byte[] buffer() {
+            return buf;
+        }
+    }
+}
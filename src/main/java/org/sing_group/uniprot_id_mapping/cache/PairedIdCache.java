@@ -0,0 +1,112 @@
+/*
+ * #%L
+ * UniProt ID Mapping
+ * %%
+ * Copyright (C) 2024 Hugo López-Fernández
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+package org.sing_group.uniprot_id_mapping.cache;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiFunction;
+
+import org.sing_group.uniprot_id_mapping.UniProtDbFrom;
+import org.sing_group.uniprot_id_mapping.UniProtDbTo;
+
+/**
+ * Cache that keeps the mappings of each pair of databases in a separate cache, so that one cache can be
+ * shared by the mappings to several target databases. The caches of each pair are created on first use.
+ * Mappings added without their databases are kept in another cache, apart from those of every pair.
+ */
+public class PairedIdCache implements IdCache {
+    private final BiFunction<UniProtDbFrom, UniProtDbTo, IdCache> cacheFactory;
+    private final IdCache unpairedCache;
+    private final Map<String, IdCache> caches = new ConcurrentHashMap<>();
+
+    /**
+     * @param cacheFactory the function that creates the cache of a pair of databases, such as
+     *  {@code (from, to) -> new PersistentIdCache("/tmp/cache-" + from + "-" + to + ".txt")}.
+     */
+    public PairedIdCache(BiFunction<UniProtDbFrom, UniProtDbTo, IdCache> cacheFactory) {
+        this(cacheFactory, new VolatileIdCache());
+    }
+
+    /**
+     * @param cacheFactory the function that creates the cache of a pair of databases.
+     * @param unpairedCache the cache of the mappings added without their databases.
+     */
+    public PairedIdCache(BiFunction<UniProtDbFrom, UniProtDbTo, IdCache> cacheFactory, IdCache unpairedCache) {
+        this.cacheFactory = cacheFactory;
+        this.unpairedCache = unpairedCache;
+    }
+
+    public IdCache getCache(UniProtDbFrom from, UniProtDbTo to) {
+        return caches.computeIfAbsent(from.name() + "\t" + to.name(), key -> cacheFactory.apply(from, to));
+    }
+
+    @Override
+    public List<String> getFromCache(UniProtDbFrom from, UniProtDbTo to, String id) {
+        return getCache(from, to).getFromCache(id);
+    }
+
+    @Override
+    public void addToCache(UniProtDbFrom from, UniProtDbTo to, String id, List<String> mappedIds) {
+        getCache(from, to).addToCache(id, mappedIds);
+    }
+
+    @Override
+    public Map<String, List<String>> getAllFromCache(UniProtDbFrom from, UniProtDbTo to, Collection<String> ids) {
+        return getCache(from, to).getAllFromCache(ids);
+    }
+
+    @Override
+    public void addAllToCache(UniProtDbFrom from, UniProtDbTo to, Map<String, List<String>> mappings) {
+        getCache(from, to).addAllToCache(mappings);
+    }
+
+    @Override
+    public boolean keepsPairsApart() {
+        return true;
+    }
+
+    @Override
+    public List<String> getFromCache(String id) {
+        return unpairedCache.getFromCache(id);
+    }
+
+    @Override
+    public Map<String, List<String>> getAllFromCache(Collection<String> ids) {
+        return unpairedCache.getAllFromCache(ids);
+    }
+
+    @Override
+    public void addToCache(String id, List<String> mappedIds) {
+        unpairedCache.addToCache(id, mappedIds);
+    }
+
+    @Override
+    public void addAllToCache(Map<String, List<String>> mappings) {
+        unpairedCache.addAllToCache(mappings);
+    }
+}
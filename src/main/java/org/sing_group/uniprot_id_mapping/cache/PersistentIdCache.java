@@ -25,21 +25,47 @@
  */
 package org.sing_group.uniprot_id_mapping.cache;
 
+import static java.nio.charset.StandardCharsets.ISO_8859_1;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileWriter;
 import java.io.IOException;
-import java.io.PrintWriter;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Properties;
+import java.util.Objects;
+import java.util.Set;
 import java.util.stream.Collectors;
 
+import org.sing_group.uniprot_id_mapping.index.BloomFilter;
+
+/**
+ * Cache persisted to a text file with one {@code id=mappedId1,mappedId2} line per entry, which is appended
+ * to as entries are added. Entries can be tagged with the UniProt release they were obtained from (see
+ * {@link #setCurrentRelease(String)}), which is recorded with {@code #release=} lines before the entries of
+ * each release. Entries tagged again without changes are recorded with {@code #tagged=} lines and removed
+ * entries with {@code #removed=} lines.
+ */
 public class PersistentIdCache implements IdCache {
+    private static final String RELEASE_PREFIX = "#release=";
+    private static final String REMOVED_PREFIX = "#removed=";
+    private static final String TAGGED_PREFIX = "#tagged=";
+
     private Map<String, List<String>> cache = new HashMap<>();
+    private Map<String, String> releases = new HashMap<>();
     private File cacheFile;
+    private String currentRelease;
+    private String fileRelease;
 
     public PersistentIdCache(String cacheFilePath) {
         this.cacheFile = new File(cacheFilePath);
@@ -47,42 +73,232 @@ public class PersistentIdCache implements IdCache {
     }
 
     @Override
-    public List<String> getFromCache(String id) {
+    public synchronized List<String> getFromCache(String id) {
         return cache.get(id);
     }
 
     @Override
-    public void addToCache(String id, List<String> mappedIds) {
-        if(!cache.containsKey(id) || !cache.get(id).equals(mappedIds)){
-            cache.put(id, mappedIds);
-            appendToCacheFile(id, mappedIds);
+    public synchronized void addToCache(String id, List<String> mappedIds) {
+        if (isNewEntry(id, mappedIds)) {
+            putEntry(id, mappedIds);
+            appendToCacheFile(new StringBuilder(toEntry(id, mappedIds)));
+        }
+    }
+
+    /**
+     * Adds several mappings, appending the new or changed ones to the cache file with a single write.
+     */
+    @Override
+    public synchronized void addAllToCache(Map<String, List<String>> mappings) {
+        StringBuilder entries = new StringBuilder();
+        mappings.forEach((id, mappedIds) -> {
+            if (isNewEntry(id, mappedIds)) {
+                putEntry(id, mappedIds);
+                entries.append(toEntry(id, mappedIds));
+            }
+        });
+
+        appendToCacheFile(entries);
+    }
+
+    private boolean isNewEntry(String id, List<String> mappedIds) {
+        // Entries added again under a different release are recorded again to update their tag
+        return !mappedIds.equals(cache.get(id))
+            || currentRelease != null && !currentRelease.equals(releases.get(id));
+    }
+
+    private void putEntry(String id, List<String> mappedIds) {
+        cache.put(id, mappedIds);
+        if (currentRelease != null) {
+            releases.put(id, currentRelease);
+        } else {
+            releases.remove(id);
+        }
+    }
+
+    /**
+     * Removes several entries, recording their removal in the cache file with a single write.
+     *
+     * @param ids the identifiers to remove.
+     */
+    public synchronized void removeFromCache(Collection<String> ids) {
+        StringBuilder entries = new StringBuilder();
+        for (String id : ids) {
+            if (cache.remove(id) != null) {
+                releases.remove(id);
+                entries.append(REMOVED_PREFIX).append(id).append('\n');
+            }
+        }
+
+        appendToCacheFile(entries);
+    }
+
+    /**
+     * Tags several entries with the current release without changing their mappings, recording only their
+     * identifiers in the cache file with a single write.
+     *
+     * @param ids the identifiers of the entries to tag.
+     */
+    public synchronized void tagWithCurrentRelease(Collection<String> ids) {
+        StringBuilder entries = new StringBuilder();
+        for (String id : ids) {
+            if (cache.containsKey(id) && !Objects.equals(currentRelease, releases.get(id))) {
+                putEntry(id, cache.get(id));
+                entries.append(TAGGED_PREFIX).append(id).append('\n');
+            }
+        }
+
+        appendToCacheFile(entries);
+    }
+
+    public synchronized Set<String> getCachedIds() {
+        return new HashSet<>(cache.keySet());
+    }
+
+    public synchronized int size() {
+        return cache.size();
+    }
+
+    /**
+     * Sets the UniProt release of the entries added from now on.
+     *
+     * @param release the release tag (for instance, {@code 2024_01}), or {@code null} to add untagged
+     *  entries.
+     */
+    public synchronized void setCurrentRelease(String release) {
+        this.currentRelease = release;
+    }
+
+    public synchronized String getCurrentRelease() {
+        return currentRelease;
+    }
+
+    /**
+     * Returns the UniProt release of an entry.
+     *
+     * @param id the identifier of the entry.
+     * @return the release the entry was added under, or {@code null} if it is not tagged or not cached.
+     */
+    public synchronized String getRelease(String id) {
+        return releases.get(id);
+    }
+
+    /**
+     * Rewrites the cache file with only the current entries, grouped by release, discarding the entries that
+     * were replaced or removed. The new file replaces the old one atomically.
+     */
+    public synchronized void compact() {
+        Map<String, StringBuilder> entriesByRelease = new LinkedHashMap<>();
+        entriesByRelease.put(null, new StringBuilder());
+        cache.forEach((id, mappedIds) ->
+            entriesByRelease.computeIfAbsent(releases.get(id), release -> new StringBuilder())
+                .append(toEntry(id, mappedIds))
+        );
+
+        Path file = cacheFile.toPath();
+        try {
+            Path temporaryFile = Files.createTempFile(file.toAbsolutePath().getParent(), cacheFile.getName(), ".tmp");
+            try {
+                String lastRelease = null;
+                try (Writer writer = new BufferedWriter(new FileWriter(temporaryFile.toFile()), 1 << 16)) {
+                    for (Map.Entry<String, StringBuilder> entries : entriesByRelease.entrySet()) {
+                        if (entries.getKey() != null) {
+                            writer.append(RELEASE_PREFIX).append(entries.getKey()).append('\n');
+                            lastRelease = entries.getKey();
+                        }
+                        writer.append(entries.getValue());
+                    }
+                }
+                Files.move(temporaryFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                this.fileRelease = lastRelease;
+            } finally {
+                Files.deleteIfExists(temporaryFile);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to compact cache file.", e);
         }
     }
 
+    /**
+     * Creates a Bloom filter with the identifiers currently cached, to be used with a
+     * {@link BloomFilteredIdCache}.
+     *
+     * @param falsePositiveRate the target false positive rate of the filter.
+     * @param additionalIds the number of identifiers that are expected to be added to the cache later.
+     * @return a new filter with the cached identifiers.
+     */
+    public synchronized BloomFilter createFilter(double falsePositiveRate, long additionalIds) {
+        BloomFilter filter = BloomFilter.create(cache.size() + additionalIds, falsePositiveRate);
+        cache.keySet().forEach(filter::add);
+
+        return filter;
+    }
+
     private void loadCache() {
-        Properties properties = new Properties();
         if (cacheFile.exists()) {
-            try (FileInputStream fis = new FileInputStream(cacheFile)) {
-                properties.load(fis);
+            // Lines are split at the first '=', so that identifiers may contain other separators like ':'
+            try (BufferedReader reader = Files.newBufferedReader(cacheFile.toPath(), ISO_8859_1)) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    loadLine(line.trim());
+                }
             } catch (IOException e) {
                 throw new RuntimeException("Failed to load cache file.", e);
             }
-            properties.forEach((key, value) -> {
-                List<String> ids = Arrays.stream(((String) value).split(",")).collect(Collectors.toList());
-                cache.put((String) key, ids);
-            });
         }
     }
 
-    private void appendToCacheFile(String id, List<String> mappedIds) {
-        try (FileWriter fw = new FileWriter(cacheFile, true);  // Set true for append mode
-             PrintWriter pw = new PrintWriter(fw)) {
-            // Prepare the entry in the format "key=value\n"
-            String entry = id + "=" + String.join(",", mappedIds) + "\n";
-            // Write directly to the file without loading existing content
-            pw.print(entry);
+    private void loadLine(String line) {
+        if (line.startsWith(RELEASE_PREFIX)) {
+            String release = line.substring(RELEASE_PREFIX.length());
+            this.fileRelease = release.isEmpty() ? null : release.intern();
+        } else if (line.startsWith(REMOVED_PREFIX)) {
+            String id = line.substring(REMOVED_PREFIX.length());
+            cache.remove(id);
+            releases.remove(id);
+        } else if (line.startsWith(TAGGED_PREFIX)) {
+            String id = line.substring(TAGGED_PREFIX.length());
+            if (cache.containsKey(id)) {
+                if (fileRelease != null) {
+                    releases.put(id, fileRelease);
+                } else {
+                    releases.remove(id);
+                }
+            }
+        } else if (!line.isEmpty() && line.charAt(0) != '#' && line.charAt(0) != '!') {
+            int separator = line.indexOf('=');
+            String id = separator < 0 ? line : line.substring(0, separator);
+            String value = separator < 0 ? "" : line.substring(separator + 1);
+            List<String> ids = Arrays.stream(value.split(",")).collect(Collectors.toList());
+            cache.put(id, ids);
+            if (fileRelease != null) {
+                releases.put(id, fileRelease);
+            } else {
+                releases.remove(id);
+            }
+        }
+    }
+
+    private static String toEntry(String id, List<String> mappedIds) {
+        return id + "=" + String.join(",", mappedIds) + "\n";
+    }
+
+    private void appendToCacheFile(StringBuilder entries) {
+        if (entries.length() == 0) {
+            return;
+        }
+
+        // A release line is written before the entries whenever the release differs from the last one
+        String release = currentRelease == null ? "" : currentRelease;
+        if (!release.equals(fileRelease == null ? "" : fileRelease)) {
+            entries.insert(0, RELEASE_PREFIX + release + "\n");
+        }
+
+        try (Writer writer = new BufferedWriter(new FileWriter(cacheFile, true), 1 << 16)) {
+            writer.append(entries);
         } catch (IOException e) {
             throw new RuntimeException("Failed to append to cache file.", e);
         }
+        fileRelease = currentRelease;
     }
 }
@@ -0,0 +1,55 @@
+/*
+ * #%L
+ * UniProt ID Mapping
+ * %%
+ * Copyright (C) 2024 Hugo López-Fernández
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+package org.sing_group.uniprot_id_mapping.cache;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * Store shared by several processes, such as a key-value server, used as the second level of a
+ * {@link TwoLevelIdCache}. Values are opaque byte arrays (lists of identifiers encoded with
+ * {@link IdListCodec}), and every operation works on several keys at once so that each lookup or update
+ * of a batch of identifiers needs a single round trip. Implementations must be thread-safe.
+ */
+public interface SharedIdCacheBackend {
+    /**
+     * Returns the values of several keys.
+     *
+     * @param keys the keys to look up.
+     * @return the value of each key found. Keys that are not stored are not included.
+     * @throws IOException if the store cannot be read.
+     */
+    Map<String, byte[]> multiGet(Collection<String> keys) throws IOException;
+
+    /**
+     * Stores several values, replacing the previous values of their keys.
+     *
+     * @param entries the values of each key.
+     * @throws IOException if the store cannot be written.
+     */
+    void multiSet(Map<String, byte[]> entries) throws IOException;
+}
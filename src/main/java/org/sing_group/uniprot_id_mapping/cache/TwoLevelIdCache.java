@@ -0,0 +1,202 @@
+/*
+ * #%L
+ * UniProt ID Mapping
+ * %%
+ * Copyright (C) 2024 Hugo López-Fernández
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+package org.sing_group.uniprot_id_mapping.cache;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.sing_group.uniprot_id_mapping.UniProtDbFrom;
+import org.sing_group.uniprot_id_mapping.UniProtDbTo;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Cache made of a small in-process near cache over a {@link SharedIdCacheBackend}, so that the results
+ * obtained by one process are reused by all the processes that share the backend. Lookups are answered by
+ * the near cache first, and the identifiers missing from it are fetched from the backend in a single
+ * request and then kept in the near cache. Additions are written to both levels.
+ *
+ * The near cache holds up to a maximum number of entries, evicting the least recently used ones. Failures
+ * of the backend are logged and treated as cache misses, so that they never abort a mapping.
+ */
+public class TwoLevelIdCache implements IdCache {
+    private static final Logger LOGGER = LoggerFactory.getLogger(TwoLevelIdCache.class);
+    private static final int SEGMENTS = 16;
+
+    private final SharedIdCacheBackend backend;
+    private final List<Map<String, List<String>>> nearCache = new ArrayList<>(SEGMENTS);
+    private final LongAdder nearHits = new LongAdder();
+    private final LongAdder sharedHits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * @param backend the shared store.
+     * @param nearCacheSize the maximum number of entries kept in the near cache.
+     */
+    public TwoLevelIdCache(SharedIdCacheBackend backend, int nearCacheSize) {
+        this.backend = backend;
+
+        // The near cache is split in segments, each one locked independently, to reduce contention
+        int segmentSize = Math.max(1, nearCacheSize / SEGMENTS);
+        for (int i = 0; i < SEGMENTS; i++) {
+            nearCache.add(Collections.synchronizedMap(new LinkedHashMap<String, List<String>>(16, 0.75f, true) {
+                private static final long serialVersionUID = 1L;
+
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, List<String>> eldest) {
+                    return size() > segmentSize;
+                }
+            }));
+        }
+    }
+
+    @Override
+    public List<String> getFromCache(String id) {
+        return getAllFromCache(Collections.singletonList(id)).get(id);
+    }
+
+    @Override
+    public List<String> getFromCache(UniProtDbFrom from, UniProtDbTo to, String id) {
+        return getAllFromCache(from, to, Collections.singletonList(id)).get(id);
+    }
+
+    @Override
+    public Map<String, List<String>> getAllFromCache(Collection<String> ids) {
+        return getAll(null, ids);
+    }
+
+    /**
+     * Returns the cached mappings of several identifiers. The mappings of each pair of databases are stored
+     * under different keys, so one cache can be shared by several pairs.
+     */
+    @Override
+    public Map<String, List<String>> getAllFromCache(UniProtDbFrom from, UniProtDbTo to, Collection<String> ids) {
+        return getAll(pairPrefix(from, to), ids);
+    }
+
+    private Map<String, List<String>> getAll(String prefix, Collection<String> ids) {
+        Map<String, List<String>> cached = new HashMap<>();
+        Map<String, String> missingKeys = new HashMap<>();
+        for (String id : ids) {
+            String key = prefix == null ? id : prefix + id;
+            List<String> mappedIds = segment(key).get(key);
+            if (mappedIds == null) {
+                missingKeys.put(key, id);
+            } else {
+                cached.put(id, mappedIds);
+                nearHits.increment();
+            }
+        }
+        if (missingKeys.isEmpty()) {
+            return cached;
+        }
+
+        Map<String, byte[]> shared;
+        try {
+            shared = backend.multiGet(missingKeys.keySet());
+        } catch (IOException | RuntimeException e) {
+            LOGGER.warn("Failed to read the shared cache", e);
+            shared = Collections.emptyMap();
+        }
+
+        shared.forEach((key, value) -> {
+            List<String> mappedIds = IdListCodec.decode(value);
+            segment(key).put(key, mappedIds);
+            cached.put(missingKeys.get(key), mappedIds);
+        });
+        sharedHits.add(shared.size());
+        misses.add(missingKeys.size() - shared.size());
+
+        return cached;
+    }
+
+    @Override
+    public void addToCache(String id, List<String> mappedIds) {
+        addAll(null, Collections.singletonMap(id, mappedIds));
+    }
+
+    @Override
+    public void addToCache(UniProtDbFrom from, UniProtDbTo to, String id, List<String> mappedIds) {
+        addAll(pairPrefix(from, to), Collections.singletonMap(id, mappedIds));
+    }
+
+    @Override
+    public void addAllToCache(Map<String, List<String>> mappings) {
+        addAll(null, mappings);
+    }
+
+    @Override
+    public void addAllToCache(UniProtDbFrom from, UniProtDbTo to, Map<String, List<String>> mappings) {
+        addAll(pairPrefix(from, to), mappings);
+    }
+
+    @Override
+    public boolean keepsPairsApart() {
+        return true;
+    }
+
+    private void addAll(String prefix, Map<String, List<String>> mappings) {
+        Map<String, byte[]> entries = new HashMap<>();
+        mappings.forEach((id, mappedIds) -> {
+            String key = prefix == null ? id : prefix + id;
+            segment(key).put(key, mappedIds);
+            entries.put(key, IdListCodec.encode(mappedIds));
+        });
+
+        try {
+            backend.multiSet(entries);
+        } catch (IOException | RuntimeException e) {
+            LOGGER.warn("Failed to write the shared cache", e);
+        }
+    }
+
+    private Map<String, List<String>> segment(String key) {
+        return nearCache.get((key.hashCode() & Integer.MAX_VALUE) % SEGMENTS);
+    }
+
+    private static String pairPrefix(UniProtDbFrom from, UniProtDbTo to) {
+        return from.name() + "\t" + to.name() + "\t";
+    }
+
+    public long getNearHits() {
+        return nearHits.sum();
+    }
+
+    public long getSharedHits() {
+        return sharedHits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+}
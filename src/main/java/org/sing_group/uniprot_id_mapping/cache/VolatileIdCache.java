@@ -25,12 +25,12 @@
  */
 package org.sing_group.uniprot_id_mapping.cache;
 
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class VolatileIdCache implements IdCache {
-    private Map<String, List<String>> cache = new HashMap<>();
+    private Map<String, List<String>> cache = new ConcurrentHashMap<>();
 
     @Override
     public List<String> getFromCache(String id) {
@@ -41,4 +41,9 @@ public class VolatileIdCache implements IdCache {
     public void addToCache(String id, List<String> mappedIds) {
         cache.put(id, mappedIds);
     }
+
+    @Override
+    public void addAllToCache(Map<String, List<String>> mappings) {
+        cache.putAll(mappings);
+    }
 }
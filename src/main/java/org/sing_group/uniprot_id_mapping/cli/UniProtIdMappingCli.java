@@ -0,0 +1,325 @@
+/*
+ * #%L
+ * UniProt ID Mapping
+ * %%
+ * Copyright (C) 2024 Hugo López-Fernández
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+package org.sing_group.uniprot_id_mapping.cli;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+
+import org.sing_group.uniprot_id_mapping.BatchCheckpoint;
+import org.sing_group.uniprot_id_mapping.IdMappingTable;
+import org.sing_group.uniprot_id_mapping.ResultsFormat;
+import org.sing_group.uniprot_id_mapping.RetryPolicy;
+import org.sing_group.uniprot_id_mapping.UniProtBatchProcessor;
+import org.sing_group.uniprot_id_mapping.UniProtClient;
+import org.sing_group.uniprot_id_mapping.UniProtDbFrom;
+import org.sing_group.uniprot_id_mapping.UniProtDbTo;
+import org.sing_group.uniprot_id_mapping.UniProtIdLocalMapper;
+import org.sing_group.uniprot_id_mapping.cache.IdCache;
+import org.sing_group.uniprot_id_mapping.cache.PersistentIdCache;
+
+/**
+ * Command-line tool that maps the identifiers of a file (or the standard input), one per line, and writes
+ * the results as TSV. Identifiers are read, mapped and written in chunks, so files of any size are mapped
+ * in constant memory.
+ */
+public class UniProtIdMappingCli {
+    private static final Set<String> FLAGS = new HashSet<>(Arrays.asList("--any-version", "--shared", "--help"));
+    private static final Set<String> VALUE_OPTIONS = new HashSet<>(Arrays.asList(
+        "--from", "--to", "--input", "--output", "--chunk-size", "--local", "--snapshot", "--threads", "--cache",
+        "--batch-size", "--max-batch-size", "--in-flight", "--checkpoint", "--page-size", "--job-delay", "--api-url"
+    ));
+    private static final Set<String> ZERO_OPTIONS = new HashSet<>(Arrays.asList("--page-size", "--job-delay"));
+
+    private static final IdCache NO_CACHE = new IdCache() {
+        @Override
+        public List<String> getFromCache(String id) {
+            return null;
+        }
+
+        @Override
+        public void addToCache(String id, List<String> mappedIds) {}
+
+        @Override
+        public boolean keepsPairsApart() {
+            return true;
+        }
+    };
+
+    private static final String USAGE = String.join("\n",
+        "Usage: uniprot-id-mapping --from <database> --to <database> [options]",
+        "",
+        "Identifiers are read one per line and results are written as TSV (From, To).",
+        "",
+        "General options:",
+        "  --input <file>           file with the identifiers to map (default: standard input)",
+        "  --output <file>          file where results are written (default: standard output)",
+        "  --chunk-size <n>         identifiers mapped at a time (default: 1000000 local, 100000 remote)",
+        "",
+        "Local mapping (used when --local is set):",
+        "  --local <file>           UniProt idmapping.dat file",
+        "  --snapshot <file>        snapshot of the index, reused while it is up to date with --local",
+        "  --shared                 map the snapshot in memory, sharing it with other processes",
+        "  --any-version            ignore identifier versions",
+        "  --threads <n>            threads used to map each chunk (default: available processors),",
+        "                           not supported with --any-version, which maps each chunk in one thread",
+        "",
+        "Remote mapping (default):",
+        "  --cache <file>           persistent cache file (default: no cache)",
+        "  --batch-size <n>         initial identifiers per job (default: 5000)",
+        "  --max-batch-size <n>     maximum identifiers per job (default: " + UniProtBatchProcessor.MAX_IDS_PER_JOB + ")",
+        "  --in-flight <n>          remote jobs running at the same time (default: 1)",
+        "  --checkpoint <file>      checkpoint file used to resume interrupted runs",
+        "  --page-size <n>          results page size, 0 to stream results (default: 0)",
+        "  --job-delay <ms>         pause after each finished job (default: "
+            + UniProtBatchProcessor.DEFAULT_JOB_DELAY + ")",
+        "  --api-url <url>          UniProt REST API URL (default: " + UniProtClient.API_URL + ")"
+    );
+
+    public static void main(String[] args) {
+        System.exit(run(args, System.in, System.out, System.err));
+    }
+
+    /**
+     * Runs the tool.
+     *
+     * @param args the command-line arguments.
+     * @param in the standard input.
+     * @param out the standard output.
+     * @param err the standard error.
+     * @return the exit code: 0 on success, 1 on mapping errors and 2 on usage errors.
+     */
+    public static int run(String[] args, InputStream in, OutputStream out, PrintStream err) {
+        Map<String, String> options;
+        try {
+            options = parseOptions(args);
+            if (options.containsKey("--help")) {
+                err.println(USAGE);
+                return 0;
+            }
+            new UniProtIdMappingCli(options).map(in, out);
+
+            return 0;
+        } catch (IllegalArgumentException e) {
+            err.println("Error: " + e.getMessage());
+            err.println();
+            err.println(USAGE);
+
+            return 2;
+        } catch (IOException | RuntimeException e) {
+            err.println("Error: " + e.getMessage());
+
+            return 1;
+        }
+    }
+
+    private final Map<String, String> options;
+    private final UniProtDbFrom from;
+    private final UniProtDbTo to;
+
+    private UniProtIdMappingCli(Map<String, String> options) {
+        this.options = options;
+        this.from = UniProtDbFrom.parse(required("--from"));
+        this.to = UniProtDbTo.parse(required("--to"));
+        if (options.containsKey("--any-version") && options.containsKey("--threads")) {
+            throw new IllegalArgumentException("--threads cannot be used with --any-version");
+        }
+    }
+
+    private void map(InputStream in, OutputStream out) throws IOException {
+        String input = options.getOrDefault("--input", "-");
+        String output = options.getOrDefault("--output", "-");
+
+        try (
+            BufferedReader reader = new BufferedReader(
+                new InputStreamReader(input.equals("-") ? in : new FileInputStream(input), UTF_8), 1 << 16
+            );
+            OutputStream writer = new BufferedOutputStream(
+                output.equals("-") ? nonClosing(out) : new FileOutputStream(output), 1 << 16
+            )
+        ) {
+            if (options.containsKey("--local")) {
+                mapLocal(reader, writer);
+            } else {
+                mapRemote(reader, writer);
+            }
+        }
+    }
+
+    private void mapLocal(BufferedReader reader, OutputStream writer) throws IOException {
+        File mappingFile = new File(options.get("--local"));
+        boolean anyVersion = options.containsKey("--any-version");
+        int threads = intOption("--threads", Runtime.getRuntime().availableProcessors());
+
+        UniProtIdLocalMapper mapper;
+        if (options.containsKey("--snapshot")) {
+            mapper = options.containsKey("--shared")
+                ? UniProtIdLocalMapper.mapShared(mappingFile, Paths.get(options.get("--snapshot")), anyVersion)
+                : UniProtIdLocalMapper.load(mappingFile, Paths.get(options.get("--snapshot")), anyVersion);
+        } else if (options.containsKey("--shared")) {
+            throw new IllegalArgumentException("--shared requires --snapshot");
+        } else {
+            mapper = new UniProtIdLocalMapper(mappingFile, anyVersion);
+        }
+
+        mapChunks(reader, writer, intOption("--chunk-size", 1_000_000), ids -> anyVersion
+            ? IdMappingTable.fromMap(mapper.mapIds(from, to, ids))
+            : mapper.mapIdsBulk(from, to, ids, threads)
+        );
+    }
+
+    private void mapRemote(BufferedReader reader, OutputStream writer) throws IOException {
+        IdCache cache = options.containsKey("--cache") ? new PersistentIdCache(options.get("--cache")) : NO_CACHE;
+        BatchCheckpoint checkpoint = options.containsKey("--checkpoint")
+            ? new BatchCheckpoint(Paths.get(options.get("--checkpoint"))) : null;
+
+        try {
+            UniProtBatchProcessor mapper = new UniProtBatchProcessor(
+                intOption("--batch-size", 5000),
+                intOption("--max-batch-size", UniProtBatchProcessor.MAX_IDS_PER_JOB),
+                intOption("--in-flight", 1),
+                new UniProtClient(
+                    options.getOrDefault("--api-url", UniProtClient.API_URL), 5000, intOption("--page-size", 0),
+                    ResultsFormat.JSON
+                ),
+                cache,
+                RetryPolicy.DEFAULT,
+                checkpoint
+            );
+            mapper.setJobDelay(intOption("--job-delay", (int) UniProtBatchProcessor.DEFAULT_JOB_DELAY));
+
+            mapChunks(reader, writer, intOption("--chunk-size", 100_000), ids -> mapper.mapIdsTable(from, to, ids));
+        } finally {
+            if (checkpoint != null) {
+                checkpoint.close();
+            }
+        }
+    }
+
+    private static void mapChunks(
+        BufferedReader reader, OutputStream writer, int chunkSize, Function<List<String>, IdMappingTable> mapper
+    ) throws IOException {
+        boolean header = true;
+        List<String> ids = new ArrayList<>();
+        String line;
+        while ((line = reader.readLine()) != null) {
+            String id = line.trim();
+            if (!id.isEmpty()) {
+                ids.add(id);
+            }
+            if (ids.size() == chunkSize) {
+                mapper.apply(ids).writeTsv(writer, header);
+                header = false;
+                ids.clear();
+            }
+        }
+        if (!ids.isEmpty()) {
+            mapper.apply(ids).writeTsv(writer, header);
+        } else if (header) {
+            new IdMappingTable.Builder().build().writeTsv(writer, true);
+        }
+    }
+
+    private String required(String option) {
+        String value = options.get(option);
+        if (value == null) {
+            throw new IllegalArgumentException("Missing required option " + option);
+        }
+
+        return value;
+    }
+
+    private int intOption(String option, int defaultValue) {
+        String value = options.get(option);
+        if (value == null) {
+            return defaultValue;
+        }
+
+        try {
+            int number = Integer.parseInt(value);
+            if (number < 0 || (number == 0 && !ZERO_OPTIONS.contains(option))) {
+                throw new IllegalArgumentException("Invalid value for " + option + ": " + value);
+            }
+
+            return number;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid value for " + option + ": " + value);
+        }
+    }
+
+    private static Map<String, String> parseOptions(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (int i = 0; i < args.length; i++) {
+            if (!args[i].startsWith("--")) {
+                throw new IllegalArgumentException("Unexpected argument: " + args[i]);
+            }
+            if (FLAGS.contains(args[i])) {
+                options.put(args[i], "true");
+            } else if (!VALUE_OPTIONS.contains(args[i])) {
+                throw new IllegalArgumentException("Unknown option: " + args[i]);
+            } else if (i + 1 < args.length) {
+                options.put(args[i], args[++i]);
+            } else {
+                throw new IllegalArgumentException("Missing value for option " + args[i]);
+            }
+        }
+
+        return options;
+    }
+
+    private static OutputStream nonClosing(OutputStream out) {
+        return new FilterOutputStream(out) {
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                out.write(b, off, len);
+            }
+
+            @Override
+            public void close() throws IOException {
+                flush();
+            }
+        };
+    }
+}
@@ -0,0 +1,228 @@
+/*
+ * #%L
+ * UniProt ID Mapping
+ * %%
+ * Copyright (C) 2024 Hugo López-Fernández
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+package org.sing_group.uniprot_id_mapping.index;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bloom filter of UTF-8 encoded identifiers, used to reject lookups of identifiers that are definitely absent
+ * before searching the main structures. Bit positions are derived from one 64-bit hash of the identifier with
+ * double hashing. Additions are thread-safe.
+ */
+public final class BloomFilter {
+  private static final double LN2 = Math.log(2);
+  private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+  private static final long FNV_PRIME = 0x100000001b3L;
+
+  private final AtomicLongArray bits;
+  private final long bitCount;
+  private final int hashCount;
+
+  private BloomFilter(AtomicLongArray bits, int hashCount) {
+    this.bits = bits;
+    this.bitCount = (long) bits.length() * Long.SIZE;
+    this.hashCount = hashCount;
+  }
+
+  /**
+   * Creates an empty filter sized for a number of identifiers and a false positive rate.
+   *
+   * @param expectedIds the expected number of identifiers.
+   * @param falsePositiveRate the target false positive rate once the expected identifiers are added.
+   * @return a new filter.
+   */
+  public static BloomFilter create(long expectedIds, double falsePositiveRate) {
+    long ids = Math.max(1, expectedIds);
+    long bits = (long) Math.ceil(-ids * Math.log(falsePositiveRate) / (LN2 * LN2));
+    int hashCount = (int) Math.max(1, Math.round((double) bits / ids * LN2));
+
+    return new BloomFilter(new AtomicLongArray((int) Math.min(Integer.MAX_VALUE, (bits + 63) / 64)), hashCount);
+  }
+
+  public void add(byte[] id) {
+    add(hash(id));
+  }
+
+  public void add(String id) {
+    add(IdColumn.encode(id));
+  }
+
+  /**
+   * Adds the identifier at {@code index} of a column without copying it.
+   *
+   * @param column the column of identifiers.
+   * @param index the position of the identifier in the column.
+   */
+  public void add(IdColumn column, int index) {
+    long hash = FNV_OFFSET;
+    for (int i = 0, length = column.length(index); i < length; i++) {
+      hash = (hash ^ (column.byteAt(index, i) & 0xFF)) * FNV_PRIME;
+    }
+    add(mix(hash));
+  }
+
+  private void add(long hash) {
+    long increment = increment(hash);
+    for (int i = 0; i < hashCount; i++, hash += increment) {
+      long bit = Math.floorMod(hash, bitCount);
+      int word = (int) (bit >>> 6);
+      long mask = 1L << bit;
+      long current = bits.get(word);
+      while ((current & mask) == 0 && !bits.compareAndSet(word, current, current | mask)) {
+        current = bits.get(word);
+      }
+    }
+  }
+
+  public boolean mightContain(byte[] id) {
+    long hash = hash(id);
+    long increment = increment(hash);
+    for (int i = 0; i < hashCount; i++, hash += increment) {
+      long bit = Math.floorMod(hash, bitCount);
+      if ((bits.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+        return false;
+      }
+    }
+
+    return true;
+  }
+
+  public boolean mightContain(String id) {
+    return mightContain(IdColumn.encode(id));
+  }
+
+  /**
+   * Estimates the false positive rate of the filter from the fraction of bits set.
+   *
+   * @return the probability that an absent identifier is reported as possibly present.
+   */
+  public double getExpectedFalsePositiveRate() {
+    long set = 0;
+    for (int i = 0; i < bits.length(); i++) {
+      set += Long.bitCount(bits.get(i));
+    }
+
+    return Math.pow((double) set / bitCount, hashCount);
+  }
+
+  public void writeTo(DataOutput out) throws IOException {
+    out.writeInt(hashCount);
+    out.writeInt(bits.length());
+    for (int i = 0; i < bits.length(); i++) {
+      out.writeLong(bits.get(i));
+    }
+  }
+
+  public static BloomFilter readFrom(DataInput in) throws IOException {
+    int hashCount = in.readInt();
+    long[] words = new long[in.readInt()];
+    for (int i = 0; i < words.length; i++) {
+      words[i] = in.readLong();
+    }
+
+    return new BloomFilter(new AtomicLongArray(words), hashCount);
+  }
+
+  private static long increment(long hash) {
+    return Long.rotateLeft(hash, 32) | 1;
+  }
+
+  // FNV-1a followed by the MurmurHash3 finalizer to spread the bits
+  private static long hash(byte[] id) {
+    long hash = FNV_OFFSET;
+    for (byte b : id) {
+      hash = (hash ^ (b & 0xFF)) * FNV_PRIME;
+    }
+
+    return mix(hash);
+  }
+
+  private static long mix(long hash) {
+    hash ^= hash >>> 33;
+    hash *= 0xff51afd7ed558ccdL;
+    hash ^= hash >>> 33;
+    hash *= 0xc4ceb9fe1a85ec53L;
+
+    return hash ^ (hash >>> 33);
+  }
+
+  /**
+   * Counters of the lookups answered with the help of a filter: how many were rejected by it and how many
+   * passed it but were absent (false positives).
+   */
+  public static final class Statistics {
+    private final LongAdder lookups = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder falsePositives = new LongAdder();
+
+    public void recordRejected() {
+      lookups.increment();
+      rejected.increment();
+    }
+
+    public void recordPassed(boolean found) {
+      lookups.increment();
+      if (!found) {
+        falsePositives.increment();
+      }
+    }
+
+    public long getLookups() {
+      return lookups.sum();
+    }
+
+    public long getRejected() {
+      return rejected.sum();
+    }
+
+    public long getFalsePositives() {
+      return falsePositives.sum();
+    }
+
+    /**
+     * Returns the observed false positive rate: the fraction of the lookups of absent identifiers that were
+     * not rejected by the filter.
+     *
+     * @return the observed false positive rate, or 0 if no absent identifier was looked up.
+     */
+    public double getFalsePositiveRate() {
+      long falsePositives = getFalsePositives();
+      long absent = falsePositives + getRejected();
+
+      return absent == 0 ? 0 : (double) falsePositives / absent;
+    }
+
+    @Override
+    public String toString() {
+      return "lookups=" + getLookups() + ", rejected=" + getRejected() + ", falsePositives=" + getFalsePositives()
+        + ", falsePositiveRate=" + getFalsePositiveRate();
+    }
+  }
+}
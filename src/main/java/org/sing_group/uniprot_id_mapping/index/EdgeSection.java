@@ -0,0 +1,148 @@
+/*
+ * #%L
+ * UniProt ID Mapping
+ * %%
+ * Copyright (C) 2024 Hugo López-Fernández
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+package org.sing_group.uniprot_id_mapping.index;
+
+import java.nio.IntBuffer;
+
+/**
+ * The mappings between UniProtKB accessions and the identifiers of one database. Each edge is stored once:
+ * edges are sorted by accession (as ordinals of the accessions column of the index) for forward lookups,
+ * and a permutation of the edges sorted by identifier is used for reverse lookups.
+ */
+public final class EdgeSection {
+  private final String database;
+  private final IntBuffer accessions;
+  private final IdColumn xrefs;
+  private final IntBuffer reverseOrder;
+
+  public EdgeSection(String database, IntBuffer accessions, IdColumn xrefs, IntBuffer reverseOrder) {
+    this.database = database;
+    this.accessions = accessions;
+    this.xrefs = xrefs;
+    this.reverseOrder = reverseOrder;
+  }
+
+  public String getDatabase() {
+    return database;
+  }
+
+  public int size() {
+    return accessions.limit();
+  }
+
+  public int getAccession(int edge) {
+    return accessions.get(edge);
+  }
+
+  public String getXref(int edge) {
+    return xrefs.get(edge);
+  }
+
+  public IdColumn getXrefs() {
+    return xrefs;
+  }
+
+  public int getReverseEdge(int position) {
+    return reverseOrder.get(position);
+  }
+
+  /**
+   * Returns the first edge of an accession. Its edges are contiguous and keep the order of the source file.
+   *
+   * @param accession the accession ordinal.
+   * @return the first edge whose accession is not lower than the given one, or {@code size()}.
+   */
+  public int firstEdgeOf(int accession) {
+    return firstEdgeOf(accession, 0);
+  }
+
+  public int firstEdgeOf(int accession, int from) {
+    int low = from;
+    int high = size();
+    while (low < high) {
+      int middle = (low + high) >>> 1;
+      if (accessions.get(middle) < accession) {
+        low = middle + 1;
+      } else {
+        high = middle;
+      }
+    }
+
+    return low;
+  }
+
+  /**
+   * Returns the first position of the reverse order whose identifier is not lower than {@code key}.
+   *
+   * @param key the UTF-8 encoded identifier.
+   * @return a position in the reverse order, or {@code size()}.
+   */
+  public int reverseLowerBound(byte[] key) {
+    return reverseLowerBound(key, 0, size());
+  }
+
+  /**
+   * Same as {@link #reverseLowerBound(byte[])}, but searching forward from {@code from} with exponentially
+   * growing steps, which is faster for successive searches of ascending keys.
+   *
+   * @param key the UTF-8 encoded identifier.
+   * @param from the position of the reverse order where the search starts.
+   * @return a position in the reverse order, or {@code size()}.
+   */
+  public int reverseGallop(byte[] key, int from) {
+    int size = size();
+    int step = 1;
+    int high = from;
+    while (high < size && xrefs.compareTo(reverseOrder.get(high), key) < 0) {
+      from = high + 1;
+      high = from + step;
+      step <<= 1;
+    }
+
+    return reverseLowerBound(key, from, Math.min(high, size));
+  }
+
+  private int reverseLowerBound(byte[] key, int low, int high) {
+    while (low < high) {
+      int middle = (low + high) >>> 1;
+      if (xrefs.compareTo(reverseOrder.get(middle), key) < 0) {
+        low = middle + 1;
+      } else {
+        high = middle;
+      }
+    }
+
+    return low;
+  }
+
+  IntBuffer getAccessions() {
+    return accessions;
+  }
+
+  IntBuffer getReverseOrder() {
+    return reverseOrder;
+  }
+}
@@ -0,0 +1,579 @@
+/*
+ * #%L
+ * UniProt ID Mapping
+ * %%
+ * Copyright (C) 2024 Hugo López-Fernández
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+package org.sing_group.uniprot_id_mapping.index;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Builds an index snapshot (see {@link MappingIndexSnapshot}) within a memory budget, for files whose index
+ * does not fit in the heap. Edges are buffered until the budget is reached and then sorted and spilled to
+ * temporary files (runs). The runs are merged into the columns of each section, with a second external sort
+ * per section for its reverse permutation, and the columns are finally copied into the snapshot, which can
+ * then be mapped into memory with {@link MappingIndexSnapshot#map(Path)}.
+ *
+ * The resulting snapshot is identical to the one written for an index built by {@link MappingIndexBuilder}
+ * from the same lines.
+ *
+ * The temporary files are deleted when the snapshot is built or, if adding the lines fails, when the builder
+ * is closed, so it should be used in a try-with-resources statement.
+ */
+public final class ExternalMappingIndexBuilder implements Closeable {
+  private static final Logger LOGGER = LoggerFactory.getLogger(ExternalMappingIndexBuilder.class);
+
+  // Approximate heap size of a buffered record besides its identifiers
+  private static final int RECORD_OVERHEAD = 80;
+  private static final int MIN_READ_BUFFER = 1 << 12;
+  private static final int MAX_READ_BUFFER = 1 << 20;
+  private static final int MAX_MERGED_RUNS = 128;
+
+  private static final Comparator<Record> RECORD_ORDER = (record, other) -> {
+    int compare = Integer.compare(record.group, other.group);
+    if (compare == 0) {
+      compare = IdColumn.compare(record.key, other.key);
+    }
+
+    return compare != 0 ? compare : Long.compare(record.sequence, other.sequence);
+  };
+
+  private final Predicate<String> databaseFilter;
+  private final long memoryBudget;
+  private final Path workDirectory;
+  private final int maxSegmentSize;
+  private final Map<String, Integer> databaseIds = new HashMap<>();
+  private final List<String> databases = new ArrayList<>();
+  private final RunBuffer edges;
+  private final RunBuffer accessions;
+  private long lineCount;
+  private long sequence;
+
+  /**
+   * @param databaseFilter the predicate that decides which database names are indexed.
+   * @param memoryBudget the approximate number of bytes of heap used to buffer edges before spilling them.
+   * @param temporaryDirectory the directory where temporary files are created.
+   * @throws IOException if the temporary directory cannot be created.
+   */
+  public ExternalMappingIndexBuilder(
+    Predicate<String> databaseFilter, long memoryBudget, Path temporaryDirectory
+  ) throws IOException {
+    this(databaseFilter, memoryBudget, temporaryDirectory, IdColumn.MAX_SEGMENT_SIZE);
+  }
+
+  ExternalMappingIndexBuilder(
+    Predicate<String> databaseFilter, long memoryBudget, Path temporaryDirectory, int maxSegmentSize
+  ) throws IOException {
+    this.maxSegmentSize = maxSegmentSize;
+    this.databaseFilter = databaseFilter;
+    this.memoryBudget = memoryBudget;
+    this.workDirectory = Files.createTempDirectory(temporaryDirectory, "uniprot-index");
+    this.edges = new RunBuffer("edges", false);
+    this.accessions = new RunBuffer("accessions", true);
+  }
+
+  public ExternalMappingIndexBuilder addLines(BufferedReader reader) throws IOException {
+    String line;
+    while ((line = reader.readLine()) != null) {
+      addLine(line);
+    }
+
+    return this;
+  }
+
+  public boolean addLine(String line) throws IOException {
+    lineCount++;
+    String[] fields = MappingIndexBuilder.splitLine(line);
+
+    return fields != null && add(fields[0], fields[1], fields[2]);
+  }
+
+  public boolean add(String accession, String database, String xref) throws IOException {
+    Integer databaseId = databaseIds.get(database);
+    if (databaseId == null) {
+      databaseId = databaseFilter.test(database) ? databases.size() : -1;
+      if (databaseId >= 0) {
+        databases.add(database);
+      }
+      databaseIds.put(database, databaseId);
+    }
+    if (databaseId < 0) {
+      return false;
+    }
+
+    // Accessions are buffered along with the edges and share the budget with them
+    if (edges.getBufferedBytes() + accessions.getBufferedBytes() >= memoryBudget) {
+      edges.spill();
+      accessions.spill();
+    }
+    byte[] accessionKey = IdColumn.encode(accession);
+    edges.add(new Record(databaseId, accessionKey, sequence++, IdColumn.encode(xref), 0));
+    accessions.add(new Record(0, accessionKey, 0, null, 0));
+
+    return true;
+  }
+
+  public long getLineCount() {
+    return lineCount;
+  }
+
+  /**
+   * Merges the spilled runs into a snapshot and deletes the temporary files.
+   *
+   * @param sourceFingerprint the fingerprint of the file the lines were read from.
+   * @param snapshot the path of the snapshot.
+   * @throws IOException if an I/O error occurs.
+   */
+  public void build(SourceFingerprint sourceFingerprint, Path snapshot) throws IOException {
+    try {
+      edges.spill();
+      accessions.spill();
+      LOGGER.debug("Merging {} edge runs and {} accession runs", edges.runs.size(), accessions.runs.size());
+
+      ColumnFiles accessionColumn = new ColumnFiles("accessions");
+      Path sortedAccessions = workDirectory.resolve("accessions.sorted");
+      try (
+        RunMerger merger = accessions.merge();
+        DataOutputStream sorted = openRun(sortedAccessions)
+      ) {
+        byte[] previous = null;
+        for (Record record = merger.next(); record != null; record = merger.next()) {
+          if (previous == null || IdColumn.compare(previous, record.key) != 0) {
+            accessionColumn.add(record.key);
+            record.writeTo(sorted);
+            previous = record.key;
+          }
+        }
+      }
+      accessionColumn.close();
+
+      List<SectionFiles> sections = new ArrayList<>();
+      try (RunMerger merger = edges.merge()) {
+        Record record = merger.next();
+        for (int database = 0; database < databases.size(); database++) {
+          SectionFiles section = new SectionFiles(database);
+          try (RunReader accessionCursor = new RunReader(sortedAccessions, MAX_READ_BUFFER)) {
+            Record accession = accessionCursor.next();
+            int rank = 0;
+            for (; record != null && record.group == database; record = merger.next()) {
+              while (IdColumn.compare(accession.key, record.key) < 0) {
+                accession = accessionCursor.next();
+                rank++;
+              }
+              section.add(rank, record);
+            }
+          }
+          section.finish();
+          sections.add(section);
+        }
+      }
+
+      MappingIndexSnapshot.write(snapshot, output -> {
+        output.putHeader(sections.size(), sourceFingerprint, 0, 0);
+        accessionColumn.writeTo(output);
+        for (SectionFiles section : sections) {
+          output.putSectionStart(databases.get(section.database), section.size);
+          output.putFile(section.accessionsFile);
+          output.align();
+          section.xrefs.writeTo(output);
+          output.putFile(section.reverseOrderFile);
+          output.align();
+        }
+      });
+    } finally {
+      deleteWorkDirectory();
+    }
+  }
+
+  private int readBufferSize(int runs) {
+    return (int) Math.max(MIN_READ_BUFFER, Math.min(MAX_READ_BUFFER, memoryBudget / Math.max(1, 2 * runs)));
+  }
+
+  /**
+   * Deletes the temporary files, if they were not deleted by {@link #build(SourceFingerprint, Path)} yet.
+   *
+   * @throws IOException if an I/O error occurs deleting the files.
+   */
+  @Override
+  public void close() throws IOException {
+    deleteWorkDirectory();
+  }
+
+  private void deleteWorkDirectory() throws IOException {
+    if (!Files.exists(workDirectory)) {
+      return;
+    }
+    try (Stream<Path> files = Files.list(workDirectory)) {
+      for (Path file : (Iterable<Path>) files::iterator) {
+        Files.deleteIfExists(file);
+      }
+    }
+    Files.deleteIfExists(workDirectory);
+  }
+
+  private DataOutputStream openRun(Path file) throws IOException {
+    return new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file), 1 << 16));
+  }
+
+  /**
+   * The columns of one section, written to temporary files as its edges are merged in accession order.
+   */
+  private final class SectionFiles {
+    private final int database;
+    private final Path accessionsFile;
+    private final Path reverseOrderFile;
+    private final DataOutputStream accessionsOut;
+    private final ColumnFiles xrefs;
+    private final RunBuffer reverseEdges;
+    private int size;
+
+    SectionFiles(int database) throws IOException {
+      this.database = database;
+      this.accessionsFile = workDirectory.resolve("section-" + database + ".accessions");
+      this.reverseOrderFile = workDirectory.resolve("section-" + database + ".reverse");
+      this.accessionsOut = openRun(accessionsFile);
+      this.xrefs = new ColumnFiles("section-" + database + ".xrefs");
+      this.reverseEdges = new RunBuffer("section-" + database + ".reverse", false);
+    }
+
+    void add(int accessionRank, Record edge) throws IOException {
+      accessionsOut.writeInt(Integer.reverseBytes(accessionRank));
+      xrefs.add(edge.value);
+      // Ties between equal identifiers are kept in file order, as in MappingIndexBuilder. The edge runs
+      // being merged use at most half of the budget.
+      if (reverseEdges.getBufferedBytes() >= memoryBudget / 2) {
+        reverseEdges.spill();
+      }
+      reverseEdges.add(new Record(0, edge.value, edge.sequence, null, size));
+      size++;
+    }
+
+    void finish() throws IOException {
+      accessionsOut.close();
+      xrefs.close();
+      reverseEdges.spill();
+
+      try (
+        RunMerger merger = reverseEdges.merge();
+        DataOutputStream reverseOrder = openRun(reverseOrderFile)
+      ) {
+        for (Record record = merger.next(); record != null; record = merger.next()) {
+          reverseOrder.writeInt(Integer.reverseBytes(record.position));
+        }
+      }
+      for (Path run : reverseEdges.runs) {
+        Files.delete(run);
+      }
+    }
+  }
+
+  /**
+   * An identifiers column written to temporary files: the little-endian offsets of all the segments and the
+   * data of each segment.
+   */
+  private final class ColumnFiles {
+    private final String name;
+    private final Path offsetsFile;
+    private final DataOutputStream offsets;
+    private final List<Path> dataFiles = new ArrayList<>();
+    private final List<int[]> segmentSizes = new ArrayList<>();
+    private BufferedOutputStream data;
+    private int size;
+    private int segmentSize;
+    private int segmentLength;
+
+    ColumnFiles(String name) throws IOException {
+      this.name = name;
+      this.offsetsFile = workDirectory.resolve(name + ".offsets");
+      this.offsets = openRun(offsetsFile);
+      startSegment();
+    }
+
+    private void startSegment() throws IOException {
+      if (data != null) {
+        data.close();
+        segmentSizes.add(new int[] { segmentSize, segmentLength });
+      }
+      Path dataFile = workDirectory.resolve(name + "." + dataFiles.size() + ".data");
+      dataFiles.add(dataFile);
+      data = new BufferedOutputStream(Files.newOutputStream(dataFile), 1 << 16);
+      offsets.writeInt(0);
+      segmentSize = 0;
+      segmentLength = 0;
+    }
+
+    void add(byte[] id) throws IOException {
+      if ((long) segmentLength + id.length > maxSegmentSize) {
+        startSegment();
+      }
+      data.write(id);
+      segmentLength += id.length;
+      offsets.writeInt(Integer.reverseBytes(segmentLength));
+      segmentSize++;
+      size++;
+    }
+
+    void close() throws IOException {
+      offsets.close();
+      data.close();
+      segmentSizes.add(new int[] { segmentSize, segmentLength });
+    }
+
+    void writeTo(MappingIndexSnapshot.Output output) throws IOException {
+      output.putInt(size);
+      output.putInt(segmentSizes.size());
+      for (int[] segment : segmentSizes) {
+        output.putInt(segment[0]);
+        output.putInt(segment[1]);
+      }
+      output.align();
+      output.putFile(offsetsFile);
+      output.align();
+      for (Path dataFile : dataFiles) {
+        output.putFile(dataFile);
+        output.align();
+      }
+    }
+  }
+
+  /**
+   * Buffers records in memory and spills them, sorted, to runs.
+   */
+  private final class RunBuffer {
+    private final String name;
+    private final boolean distinct;
+    private final List<Record> records = new ArrayList<>();
+    private final List<Path> runs = new ArrayList<>();
+    private long bufferedBytes;
+    private int runCount;
+
+    /**
+     * @param name the prefix of the run files.
+     * @param distinct whether repeated records are written once to each run.
+     */
+    RunBuffer(String name, boolean distinct) {
+      this.name = name;
+      this.distinct = distinct;
+    }
+
+    void add(Record record) {
+      records.add(record);
+      bufferedBytes += record.heapSize();
+    }
+
+    long getBufferedBytes() {
+      return bufferedBytes;
+    }
+
+    void spill() throws IOException {
+      if (records.isEmpty() && !runs.isEmpty()) {
+        return;
+      }
+
+      records.sort(RECORD_ORDER);
+      Path run = newRun();
+      try (DataOutputStream out = openRun(run)) {
+        Record previous = null;
+        for (Record record : records) {
+          if (!distinct || previous == null || RECORD_ORDER.compare(previous, record) != 0) {
+            record.writeTo(out);
+          }
+          previous = record;
+        }
+      }
+      runs.add(run);
+      records.clear();
+      bufferedBytes = 0;
+    }
+
+    /**
+     * Opens a merge of all the runs. When there are too many runs to merge them at once, they are first
+     * merged in groups into fewer, longer runs.
+     */
+    RunMerger merge() throws IOException {
+      while (runs.size() > MAX_MERGED_RUNS) {
+        List<Path> mergedRuns = new ArrayList<>();
+        for (int start = 0; start < runs.size(); start += MAX_MERGED_RUNS) {
+          List<Path> group = runs.subList(start, Math.min(runs.size(), start + MAX_MERGED_RUNS));
+          Path mergedRun = newRun();
+          try (
+            RunMerger merger = new RunMerger(group, readBufferSize(group.size()));
+            DataOutputStream out = openRun(mergedRun)
+          ) {
+            for (Record record = merger.next(); record != null; record = merger.next()) {
+              record.writeTo(out);
+            }
+          }
+          for (Path run : group) {
+            Files.delete(run);
+          }
+          mergedRuns.add(mergedRun);
+        }
+        runs.clear();
+        runs.addAll(mergedRuns);
+      }
+
+      return new RunMerger(runs, readBufferSize(runs.size()));
+    }
+
+    private Path newRun() {
+      return workDirectory.resolve(name + "-" + runCount++ + ".run");
+    }
+  }
+
+  /**
+   * A k-way merge of sorted runs.
+   */
+  private static final class RunMerger implements Closeable {
+    private final List<RunReader> readers = new ArrayList<>();
+    private final PriorityQueue<RunReader> queue = new PriorityQueue<>(
+      (reader, other) -> RECORD_ORDER.compare(reader.current, other.current)
+    );
+
+    RunMerger(List<Path> runs, int bufferSize) throws IOException {
+      for (Path run : runs) {
+        RunReader reader = new RunReader(run, bufferSize);
+        readers.add(reader);
+        if (reader.next() != null) {
+          queue.add(reader);
+        }
+      }
+    }
+
+    Record next() throws IOException {
+      RunReader reader = queue.poll();
+      if (reader == null) {
+        return null;
+      }
+
+      Record record = reader.current;
+      if (reader.next() != null) {
+        queue.add(reader);
+      }
+
+      return record;
+    }
+
+    @Override
+    public void close() throws IOException {
+      for (RunReader reader : readers) {
+        reader.close();
+      }
+    }
+  }
+
+  private static final class RunReader implements Closeable {
+    private final DataInputStream in;
+    private Record current;
+
+    RunReader(Path run, int bufferSize) throws IOException {
+      this.in = new DataInputStream(new BufferedInputStream(Files.newInputStream(run), bufferSize));
+    }
+
+    Record next() throws IOException {
+      try {
+        current = Record.readFrom(in);
+      } catch (EOFException e) {
+        current = null;
+      }
+
+      return current;
+    }
+
+    @Override
+    public void close() throws IOException {
+      in.close();
+    }
+  }
+
+  /**
+   * A sortable record of a run: edges are (database, accession, sequence, identifier), accessions only use
+   * the key and reverse edges are (identifier, sequence, position).
+   */
+  private static final class Record {
+    private final int group;
+    private final byte[] key;
+    private final long sequence;
+    private final byte[] value;
+    private final int position;
+
+    Record(int group, byte[] key, long sequence, byte[] value, int position) {
+      this.group = group;
+      this.key = key;
+      this.sequence = sequence;
+      this.value = value;
+      this.position = position;
+    }
+
+    long heapSize() {
+      return RECORD_OVERHEAD + key.length + (value == null ? 0 : value.length);
+    }
+
+    void writeTo(DataOutputStream out) throws IOException {
+      out.writeInt(group);
+      out.writeInt(key.length);
+      out.write(key);
+      out.writeLong(sequence);
+      out.writeInt(value == null ? -1 : value.length);
+      if (value != null) {
+        out.write(value);
+      }
+      out.writeInt(position);
+    }
+
+    static Record readFrom(DataInputStream in) throws IOException {
+      int group = in.readInt();
+      byte[] key = new byte[in.readInt()];
+      in.readFully(key);
+      long sequence = in.readLong();
+      int valueLength = in.readInt();
+      byte[] value = null;
+      if (valueLength >= 0) {
+        value = new byte[valueLength];
+        in.readFully(value);
+      }
+
+      return new Record(group, key, sequence, value, in.readInt());
+    }
+  }
+}
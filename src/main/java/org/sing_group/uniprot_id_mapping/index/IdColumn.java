@@ -0,0 +1,321 @@
+/*
+ * #%L
+ * UniProt ID Mapping
+ * %%
+ * Copyright (C) 2024 Hugo López-Fernández
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+package org.sing_group.uniprot_id_mapping.index;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+
+/**
+ * Immutable sequence of identifiers stored contiguously as UTF-8 bytes, with an offsets buffer delimiting
+ * each of them. Buffers are only accessed with absolute reads, so columns can be shared between threads and
+ * backed either by heap arrays or by mapped files.
+ * <p>
+ * Buffers are indexed with {@code int} positions, so the bytes are split in segments of at most
+ * {@link #MAX_SEGMENT_SIZE} bytes. The offsets of each segment are relative to its start and have one more
+ * entry than its identifiers, so the identifier at {@code index} of segment {@code s} is delimited by the
+ * offsets at {@code index + s} and {@code index + s + 1}.
+ */
+public final class IdColumn {
+  public static final int MAX_SEGMENT_SIZE = Integer.MAX_VALUE - 8;
+
+  private final ByteBuffer[] segments;
+  private final int[] segmentStarts;
+  private final IntBuffer offsets;
+
+  public IdColumn(ByteBuffer data, IntBuffer offsets) {
+    this(new ByteBuffer[] { data }, new int[] { 0 }, offsets);
+  }
+
+  /**
+   * Creates a column split in segments.
+   *
+   * @param segments the bytes of the identifiers of each segment.
+   * @param segmentStarts the position in the column of the first identifier of each segment.
+   * @param offsets the offsets of each segment, one after the other.
+   */
+  public IdColumn(ByteBuffer[] segments, int[] segmentStarts, IntBuffer offsets) {
+    this.segments = segments;
+    this.segmentStarts = segmentStarts;
+    this.offsets = offsets;
+  }
+
+  public int size() {
+    return offsets.limit() - segments.length;
+  }
+
+  private int segment(int index) {
+    if (segmentStarts.length == 1) {
+      return 0;
+    }
+    int segment = Arrays.binarySearch(segmentStarts, index);
+
+    return segment >= 0 ? segment : -segment - 2;
+  }
+
+  public String get(int index) {
+    int segment = segment(index);
+    ByteBuffer data = segments[segment];
+    int start = offsets.get(index + segment);
+    byte[] bytes = new byte[offsets.get(index + segment + 1) - start];
+    for (int i = 0; i < bytes.length; i++) {
+      bytes[i] = data.get(start + i);
+    }
+
+    return new String(bytes, UTF_8);
+  }
+
+  /**
+   * Writes the bytes of the identifier at {@code index} without decoding them.
+   *
+   * @param index the position of the identifier in this column.
+   * @param out the stream where the identifier is written.
+   * @throws IOException if an I/O error occurs.
+   */
+  public void writeTo(int index, OutputStream out) throws IOException {
+    int segment = segment(index);
+    ByteBuffer data = segments[segment];
+    int start = offsets.get(index + segment);
+    int end = offsets.get(index + segment + 1);
+    if (data.hasArray()) {
+      out.write(data.array(), data.arrayOffset() + start, end - start);
+    } else {
+      for (int i = start; i < end; i++) {
+        out.write(data.get(i));
+      }
+    }
+  }
+
+  public int length(int index) {
+    int segment = segment(index);
+
+    return offsets.get(index + segment + 1) - offsets.get(index + segment);
+  }
+
+  public byte byteAt(int index, int position) {
+    int segment = segment(index);
+
+    return segments[segment].get(offsets.get(index + segment) + position);
+  }
+
+  /**
+   * Compares the identifier at {@code index} with {@code key} as unsigned bytes.
+   *
+   * @param index the position of the identifier in this column.
+   * @param key the UTF-8 encoded key.
+   * @return a negative number, zero or a positive number if the identifier is lower, equal or greater
+   *  than the key.
+   */
+  public int compareTo(int index, byte[] key) {
+    int segment = segment(index);
+    ByteBuffer data = segments[segment];
+    int start = offsets.get(index + segment);
+    int length = offsets.get(index + segment + 1) - start;
+    int common = Math.min(length, key.length);
+    for (int i = 0; i < common; i++) {
+      int diff = (data.get(start + i) & 0xFF) - (key[i] & 0xFF);
+      if (diff != 0) {
+        return diff;
+      }
+    }
+
+    return length - key.length;
+  }
+
+  public int compare(int index, int otherIndex) {
+    int segment = segment(index);
+    ByteBuffer data = segments[segment];
+    int start = offsets.get(index + segment);
+    int length = offsets.get(index + segment + 1) - start;
+    int otherSegment = segment(otherIndex);
+    ByteBuffer otherData = segments[otherSegment];
+    int otherStart = offsets.get(otherIndex + otherSegment);
+    int otherLength = offsets.get(otherIndex + otherSegment + 1) - otherStart;
+    int common = Math.min(length, otherLength);
+    for (int i = 0; i < common; i++) {
+      int diff = (data.get(start + i) & 0xFF) - (otherData.get(otherStart + i) & 0xFF);
+      if (diff != 0) {
+        return diff;
+      }
+    }
+
+    return length - otherLength;
+  }
+
+  public boolean startsWith(int index, byte[] prefix) {
+    int segment = segment(index);
+    ByteBuffer data = segments[segment];
+    int start = offsets.get(index + segment);
+    if (offsets.get(index + segment + 1) - start < prefix.length) {
+      return false;
+    }
+    for (int i = 0; i < prefix.length; i++) {
+      if (data.get(start + i) != prefix[i]) {
+        return false;
+      }
+    }
+
+    return true;
+  }
+
+  /**
+   * Returns the position of the first identifier not lower than {@code key} in a sorted column.
+   *
+   * @param key the UTF-8 encoded key.
+   * @return the position of the first identifier greater than or equal to the key, or {@code size()}.
+   */
+  public int lowerBound(byte[] key) {
+    return lowerBound(key, 0, size());
+  }
+
+  /**
+   * Returns the position of the first identifier not lower than {@code key}, searching forward from
+   * {@code from} with exponentially growing steps. This makes successive searches of ascending keys (as in
+   * a merge join) proportional to the distance between their results rather than to the column size.
+   *
+   * @param key the UTF-8 encoded key.
+   * @param from the position where the search starts. All identifiers before it must be lower than the key.
+   * @return the position of the first identifier greater than or equal to the key, or {@code size()}.
+   */
+  public int gallop(byte[] key, int from) {
+    int size = size();
+    int step = 1;
+    int high = from;
+    while (high < size && compareTo(high, key) < 0) {
+      from = high + 1;
+      high = from + step;
+      step <<= 1;
+    }
+
+    return lowerBound(key, from, Math.min(high, size));
+  }
+
+  private int lowerBound(byte[] key, int low, int high) {
+    while (low < high) {
+      int middle = (low + high) >>> 1;
+      if (compareTo(middle, key) < 0) {
+        low = middle + 1;
+      } else {
+        high = middle;
+      }
+    }
+
+    return low;
+  }
+
+  /**
+   * Returns the position of {@code key} in a sorted column of unique identifiers.
+   *
+   * @param key the UTF-8 encoded key.
+   * @return the position of the key or -1 if it is not present.
+   */
+  public int indexOf(byte[] key) {
+    int position = lowerBound(key);
+
+    return position < size() && compareTo(position, key) == 0 ? position : -1;
+  }
+
+  /**
+   * Returns the positions of the identifiers of this column in ascending order. The sort is stable, so
+   * equal identifiers keep their relative order.
+   *
+   * @return the sorted positions.
+   */
+  public int[] sortedOrder() {
+    int[] order = new int[size()];
+    for (int i = 0; i < order.length; i++) {
+      order[i] = i;
+    }
+    mergeSort(order, new int[order.length], 0, order.length);
+
+    return order;
+  }
+
+  private void mergeSort(int[] order, int[] buffer, int from, int to) {
+    if (to - from < 16) {
+      for (int i = from + 1; i < to; i++) {
+        int current = order[i];
+        int j = i - 1;
+        while (j >= from && compare(order[j], current) > 0) {
+          order[j + 1] = order[j];
+          j--;
+        }
+        order[j + 1] = current;
+      }
+      return;
+    }
+
+    int middle = (from + to) >>> 1;
+    mergeSort(order, buffer, from, middle);
+    mergeSort(order, buffer, middle, to);
+    if (compare(order[middle - 1], order[middle]) <= 0) {
+      return;
+    }
+
+    System.arraycopy(order, from, buffer, from, to - from);
+    int left = from;
+    int right = middle;
+    for (int i = from; i < to; i++) {
+      if (right >= to || (left < middle && compare(buffer[left], buffer[right]) <= 0)) {
+        order[i] = buffer[left++];
+      } else {
+        order[i] = buffer[right++];
+      }
+    }
+  }
+
+  ByteBuffer[] getSegments() {
+    return segments;
+  }
+
+  int[] getSegmentStarts() {
+    return segmentStarts;
+  }
+
+  IntBuffer getOffsets() {
+    return offsets;
+  }
+
+  public static int compare(byte[] id, byte[] otherId) {
+    int common = Math.min(id.length, otherId.length);
+    for (int i = 0; i < common; i++) {
+      int diff = (id[i] & 0xFF) - (otherId[i] & 0xFF);
+      if (diff != 0) {
+        return diff;
+      }
+    }
+
+    return id.length - otherId.length;
+  }
+
+  public static byte[] encode(String id) {
+    return id.getBytes(UTF_8);
+  }
+}
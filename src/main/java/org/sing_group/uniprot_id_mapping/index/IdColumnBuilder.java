@@ -0,0 +1,150 @@
+/*
+ * #%L
+ * UniProt ID Mapping
+ * %%
+ * Copyright (C) 2024 Hugo López-Fernández
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+package org.sing_group.uniprot_id_mapping.index;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public final class IdColumnBuilder {
+  private final int maxSegmentSize;
+  private final List<ByteBuffer> completedSegments;
+  private int[] segmentStarts;
+  private long completedDataSize;
+  private byte[] data;
+  private int[] offsets;
+  private int size;
+
+  public IdColumnBuilder() {
+    this(1024);
+  }
+
+  public IdColumnBuilder(int expectedSize) {
+    this(expectedSize, IdColumn.MAX_SEGMENT_SIZE);
+  }
+
+  IdColumnBuilder(int expectedSize, int maxSegmentSize) {
+    this.maxSegmentSize = maxSegmentSize;
+    this.completedSegments = new ArrayList<>();
+    this.segmentStarts = new int[] { 0 };
+    this.data = new byte[(int) Math.min(maxSegmentSize, Math.max(16, expectedSize * 8L))];
+    this.offsets = new int[Math.max(16, expectedSize + 1)];
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public IdColumnBuilder add(String id) {
+    return add(id.getBytes(UTF_8));
+  }
+
+  public IdColumnBuilder add(byte[] id) {
+    return add(id, 0, id.length);
+  }
+
+  public IdColumnBuilder add(byte[] id, int offset, int length) {
+    int end = startSegmentIfFull(length);
+    ensureDataCapacity(end + length);
+    System.arraycopy(id, offset, data, end, length);
+    appendOffset(end + length);
+    size++;
+
+    return this;
+  }
+
+  public IdColumnBuilder add(IdColumn column, int index) {
+    int length = column.length(index);
+    int end = startSegmentIfFull(length);
+    ensureDataCapacity(end + length);
+    for (int i = 0; i < length; i++) {
+      data[end + i] = column.byteAt(index, i);
+    }
+    appendOffset(end + length);
+    size++;
+
+    return this;
+  }
+
+  private int segmentCount() {
+    return completedSegments.size() + 1;
+  }
+
+  private int segmentEnd() {
+    return offsets[size + segmentCount() - 1];
+  }
+
+  private int startSegmentIfFull(int length) {
+    if (length > maxSegmentSize) {
+      throw new IllegalArgumentException("Identifier longer than " + maxSegmentSize + " bytes");
+    }
+    int end = segmentEnd();
+    if ((long) end + length <= maxSegmentSize) {
+      return end;
+    }
+
+    // The new segment starts with its own zero offset, right after the end offset of the previous one
+    appendOffset(0);
+    completedSegments.add(ByteBuffer.wrap(data, 0, end));
+    completedDataSize += end;
+    segmentStarts = Arrays.copyOf(segmentStarts, segmentStarts.length + 1);
+    segmentStarts[segmentStarts.length - 1] = size;
+    data = new byte[Math.min(maxSegmentSize, Math.max(16, length))];
+
+    return 0;
+  }
+
+  private void appendOffset(int offset) {
+    int position = size + segmentCount();
+    if (position + 1 > offsets.length) {
+      offsets = Arrays.copyOf(offsets, offsets.length * 2);
+    }
+    offsets[position] = offset;
+  }
+
+  private void ensureDataCapacity(int capacity) {
+    if (capacity > data.length) {
+      data = Arrays.copyOf(data, (int) Math.min(maxSegmentSize, Math.max(capacity, data.length * 2L)));
+    }
+  }
+
+  public long getDataSize() {
+    return completedDataSize + segmentEnd();
+  }
+
+  public IdColumn build() {
+    ByteBuffer[] segments = completedSegments.toArray(new ByteBuffer[segmentCount()]);
+    segments[segments.length - 1] = ByteBuffer.wrap(Arrays.copyOf(data, segmentEnd()));
+
+    return new IdColumn(
+      segments, segmentStarts.clone(), IntBuffer.wrap(Arrays.copyOf(offsets, size + segmentCount()))
+    );
+  }
+}
@@ -0,0 +1,178 @@
+/*
+ * #%L
+ * UniProt ID Mapping
+ * %%
+ * Copyright (C) 2024 Hugo López-Fernández
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+package org.sing_group.uniprot_id_mapping.index;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Bloom filters of the identifiers of each section of a {@link MappingIndex}: a forward filter with its
+ * accessions and a reverse filter with its database identifiers. They are stored in their own file, next
+ * to the index snapshot, together with the source fingerprint of the index they were built from.
+ */
+public final class IndexFilters {
+  private static final int MAGIC = 0x55504246; // "UPBF"
+  private static final int VERSION = 1;
+
+  private final SourceFingerprint sourceFingerprint;
+  private final Map<String, BloomFilter> forwardFilters;
+  private final Map<String, BloomFilter> reverseFilters;
+
+  private IndexFilters(
+    SourceFingerprint sourceFingerprint, Map<String, BloomFilter> forwardFilters,
+    Map<String, BloomFilter> reverseFilters
+  ) {
+    this.sourceFingerprint = sourceFingerprint;
+    this.forwardFilters = forwardFilters;
+    this.reverseFilters = reverseFilters;
+  }
+
+  /**
+   * Builds the filters of all the sections of an index.
+   *
+   * @param index the index.
+   * @param sourceFingerprint the fingerprint of the source file of the index.
+   * @param falsePositiveRate the target false positive rate of each filter.
+   * @return the filters.
+   */
+  public static IndexFilters build(MappingIndex index, SourceFingerprint sourceFingerprint, double falsePositiveRate) {
+    Map<String, BloomFilter> forwardFilters = new HashMap<>();
+    Map<String, BloomFilter> reverseFilters = new HashMap<>();
+
+    index.getSections().parallelStream().forEach(section -> {
+      int accessionCount = 0;
+      for (int edge = 0; edge < section.size(); edge++) {
+        if (edge == 0 || section.getAccession(edge) != section.getAccession(edge - 1)) {
+          accessionCount++;
+        }
+      }
+
+      BloomFilter forward = BloomFilter.create(accessionCount, falsePositiveRate);
+      BloomFilter reverse = BloomFilter.create(section.size(), falsePositiveRate);
+      for (int edge = 0; edge < section.size(); edge++) {
+        if (edge == 0 || section.getAccession(edge) != section.getAccession(edge - 1)) {
+          forward.add(index.getAccessions(), section.getAccession(edge));
+        }
+        reverse.add(section.getXrefs(), edge);
+      }
+
+      synchronized (forwardFilters) {
+        forwardFilters.put(section.getDatabase(), forward);
+        reverseFilters.put(section.getDatabase(), reverse);
+      }
+    });
+
+    return new IndexFilters(sourceFingerprint, forwardFilters, reverseFilters);
+  }
+
+  public SourceFingerprint getSourceFingerprint() {
+    return sourceFingerprint;
+  }
+
+  /**
+   * @param database the database of a section.
+   * @return the filter of the accessions of the section, or {@code null} if there is no such section.
+   */
+  public BloomFilter getForwardFilter(String database) {
+    return forwardFilters.get(database);
+  }
+
+  /**
+   * @param database the database of a section.
+   * @return the filter of the identifiers of the section, or {@code null} if there is no such section.
+   */
+  public BloomFilter getReverseFilter(String database) {
+    return reverseFilters.get(database);
+  }
+
+  public void write(Path file) throws IOException {
+    Path temporaryFile = Files.createTempFile(file.toAbsolutePath().getParent(), file.getFileName().toString(), ".tmp");
+    try {
+      CRC32 crc = new CRC32();
+      try (
+        DataOutputStream out = new DataOutputStream(
+          new BufferedOutputStream(new CheckedOutputStream(Files.newOutputStream(temporaryFile), crc), 1 << 16)
+        )
+      ) {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeLong(sourceFingerprint.getLength());
+        out.writeLong(sourceFingerprint.getChecksum());
+        out.writeInt(forwardFilters.size());
+        for (String database : forwardFilters.keySet()) {
+          out.writeUTF(database);
+          forwardFilters.get(database).writeTo(out);
+          reverseFilters.get(database).writeTo(out);
+        }
+        out.flush();
+        out.writeLong(crc.getValue());
+      }
+      Files.move(temporaryFile, file, StandardCopyOption.REPLACE_EXISTING);
+    } finally {
+      Files.deleteIfExists(temporaryFile);
+    }
+  }
+
+  public static IndexFilters read(Path file) throws IOException {
+    CRC32 crc = new CRC32();
+    try (
+      DataInputStream in = new DataInputStream(
+        new CheckedInputStream(new BufferedInputStream(Files.newInputStream(file), 1 << 16), crc)
+      )
+    ) {
+      if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+        throw new IOException("Not an index filters file: " + file);
+      }
+      SourceFingerprint sourceFingerprint = new SourceFingerprint(in.readLong(), in.readLong());
+      int sections = in.readInt();
+      Map<String, BloomFilter> forwardFilters = new HashMap<>();
+      Map<String, BloomFilter> reverseFilters = new HashMap<>();
+      for (int i = 0; i < sections; i++) {
+        String database = in.readUTF();
+        forwardFilters.put(database, BloomFilter.readFrom(in));
+        reverseFilters.put(database, BloomFilter.readFrom(in));
+      }
+
+      long checksum = crc.getValue();
+      if (in.readLong() != checksum) {
+        throw new IOException("Corrupted index filters file: " + file);
+      }
+
+      return new IndexFilters(sourceFingerprint, forwardFilters, reverseFilters);
+    }
+  }
+}
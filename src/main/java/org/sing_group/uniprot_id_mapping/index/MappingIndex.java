@@ -0,0 +1,186 @@
+/*
+ * #%L
+ * UniProt ID Mapping
+ * %%
+ * Copyright (C) 2024 Hugo López-Fernández
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+package org.sing_group.uniprot_id_mapping.index;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Read-only index of a UniProt {@code idmapping.dat} file. Accessions are stored once, sorted, in a shared
+ * column and each database has an {@link EdgeSection} that can be traversed in both directions.
+ */
+public final class MappingIndex {
+  private final IdColumn accessions;
+  private final Map<String, EdgeSection> sections;
+  private final short[] accessionTags;
+
+  public MappingIndex(IdColumn accessions, Collection<EdgeSection> sections) {
+    this(accessions, sections, null);
+  }
+
+  /**
+   * @param accessions the sorted accessions.
+   * @param sections the edges of each database.
+   * @param accessionTags a tag of each accession, such as the source file it was read from, or {@code null}
+   *  if accessions are not tagged. Negative tags mean that an accession has no tag.
+   */
+  public MappingIndex(IdColumn accessions, Collection<EdgeSection> sections, short[] accessionTags) {
+    this.accessions = accessions;
+    this.sections = new LinkedHashMap<>();
+    sections.forEach(section -> this.sections.put(section.getDatabase(), section));
+    this.accessionTags = accessionTags;
+  }
+
+  public MappingIndex withAccessionTags(short[] accessionTags) {
+    return new MappingIndex(accessions, sections.values(), accessionTags);
+  }
+
+  public short[] getAccessionTags() {
+    return accessionTags;
+  }
+
+  public int getAccessionTag(int accession) {
+    return accessionTags == null ? -1 : accessionTags[accession];
+  }
+
+  public IdColumn getAccessions() {
+    return accessions;
+  }
+
+  public Collection<EdgeSection> getSections() {
+    return Collections.unmodifiableCollection(sections.values());
+  }
+
+  public EdgeSection getSection(String database) {
+    return sections.get(database);
+  }
+
+  public int indexOfAccession(String accession) {
+    return accessions.indexOf(IdColumn.encode(accession));
+  }
+
+  public void forward(EdgeSection section, int accession, List<String> results) {
+    for (int edge = section.firstEdgeOf(accession); edge < section.size() && section.getAccession(edge) == accession; edge++) {
+      results.add(section.getXref(edge));
+    }
+  }
+
+  public void reverse(EdgeSection section, byte[] xref, List<String> results) {
+    for (int position = section.reverseLowerBound(xref); position < section.size(); position++) {
+      int edge = section.getReverseEdge(position);
+      if (section.getXrefs().compareTo(edge, xref) != 0) {
+        break;
+      }
+      results.add(accessions.get(section.getAccession(edge)));
+    }
+  }
+
+  /**
+   * Adds the accessions of the identifiers that have a numeric version suffix (e.g. {@code .15} in
+   * {@code ENSMUSG00000017843.15}) and are equal to {@code xref} once it is removed. As the dot sorts before
+   * letters and digits, all versions of an identifier are contiguous in the reverse order.
+   *
+   * @param section the section to search.
+   * @param xref the UTF-8 encoded unversioned identifier.
+   * @param results the list where accessions are added.
+   */
+  public void reverseVersions(EdgeSection section, byte[] xref, List<String> results) {
+    byte[] prefix = new byte[xref.length + 1];
+    System.arraycopy(xref, 0, prefix, 0, xref.length);
+    prefix[xref.length] = '.';
+
+    IdColumn xrefs = section.getXrefs();
+    for (int position = section.reverseLowerBound(prefix); position < section.size(); position++) {
+      int edge = section.getReverseEdge(position);
+      if (!xrefs.startsWith(edge, prefix)) {
+        break;
+      }
+      if (isVersion(xrefs, edge, prefix.length)) {
+        results.add(accessions.get(section.getAccession(edge)));
+      }
+    }
+  }
+
+  public void reversePrefix(EdgeSection section, byte[] prefix, List<String> results) {
+    IdColumn xrefs = section.getXrefs();
+    for (int position = section.reverseLowerBound(prefix); position < section.size(); position++) {
+      int edge = section.getReverseEdge(position);
+      if (!xrefs.startsWith(edge, prefix)) {
+        break;
+      }
+      results.add(accessions.get(section.getAccession(edge)));
+    }
+  }
+
+  /**
+   * Returns the range of accession ordinals that start with {@code prefix}.
+   *
+   * @param prefix the UTF-8 encoded prefix.
+   * @return an array with the first (inclusive) and last (exclusive) accession ordinals.
+   */
+  public int[] accessionPrefixRange(byte[] prefix) {
+    int first = accessions.lowerBound(prefix);
+    int last = first;
+    while (last < accessions.size() && accessions.startsWith(last, prefix)) {
+      last++;
+    }
+
+    return new int[] { first, last };
+  }
+
+  private static boolean isVersion(IdColumn column, int index, int from) {
+    int length = column.length(index);
+    if (from >= length) {
+      return false;
+    }
+    for (int i = from; i < length; i++) {
+      byte b = column.byteAt(index, i);
+      if (b < '0' || b > '9') {
+        return false;
+      }
+    }
+
+    return true;
+  }
+
+  /**
+   * Returns the length of an identifier without its numeric version suffix.
+   *
+   * @param id the UTF-8 encoded identifier.
+   * @return the length of the identifier once the version is removed, or its full length if it has none.
+   */
+  public static int unversionedLength(byte[] id) {
+    int i = id.length - 1;
+    while (i >= 0 && id[i] >= '0' && id[i] <= '9') {
+      i--;
+    }
+
+    return i > 0 && i < id.length - 1 && id[i] == '.' ? i : id.length;
+  }
+}
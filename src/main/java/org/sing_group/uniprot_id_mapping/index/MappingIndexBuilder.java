@@ -0,0 +1,267 @@
+/*
+ * #%L
+ * UniProt ID Mapping
+ * %%
+ * Copyright (C) 2024 Hugo López-Fernández
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+package org.sing_group.uniprot_id_mapping.index;
+
+import static java.util.stream.Collectors.toList;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Builds a {@link MappingIndex} from the lines of a UniProt {@code idmapping.dat} file, that is, lines with
+ * three tab-separated fields: UniProtKB accession, database name and database identifier.
+ */
+public final class MappingIndexBuilder {
+  private static final Logger LOGGER = LoggerFactory.getLogger(MappingIndexBuilder.class);
+
+  private final Predicate<String> databaseFilter;
+  private final Map<String, SectionBuilder> acceptedDatabases = new HashMap<>();
+  private final Map<String, SectionBuilder> sections = new LinkedHashMap<>();
+  private final Map<String, Integer> accessionIds = new HashMap<>();
+  private final IdColumnBuilder accessions = new IdColumnBuilder();
+  private short[] accessionTags;
+  private long lineCount;
+
+  /**
+   * @param databaseFilter the predicate that decides which database names are indexed. It is evaluated
+   *  once per distinct name.
+   */
+  public MappingIndexBuilder(Predicate<String> databaseFilter) {
+    this.databaseFilter = databaseFilter;
+  }
+
+  public MappingIndexBuilder addLines(BufferedReader reader) throws IOException {
+    String line;
+    while ((line = reader.readLine()) != null) {
+      addLine(line);
+    }
+
+    return this;
+  }
+
+  public boolean addLine(String line) {
+    lineCount++;
+    String[] fields = splitLine(line);
+
+    return fields != null && add(fields[0], fields[1], fields[2]);
+  }
+
+  /**
+   * Splits a line in its three fields (accession, database name and database identifier).
+   *
+   * @param line the line to split.
+   * @return the three fields, or {@code null} (logging a warning) if the line is not valid.
+   */
+  static String[] splitLine(String line) {
+    int firstTab = line.indexOf('\t');
+    int secondTab = firstTab < 0 ? -1 : line.indexOf('\t', firstTab + 1);
+    if (secondTab < 0 || line.indexOf('\t', secondTab + 1) >= 0) {
+      LOGGER.warn("Ignoring line: " + line);
+      return null;
+    }
+
+    return new String[] {
+      line.substring(0, firstTab), line.substring(firstTab + 1, secondTab), line.substring(secondTab + 1)
+    };
+  }
+
+  public boolean add(String accession, String database, String xref) {
+    SectionBuilder section = getSectionBuilder(database);
+    if (section == null) {
+      return false;
+    }
+
+    section.add(getAccessionId(accession, -1), xref);
+
+    return true;
+  }
+
+  private int getAccessionId(String accession, int tag) {
+    Integer accessionId = accessionIds.get(accession);
+    if (accessionId == null) {
+      accessionId = accessions.size();
+      accessionIds.put(accession, accessionId);
+      accessions.add(accession);
+      if (accessionTags != null) {
+        if (accessionId == accessionTags.length) {
+          accessionTags = Arrays.copyOf(accessionTags, accessionId * 2);
+        }
+        accessionTags[accessionId] = (short) tag;
+      }
+    }
+
+    return accessionId;
+  }
+
+  /**
+   * Adds the edges of another builder, as if its lines were added after the lines already added to this
+   * one. This allows parsing several files concurrently, each one with its own builder, and then merging
+   * them into one index.
+   *
+   * @param other the builder whose edges are added. It must not be used afterwards.
+   * @param tag the tag of the accessions added, such as the index of the source file, or a negative value
+   *  to leave them untagged. Accessions already added keep their tag.
+   * @return this builder.
+   */
+  public MappingIndexBuilder addAll(MappingIndexBuilder other, int tag) {
+    if (tag >= 0 && accessionTags == null) {
+      accessionTags = new short[Math.max(16, accessions.size() * 2)];
+      Arrays.fill(accessionTags, 0, accessions.size(), (short) -1);
+    }
+
+    IdColumn otherAccessions = other.accessions.build();
+    int[] ids = new int[otherAccessions.size()];
+    for (int i = 0; i < ids.length; i++) {
+      ids[i] = getAccessionId(otherAccessions.get(i), tag);
+    }
+
+    for (SectionBuilder otherSection : other.sections.values()) {
+      SectionBuilder section = getSectionBuilder(otherSection.database);
+      if (section != null) {
+        IdColumn xrefs = otherSection.xrefs.build();
+        for (int edge = 0; edge < xrefs.size(); edge++) {
+          section.add(ids[otherSection.accessionIds[edge]], xrefs, edge);
+        }
+      }
+    }
+    lineCount += other.lineCount;
+
+    return this;
+  }
+
+  private SectionBuilder getSectionBuilder(String database) {
+    SectionBuilder section = acceptedDatabases.get(database);
+    if (section == null && !acceptedDatabases.containsKey(database)) {
+      if (databaseFilter.test(database)) {
+        section = new SectionBuilder(database);
+        sections.put(database, section);
+      } else {
+        LOGGER.debug("Unknown to database: " + database);
+      }
+      acceptedDatabases.put(database, section);
+    }
+
+    return section;
+  }
+
+  public long getLineCount() {
+    return lineCount;
+  }
+
+  public MappingIndex build() {
+    IdColumn unsortedAccessions = accessions.build();
+    int[] accessionOrder = unsortedAccessions.sortedOrder();
+    int[] accessionRanks = new int[accessionOrder.length];
+    IdColumnBuilder sortedAccessions = new IdColumnBuilder(accessionOrder.length);
+    short[] sortedTags = accessionTags == null ? null : new short[accessionOrder.length];
+    for (int i = 0; i < accessionOrder.length; i++) {
+      accessionRanks[accessionOrder[i]] = i;
+      sortedAccessions.add(unsortedAccessions, accessionOrder[i]);
+      if (sortedTags != null) {
+        sortedTags[i] = accessionTags[accessionOrder[i]];
+      }
+    }
+
+    List<EdgeSection> edgeSections = new ArrayList<>(sections.values()).parallelStream()
+      .map(section -> section.build(accessionRanks))
+      .collect(toList());
+
+    LOGGER.debug("Index built with {} accessions and {} databases", accessionOrder.length, edgeSections.size());
+
+    return new MappingIndex(sortedAccessions.build(), edgeSections, sortedTags);
+  }
+
+  private static final class SectionBuilder {
+    private final String database;
+    private final IdColumnBuilder xrefs = new IdColumnBuilder();
+    private int[] accessionIds = new int[1024];
+
+    SectionBuilder(String database) {
+      this.database = database;
+    }
+
+    void add(int accessionId, String xref) {
+      addAccessionId(accessionId);
+      xrefs.add(xref);
+    }
+
+    void add(int accessionId, IdColumn column, int index) {
+      addAccessionId(accessionId);
+      xrefs.add(column, index);
+    }
+
+    private void addAccessionId(int accessionId) {
+      int edge = xrefs.size();
+      if (edge == accessionIds.length) {
+        accessionIds = Arrays.copyOf(accessionIds, edge * 2);
+      }
+      accessionIds[edge] = accessionId;
+    }
+
+    EdgeSection build(int[] accessionRanks) {
+      int size = xrefs.size();
+
+      // Sorting by (accession rank, edge) keeps the edges of each accession in file order
+      long[] keys = new long[size];
+      for (int edge = 0; edge < size; edge++) {
+        keys[edge] = ((long) accessionRanks[accessionIds[edge]] << 32) | edge;
+      }
+      Arrays.sort(keys);
+
+      IdColumn unsortedXrefs = xrefs.build();
+      IdColumnBuilder sortedXrefs = new IdColumnBuilder(size);
+      int[] sortedAccessions = new int[size];
+      int[] edgePositions = new int[size];
+      for (int i = 0; i < size; i++) {
+        sortedAccessions[i] = (int) (keys[i] >>> 32);
+        sortedXrefs.add(unsortedXrefs, (int) keys[i]);
+        edgePositions[(int) keys[i]] = i;
+      }
+
+      // The reverse order is computed over the file order, so that the edges of each identifier also
+      // keep the order of the source file
+      int[] reverseOrder = unsortedXrefs.sortedOrder();
+      for (int i = 0; i < size; i++) {
+        reverseOrder[i] = edgePositions[reverseOrder[i]];
+      }
+
+      return new EdgeSection(
+        database, IntBuffer.wrap(sortedAccessions), sortedXrefs.build(), IntBuffer.wrap(reverseOrder)
+      );
+    }
+  }
+}
@@ -0,0 +1,512 @@
+/*
+ * #%L
+ * UniProt ID Mapping
+ * %%
+ * Copyright (C) 2024 Hugo López-Fernández
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+package org.sing_group.uniprot_id_mapping.index;
+
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Binary snapshot of a {@link MappingIndex}, so that it can be reloaded without parsing the source file
+ * again. The snapshot records the fingerprint of the source file it was built from and, for the index of one
+ * shard of the file, the shard (its index and the number of shards).
+ *
+ * All values are little-endian and every column starts at an 8-byte boundary. The file is laid out as a
+ * 40-byte header (magic, format version, number of sections, source fingerprint and shard, whose count is
+ * zero when the index has all the mappings of the file), the accessions
+ * column, the sections (database name, accession ordinals, identifiers column and reverse permutation) and
+ * the CRC32 of all the preceding bytes. Columns are stored as their size, their number of segments, the
+ * identifier count and data length of each segment, the offsets of all the segments and the data of each
+ * segment. Version 1 stored columns as a single segment of at most 2 GB.
+ */
+public final class MappingIndexSnapshot {
+  private static final long MAGIC = 0x50414e5344495055L; // "UPIDSNAP" in little-endian
+  public static final int VERSION = 2;
+
+  private final MappingIndex index;
+  private final SourceFingerprint sourceFingerprint;
+  private final int shardIndex;
+  private final int shardCount;
+
+  private MappingIndexSnapshot(
+    MappingIndex index, SourceFingerprint sourceFingerprint, int shardIndex, int shardCount
+  ) {
+    this.index = index;
+    this.sourceFingerprint = sourceFingerprint;
+    this.shardIndex = shardIndex;
+    this.shardCount = shardCount;
+  }
+
+  public MappingIndex getIndex() {
+    return index;
+  }
+
+  public SourceFingerprint getSourceFingerprint() {
+    return sourceFingerprint;
+  }
+
+  public int getShardIndex() {
+    return shardIndex;
+  }
+
+  /**
+   * Returns the number of shards the source file was split in.
+   *
+   * @return the number of shards, or zero if the index has all the mappings of the source file.
+   */
+  public int getShardCount() {
+    return shardCount;
+  }
+
+  /**
+   * Writes a snapshot of the index. It is written to a temporary file that is then moved to the target
+   * path, so readers never see a partially written snapshot.
+   *
+   * @param index the index to write.
+   * @param sourceFingerprint the fingerprint of the file the index was built from.
+   * @param file the path of the snapshot.
+   * @throws IOException if an I/O error occurs.
+   */
+  public static void write(MappingIndex index, SourceFingerprint sourceFingerprint, Path file) throws IOException {
+    write(index, sourceFingerprint, 0, 0, file);
+  }
+
+  /**
+   * Writes a snapshot of the index of one shard of a file. It is written to a temporary file that is then
+   * moved to the target path, so readers never see a partially written snapshot.
+   *
+   * @param index the index to write.
+   * @param sourceFingerprint the fingerprint of the file the index was built from.
+   * @param shardIndex the index of the shard.
+   * @param shardCount the number of shards, or zero if the index has all the mappings of the file.
+   * @param file the path of the snapshot.
+   * @throws IOException if an I/O error occurs.
+   */
+  public static void write(
+    MappingIndex index, SourceFingerprint sourceFingerprint, int shardIndex, int shardCount, Path file
+  ) throws IOException {
+    write(file, output -> {
+      output.putHeader(index.getSections().size(), sourceFingerprint, shardIndex, shardCount);
+      output.putColumn(index.getAccessions());
+      for (EdgeSection section : index.getSections()) {
+        output.putSectionStart(section.getDatabase(), section.size());
+        output.putInts(section.getAccessions(), section.size());
+        output.align();
+        output.putColumn(section.getXrefs());
+        output.putInts(section.getReverseOrder(), section.size());
+        output.align();
+      }
+    });
+  }
+
+  /**
+   * Writes a snapshot through a temporary file that is moved to the target path once complete.
+   *
+   * @param file the path of the snapshot.
+   * @param content the writer of the snapshot content, from the header to the last section.
+   * @throws IOException if an I/O error occurs.
+   */
+  static void write(Path file, OutputWriter content) throws IOException {
+    Path directory = file.toAbsolutePath().getParent();
+    Path temporaryFile = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+    try {
+      try (FileChannel channel = FileChannel.open(temporaryFile, WRITE, CREATE, TRUNCATE_EXISTING)) {
+        Output output = new Output(channel);
+        content.write(output);
+        output.finish();
+        channel.force(false);
+      }
+
+      try {
+        Files.move(temporaryFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+      } catch (AtomicMoveNotSupportedException e) {
+        Files.move(temporaryFile, file, StandardCopyOption.REPLACE_EXISTING);
+      }
+    } finally {
+      Files.deleteIfExists(temporaryFile);
+    }
+  }
+
+  /**
+   * Reads a snapshot into heap buffers with large sequential reads, verifying its checksum.
+   *
+   * @param file the path of the snapshot.
+   * @return the snapshot read.
+   * @throws IOException if an I/O error occurs or the file is not a valid snapshot.
+   */
+  public static MappingIndexSnapshot read(Path file) throws IOException {
+    return read(file, false);
+  }
+
+  /**
+   * Maps a snapshot read-only into memory instead of reading it. Each column is mapped separately and
+   * accessed through the page cache, so all the processes mapping the same file share a single copy of
+   * the index and loading it takes almost no time. The checksum is not verified, as it would require
+   * reading the whole file.
+   *
+   * @param file the path of the snapshot.
+   * @return the mapped snapshot.
+   * @throws IOException if an I/O error occurs or the file is not a valid snapshot.
+   */
+  public static MappingIndexSnapshot map(Path file) throws IOException {
+    return read(file, true);
+  }
+
+  private static MappingIndexSnapshot read(Path file, boolean mapped) throws IOException {
+    try (FileChannel channel = FileChannel.open(file, READ)) {
+      Input input = new Input(channel, mapped);
+      int sectionCount = readHeader(input, file);
+      SourceFingerprint sourceFingerprint = new SourceFingerprint(input.getLong(), input.getLong());
+      int shardIndex = input.getInt();
+      int shardCount = input.getInt();
+
+      IdColumn accessions = input.getColumn();
+      List<EdgeSection> sections = new ArrayList<>(sectionCount);
+      for (int i = 0; i < sectionCount; i++) {
+        String database = StandardCharsets.UTF_8.decode(input.getBytes(input.getInt())).toString();
+        input.align();
+        int size = input.getInt();
+        IntBuffer sectionAccessions = input.getInts(size);
+        input.align();
+        IdColumn xrefs = input.getColumn();
+        IntBuffer reverseOrder = input.getInts(size);
+        input.align();
+        sections.add(new EdgeSection(database, sectionAccessions, xrefs, reverseOrder));
+      }
+      if (!mapped) {
+        input.verifyChecksum(file);
+      }
+
+      return new MappingIndexSnapshot(
+        new MappingIndex(accessions, sections), sourceFingerprint, shardIndex, shardCount
+      );
+    }
+  }
+
+  /**
+   * Reads only the fingerprint of the source file recorded in a snapshot.
+   *
+   * @param file the path of the snapshot.
+   * @return the fingerprint of the source file of the snapshot.
+   * @throws IOException if an I/O error occurs or the file is not a valid snapshot.
+   */
+  public static SourceFingerprint readSourceFingerprint(Path file) throws IOException {
+    return readHeader(file).getSourceFingerprint();
+  }
+
+  /**
+   * Reads only the header of a snapshot, with the fingerprint of its source file and its shard. The index
+   * of the returned snapshot is {@code null}.
+   *
+   * @param file the path of the snapshot.
+   * @return the snapshot without its index.
+   * @throws IOException if an I/O error occurs or the file is not a valid snapshot.
+   */
+  public static MappingIndexSnapshot readHeader(Path file) throws IOException {
+    try (FileChannel channel = FileChannel.open(file, READ)) {
+      Input input = new Input(channel, false);
+      readHeader(input, file);
+
+      return new MappingIndexSnapshot(
+        null, new SourceFingerprint(input.getLong(), input.getLong()), input.getInt(), input.getInt()
+      );
+    }
+  }
+
+  private static int readHeader(Input input, Path file) throws IOException {
+    if (input.getLong() != MAGIC) {
+      throw new IOException("Not an index snapshot: " + file);
+    }
+    int version = input.getInt();
+    if (version != VERSION) {
+      throw new IOException("Unsupported index snapshot version " + version + ": " + file);
+    }
+
+    return input.getInt();
+  }
+
+  interface OutputWriter {
+    void write(Output output) throws IOException;
+  }
+
+  static final class Output {
+    private final FileChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 20).order(ByteOrder.LITTLE_ENDIAN);
+    private final CRC32 crc = new CRC32();
+    private long position;
+
+    Output(FileChannel channel) {
+      this.channel = channel;
+    }
+
+    void putInt(int value) throws IOException {
+      ensureRemaining(Integer.BYTES);
+      buffer.putInt(value);
+      position += Integer.BYTES;
+    }
+
+    void putLong(long value) throws IOException {
+      ensureRemaining(Long.BYTES);
+      buffer.putLong(value);
+      position += Long.BYTES;
+    }
+
+    void putHeader(
+      int sectionCount, SourceFingerprint sourceFingerprint, int shardIndex, int shardCount
+    ) throws IOException {
+      putLong(MAGIC);
+      putInt(VERSION);
+      putInt(sectionCount);
+      putLong(sourceFingerprint.getLength());
+      putLong(sourceFingerprint.getChecksum());
+      putInt(shardIndex);
+      putInt(shardCount);
+    }
+
+    /**
+     * Writes the database name and the size of a section. It must be followed by the accession ordinals,
+     * the identifiers column and the reverse permutation of the section, each one aligned.
+     */
+    void putSectionStart(String database, int size) throws IOException {
+      byte[] name = database.getBytes(StandardCharsets.UTF_8);
+      putInt(name.length);
+      putBytes(ByteBuffer.wrap(name), name.length);
+      align();
+      putInt(size);
+    }
+
+    /**
+     * Copies the content of a file, such as a column spilled to disk while building an index.
+     */
+    void putFile(Path file) throws IOException {
+      flush();
+      try (FileChannel source = FileChannel.open(file, READ)) {
+        ByteBuffer chunk = ByteBuffer.allocateDirect(1 << 20);
+        while (source.read(chunk) >= 0) {
+          ((Buffer) chunk).flip();
+          crc.update(chunk.duplicate());
+          position += chunk.remaining();
+          while (chunk.hasRemaining()) {
+            channel.write(chunk);
+          }
+          ((Buffer) chunk).clear();
+        }
+      }
+    }
+
+    void putInts(IntBuffer values, int count) throws IOException {
+      for (int i = 0; i < count; i++) {
+        putInt(values.get(i));
+      }
+    }
+
+    void putBytes(ByteBuffer values, int length) throws IOException {
+      flush();
+      ByteBuffer source = values.duplicate();
+      ((Buffer) source).position(0).limit(length);
+      crc.update(source.duplicate());
+      while (source.hasRemaining()) {
+        channel.write(source);
+      }
+      position += length;
+    }
+
+    void putColumn(IdColumn column) throws IOException {
+      ByteBuffer[] segments = column.getSegments();
+      int[] segmentStarts = column.getSegmentStarts();
+      int[] dataLengths = new int[segments.length];
+      putInt(column.size());
+      putInt(segments.length);
+      for (int segment = 0; segment < segments.length; segment++) {
+        int segmentEnd = segment + 1 < segments.length ? segmentStarts[segment + 1] : column.size();
+        int idCount = segmentEnd - segmentStarts[segment];
+        dataLengths[segment] = column.getOffsets().get(segmentEnd + segment);
+        putInt(idCount);
+        putInt(dataLengths[segment]);
+      }
+      align();
+      putInts(column.getOffsets(), column.size() + segments.length);
+      align();
+      for (int segment = 0; segment < segments.length; segment++) {
+        putBytes(segments[segment], dataLengths[segment]);
+        align();
+      }
+    }
+
+    void align() throws IOException {
+      while (position % Long.BYTES != 0) {
+        ensureRemaining(1);
+        buffer.put((byte) 0);
+        position++;
+      }
+    }
+
+    void finish() throws IOException {
+      flush();
+      long checksum = crc.getValue();
+      buffer.putLong(checksum);
+      ((Buffer) buffer).flip();
+      while (buffer.hasRemaining()) {
+        channel.write(buffer);
+      }
+    }
+
+    private void ensureRemaining(int bytes) throws IOException {
+      if (buffer.remaining() < bytes) {
+        flush();
+      }
+    }
+
+    private void flush() throws IOException {
+      ((Buffer) buffer).flip();
+      crc.update(buffer.duplicate());
+      while (buffer.hasRemaining()) {
+        channel.write(buffer);
+      }
+      ((Buffer) buffer).clear();
+    }
+  }
+
+  private static final class Input {
+    private static final int READ_CHUNK_SIZE = 8 << 20;
+    private static final int MIN_MAPPED_SIZE = 1 << 16;
+
+    private final FileChannel channel;
+    private final boolean mapped;
+    private final CRC32 crc = new CRC32();
+    private long position;
+
+    Input(FileChannel channel, boolean mapped) {
+      this.channel = channel;
+      this.mapped = mapped;
+    }
+
+    int getInt() throws IOException {
+      return getBytes(Integer.BYTES).getInt(0);
+    }
+
+    long getLong() throws IOException {
+      return getBytes(Long.BYTES).getLong(0);
+    }
+
+    IntBuffer getInts(int count) throws IOException {
+      if (count < 0 || count > Integer.MAX_VALUE / Integer.BYTES) {
+        throw new IOException("Invalid index snapshot, too many values in a section: " + count);
+      }
+      ByteBuffer bytes = getBytes(count * Integer.BYTES);
+      if (!bytes.hasArray()) {
+        return bytes.asIntBuffer();
+      }
+
+      int[] values = new int[count];
+      bytes.asIntBuffer().get(values);
+
+      return IntBuffer.wrap(values);
+    }
+
+    ByteBuffer getBytes(int length) throws IOException {
+      if (mapped && length >= MIN_MAPPED_SIZE) {
+        ByteBuffer bytes = channel.map(FileChannel.MapMode.READ_ONLY, position, length)
+          .order(ByteOrder.LITTLE_ENDIAN);
+        position += length;
+
+        return bytes;
+      }
+
+      ByteBuffer bytes = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+      while (bytes.hasRemaining()) {
+        // Reads are done in chunks because the channel copies heap buffers through a direct buffer of the
+        // same size
+        ((Buffer) bytes).limit(Math.min(bytes.capacity(), bytes.position() + READ_CHUNK_SIZE));
+        if (channel.read(bytes, position + bytes.position()) < 0) {
+          throw new EOFException("Truncated index snapshot");
+        }
+      }
+      ((Buffer) bytes).flip();
+      crc.update(bytes.duplicate());
+      position += length;
+
+      return bytes;
+    }
+
+    IdColumn getColumn() throws IOException {
+      int size = getInt();
+      int segmentCount = getInt();
+      if (segmentCount < 1) {
+        throw new IOException("Invalid index snapshot, column without segments");
+      }
+      int[] segmentStarts = new int[segmentCount];
+      int[] dataLengths = new int[segmentCount];
+      int segmentStart = 0;
+      for (int segment = 0; segment < segmentCount; segment++) {
+        segmentStarts[segment] = segmentStart;
+        segmentStart += getInt();
+        dataLengths[segment] = getInt();
+      }
+      align();
+      IntBuffer offsets = getInts(size + segmentCount);
+      align();
+      ByteBuffer[] segments = new ByteBuffer[segmentCount];
+      for (int segment = 0; segment < segmentCount; segment++) {
+        segments[segment] = getBytes(dataLengths[segment]);
+        align();
+      }
+
+      return new IdColumn(segments, segmentStarts, offsets);
+    }
+
+    void align() throws IOException {
+      int padding = (int) ((Long.BYTES - position % Long.BYTES) % Long.BYTES);
+      if (padding > 0) {
+        getBytes(padding);
+      }
+    }
+
+    void verifyChecksum(Path file) throws IOException {
+      long checksum = crc.getValue();
+      if (getLong() != checksum) {
+        throw new IOException("Corrupted index snapshot: " + file);
+      }
+    }
+  }
+}
@@ -0,0 +1,176 @@
+/*
+ * #%L
+ * UniProt ID Mapping
+ * %%
+ * Copyright (C) 2024 Hugo López-Fernández
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+package org.sing_group.uniprot_id_mapping.index;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Identifies the content of a source {@code idmapping.dat} file by its length and CRC32 checksum, so that
+ * snapshots built from a different release can be detected.
+ */
+public final class SourceFingerprint {
+  private final long length;
+  private final long checksum;
+
+  public SourceFingerprint(long length, long checksum) {
+    this.length = length;
+    this.checksum = checksum;
+  }
+
+  public long getLength() {
+    return length;
+  }
+
+  public long getChecksum() {
+    return checksum;
+  }
+
+  public static SourceFingerprint of(Path file) throws IOException {
+    CRC32 crc = new CRC32();
+    long length = 0;
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 20);
+      int read;
+      while ((read = channel.read(buffer)) >= 0) {
+        // Casts keep the calls binary compatible with Java 8, where Buffer methods are not covariant
+        ((Buffer) buffer).flip();
+        crc.update(buffer);
+        ((Buffer) buffer).clear();
+        length += read;
+      }
+    }
+
+    return new SourceFingerprint(length, crc.getValue());
+  }
+
+  /**
+   * Combines the fingerprints of several source files, in order, into the fingerprint of an index built from
+   * all of them.
+   *
+   * @param fingerprints the fingerprints of each source file.
+   * @return the combined fingerprint.
+   */
+  public static SourceFingerprint combine(List<SourceFingerprint> fingerprints) {
+    CRC32 crc = new CRC32();
+    long length = 0;
+    ByteBuffer buffer = ByteBuffer.allocate(2 * Long.BYTES);
+    for (SourceFingerprint fingerprint : fingerprints) {
+      length += fingerprint.length;
+      buffer.putLong(0, fingerprint.length).putLong(Long.BYTES, fingerprint.checksum);
+      crc.update(buffer.array());
+    }
+
+    return new SourceFingerprint(length, crc.getValue());
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    if (this == obj) {
+      return true;
+    }
+    if (!(obj instanceof SourceFingerprint)) {
+      return false;
+    }
+    SourceFingerprint other = (SourceFingerprint) obj;
+
+    return length == other.length && checksum == other.checksum;
+  }
+
+  @Override
+  public int hashCode() {
+    return Long.hashCode(length) * 31 + Long.hashCode(checksum);
+  }
+
+  @Override
+  public String toString() {
+    return length + " bytes, CRC32 " + Long.toHexString(checksum);
+  }
+
+  /**
+   * Input stream that computes the fingerprint of the bytes read through it, so that the fingerprint of a
+   * source file is obtained while it is parsed instead of reading it twice.
+   */
+  public static final class TrackingInputStream extends FilterInputStream {
+    private final CRC32 crc = new CRC32();
+    private long length;
+
+    public TrackingInputStream(InputStream in) {
+      super(in);
+    }
+
+    @Override
+    public int read() throws IOException {
+      int b = in.read();
+      if (b >= 0) {
+        crc.update(b);
+        length++;
+      }
+
+      return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      int read = in.read(b, off, len);
+      if (read > 0) {
+        crc.update(b, off, read);
+        length += read;
+      }
+
+      return read;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+      byte[] buffer = new byte[8192];
+      long skipped = 0;
+      int read;
+      while (skipped < n && (read = read(buffer, 0, (int) Math.min(buffer.length, n - skipped))) > 0) {
+        skipped += read;
+      }
+
+      return skipped;
+    }
+
+    @Override
+    public boolean markSupported() {
+      return false;
+    }
+
+    public SourceFingerprint getFingerprint() {
+      return new SourceFingerprint(length, crc.getValue());
+    }
+  }
+}
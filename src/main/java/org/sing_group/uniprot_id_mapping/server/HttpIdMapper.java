@@ -0,0 +1,112 @@
+/*
+ * #%L
+ * UniProt ID Mapping
+ * %%
+ * Copyright (C) 2024 Hugo López-Fernández
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+package org.sing_group.uniprot_id_mapping.server;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.net.URLEncoder;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.EntityTemplate;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.util.EntityUtils;
+import org.sing_group.uniprot_id_mapping.IdMappingTable;
+import org.sing_group.uniprot_id_mapping.UniProtDbFrom;
+import org.sing_group.uniprot_id_mapping.UniProtDbTo;
+import org.sing_group.uniprot_id_mapping.UniProtIdMapper;
+
+/**
+ * Client of an {@code UniProtIdMappingServer}. Identifiers are streamed in the request body and the TSV
+ * results are parsed as they are received.
+ */
+public class HttpIdMapper implements UniProtIdMapper {
+    private static final int MAX_CONNECTIONS = 64;
+
+    private final String serverUrl;
+    private final HttpClient httpClient;
+
+    /**
+     * @param serverUrl the base URL of the server, such as {@code http://localhost:8080}.
+     */
+    public HttpIdMapper(String serverUrl) {
+        this.serverUrl = serverUrl.endsWith("/") ? serverUrl.substring(0, serverUrl.length() - 1) : serverUrl;
+        this.httpClient = HttpClientBuilder.create()
+            .setMaxConnPerRoute(MAX_CONNECTIONS)
+            .setMaxConnTotal(MAX_CONNECTIONS)
+            .build();
+    }
+
+    @Override
+    public Map<String, List<String>> mapIds(UniProtDbFrom from, UniProtDbTo to, List<String> ids) {
+        return mapIdsTable(from, to, ids).toMap();
+    }
+
+    @Override
+    public IdMappingTable mapIdsTable(UniProtDbFrom from, UniProtDbTo to, List<String> ids) {
+        try {
+            HttpPost post = new HttpPost(
+                serverUrl + "/map?from=" + URLEncoder.encode(from.name(), "UTF-8")
+                    + "&to=" + URLEncoder.encode(to.name(), "UTF-8")
+            );
+            EntityTemplate body = new EntityTemplate(out -> {
+                BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(out, UTF_8), 1 << 16);
+                for (String id : ids) {
+                    writer.write(id);
+                    writer.write('\n');
+                }
+                writer.flush();
+            });
+            body.setContentType(ContentType.TEXT_PLAIN.withCharset(UTF_8).toString());
+            post.setEntity(body);
+
+            HttpResponse response = httpClient.execute(post);
+            HttpEntity entity = response.getEntity();
+            if (response.getStatusLine().getStatusCode() != 200) {
+                throw new RuntimeException(
+                    "Mapping server error " + response.getStatusLine().getStatusCode() + ": "
+                        + EntityUtils.toString(entity).trim()
+                );
+            }
+
+            try (Reader reader = new InputStreamReader(entity.getContent(), UTF_8)) {
+                return IdMappingTable.readTsv(reader);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to query the mapping server.", e);
+        }
+    }
+}
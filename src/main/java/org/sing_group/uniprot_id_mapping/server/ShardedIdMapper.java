@@ -0,0 +1,143 @@
+/*
+ * #%L
+ * UniProt ID Mapping
+ * %%
+ * Copyright (C) 2024 Hugo López-Fernández
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+package org.sing_group.uniprot_id_mapping.server;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+
+import org.sing_group.uniprot_id_mapping.IdShard;
+import org.sing_group.uniprot_id_mapping.JobExecutors;
+import org.sing_group.uniprot_id_mapping.UniProtDbFrom;
+import org.sing_group.uniprot_id_mapping.UniProtDbTo;
+import org.sing_group.uniprot_id_mapping.UniProtIdMapper;
+
+/**
+ * Client of a sharded deployment, in which each node serves one {@link IdShard} of the mappings (see
+ * {@code UniProtIdLocalMapper(File, boolean, IdShard)}). The identifiers of each request are split by
+ * shard and sent to their shards in parallel, and the results of all of them are merged.
+ */
+public class ShardedIdMapper implements UniProtIdMapper, Closeable {
+    private final List<UniProtIdMapper> shards;
+    private final ExecutorService executor;
+
+    /**
+     * @param shardUrls the base URLs of the servers of each shard, in shard order.
+     * @return the mapper.
+     */
+    public static ShardedIdMapper ofServers(List<String> shardUrls) {
+        return new ShardedIdMapper(shardUrls.stream().map(HttpIdMapper::new).collect(Collectors.toList()));
+    }
+
+    /**
+     * @param shards the mappers of each shard, in shard order, so that the mapper at position {@code i}
+     *  serves the shard {@code i/shards.size()}.
+     */
+    public ShardedIdMapper(List<? extends UniProtIdMapper> shards) {
+        if (shards.isEmpty()) {
+            throw new IllegalArgumentException("At least one shard is required");
+        }
+        this.shards = new ArrayList<>(shards);
+        this.executor = JobExecutors.newJobExecutor(shards.size());
+    }
+
+    public int getShardCount() {
+        return shards.size();
+    }
+
+    @Override
+    public Map<String, List<String>> mapIds(UniProtDbFrom from, UniProtDbTo to, List<String> ids) {
+        Map<String, List<String>> results = new HashMap<>();
+        scatter(ids, (shard, shardIds) -> shards.get(shard).mapIds(from, to, shardIds)).forEach(results::putAll);
+
+        return results;
+    }
+
+    @Override
+    public Map<UniProtDbTo, Map<String, List<String>>> mapIds(
+        UniProtDbFrom from, Set<UniProtDbTo> to, List<String> ids
+    ) {
+        Map<UniProtDbTo, Map<String, List<String>>> results = new EnumMap<>(UniProtDbTo.class);
+        to.forEach(target -> results.put(target, new HashMap<>()));
+        scatter(ids, (shard, shardIds) -> shards.get(shard).mapIds(from, to, shardIds)).forEach(
+            shardResults -> shardResults.forEach((target, targetResults) -> results.get(target).putAll(targetResults))
+        );
+
+        return results;
+    }
+
+    private <T> List<T> scatter(List<String> ids, ShardCall<T> call) {
+        List<List<String>> shardIds = new ArrayList<>(shards.size());
+        for (int i = 0; i < shards.size(); i++) {
+            shardIds.add(new ArrayList<>());
+        }
+        for (String id : ids) {
+            shardIds.get(IdShard.shardOf(id, shards.size())).add(id);
+        }
+
+        List<Future<T>> futures = new ArrayList<>();
+        for (int i = 0; i < shards.size(); i++) {
+            if (!shardIds.get(i).isEmpty()) {
+                int shard = i;
+                futures.add(executor.submit(() -> call.map(shard, shardIds.get(shard))));
+            }
+        }
+
+        List<T> results = new ArrayList<>(futures.size());
+        try {
+            for (Future<T> future : futures) {
+                results.add(future.get());
+            }
+        } catch (InterruptedException e) {
+            futures.forEach(future -> future.cancel(true));
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            futures.forEach(future -> future.cancel(true));
+            throw e.getCause() instanceof RuntimeException
+                ? (RuntimeException) e.getCause() : new RuntimeException("Failed to query a shard.", e.getCause());
+        }
+
+        return results;
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    @FunctionalInterface
+    private interface ShardCall<T> {
+        T map(int shard, List<String> ids);
+    }
+}
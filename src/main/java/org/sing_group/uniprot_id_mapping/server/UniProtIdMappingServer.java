@@ -0,0 +1,334 @@
+/*
+ * #%L
+ * UniProt ID Mapping
+ * %%
+ * Copyright (C) 2024 Hugo López-Fernández
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+package org.sing_group.uniprot_id_mapping.server;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.sing_group.uniprot_id_mapping.IdMappingTable;
+import org.sing_group.uniprot_id_mapping.IdShard;
+import org.sing_group.uniprot_id_mapping.UniProtDbFrom;
+import org.sing_group.uniprot_id_mapping.UniProtDbTo;
+import org.sing_group.uniprot_id_mapping.UniProtIdLocalMapper;
+import org.sing_group.uniprot_id_mapping.UniProtIdMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Serves an {@code UniProtIdMapper} (usually a warm {@code UniProtIdLocalMapper}, alone or in a
+ * {@code UniProtIdTieredMapper} with a cache) over HTTP, so that many clients share one index. It is based on
+ * the JDK HTTP server, whose selector thread accepts and dispatches connections to a bounded pool of
+ * workers. Requests that find the pool and its queue full are handed to a dedicated rejection thread, which
+ * answers them immediately with a 503 status without blocking the selector thread.
+ *
+ * Endpoints:
+ * <ul>
+ * <li>{@code POST /map?from=<database>&to=<database>}: maps the identifiers of the request body (one per
+ * line) and streams the results as TSV ({@code From}, {@code To}).</li>
+ * <li>{@code GET /metrics}: request counters and latency quantiles in the Prometheus text format.</li>
+ * <li>{@code GET /health}: returns {@code OK} while the server is running.</li>
+ * </ul>
+ */
+public class UniProtIdMappingServer implements Closeable {
+    private static final Logger LOGGER = LoggerFactory.getLogger(UniProtIdMappingServer.class);
+    private static final ThreadLocal<Boolean> OVERLOADED = new ThreadLocal<>();
+
+    private final UniProtIdMapper mapper;
+    private final int maxIdsPerRequest;
+    private final HttpServer server;
+    private final ThreadPoolExecutor workers;
+    private final ExecutorService rejections;
+
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final LongAdder mappedIds = new LongAdder();
+    private final LongAdder rejectedRequests = new LongAdder();
+    private final LongAdder failedRequests = new LongAdder();
+
+    public UniProtIdMappingServer(UniProtIdMapper mapper, int port) throws IOException {
+        this(
+            mapper, new InetSocketAddress("localhost", port), Runtime.getRuntime().availableProcessors(), 256,
+            10_000_000
+        );
+    }
+
+    /**
+     * @param mapper the mapper used to answer the requests. It must be thread-safe.
+     * @param address the address where the server listens.
+     * @param threads the number of worker threads.
+     * @param queueSize the number of requests that can wait for a worker before new ones are rejected.
+     * @param maxIdsPerRequest the maximum number of identifiers of a request.
+     * @throws IOException if the server cannot be bound to the address.
+     */
+    public UniProtIdMappingServer(
+        UniProtIdMapper mapper, InetSocketAddress address, int threads, int queueSize, int maxIdsPerRequest
+    ) throws IOException {
+        this.mapper = mapper;
+        this.maxIdsPerRequest = maxIdsPerRequest;
+
+        // Rejected requests only read their headers and get a short 503 response, so one thread answers all of
+        // them. Its queue is unbounded because dropping an exchange would leave its connection open
+        this.rejections = new ThreadPoolExecutor(
+            1, 1, 0, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+            runnable -> {
+                Thread thread = new Thread(runnable, "uniprot-server-rejections");
+                thread.setDaemon(true);
+                return thread;
+            }
+        );
+
+        AtomicInteger threadCount = new AtomicInteger();
+        this.workers = new ThreadPoolExecutor(
+            threads, threads, 60, TimeUnit.SECONDS, new ArrayBlockingQueue<>(queueSize),
+            runnable -> {
+                Thread thread = new Thread(runnable, "uniprot-server-" + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            },
+            (exchange, executor) -> this.rejections.execute(() -> {
+                OVERLOADED.set(true);
+                try {
+                    exchange.run();
+                } finally {
+                    OVERLOADED.remove();
+                }
+            })
+        );
+
+        this.server = HttpServer.create(address, 0);
+        this.server.setExecutor(this.workers);
+        this.server.createContext("/map", this::handleMap);
+        this.server.createContext("/metrics", this::handleMetrics);
+        this.server.createContext("/health", this::handleHealth);
+    }
+
+    public UniProtIdMappingServer start() {
+        this.server.start();
+        LOGGER.info("UniProt ID mapping server listening on {}", this.server.getAddress());
+
+        return this;
+    }
+
+    public InetSocketAddress getAddress() {
+        return this.server.getAddress();
+    }
+
+    int getQueuedRequests() {
+        return this.workers.getQueue().size();
+    }
+
+    @Override
+    public void close() {
+        this.server.stop(0);
+        this.workers.shutdown();
+        this.rejections.shutdown();
+    }
+
+    /**
+     * Answers a request with a 503 status if it was rejected because the workers and their queue are full.
+     *
+     * @param exchange the exchange of the request.
+     * @return {@code true} if the request was rejected.
+     * @throws IOException if an I/O error occurs sending the response.
+     */
+    private boolean rejectIfOverloaded(HttpExchange exchange) throws IOException {
+        if (!Boolean.TRUE.equals(OVERLOADED.get())) {
+            return false;
+        }
+
+        rejectedRequests.increment();
+        exchange.getResponseHeaders().set("Retry-After", "1");
+        sendText(exchange, 503, "Server overloaded\n");
+
+        return true;
+    }
+
+    private void handleHealth(HttpExchange exchange) throws IOException {
+        if (!rejectIfOverloaded(exchange)) {
+            sendText(exchange, 200, "OK\n");
+        }
+    }
+
+    private void handleMap(HttpExchange exchange) throws IOException {
+        if (rejectIfOverloaded(exchange)) {
+            return;
+        }
+
+        long start = System.nanoTime();
+        try {
+            if (!exchange.getRequestMethod().equals("POST")) {
+                sendText(exchange, 405, "Only POST is allowed\n");
+                return;
+            }
+
+            Map<String, String> parameters = parseQuery(exchange.getRequestURI().getRawQuery());
+            if (parameters.get("from") == null || parameters.get("to") == null) {
+                throw new IllegalArgumentException("The from and to parameters are required");
+            }
+            UniProtDbFrom from = UniProtDbFrom.parse(parameters.get("from"));
+            UniProtDbTo to = UniProtDbTo.parse(parameters.get("to"));
+
+            List<String> ids = readIds(exchange);
+            if (ids == null) {
+                sendText(exchange, 413, "Too many identifiers, the maximum is " + maxIdsPerRequest + "\n");
+                return;
+            }
+
+            IdMappingTable results = mapper.mapIdsTable(from, to, ids);
+            mappedIds.add(ids.size());
+
+            exchange.getResponseHeaders().set("Content-Type", "text/tab-separated-values; charset=utf-8");
+            exchange.sendResponseHeaders(200, 0);
+            try (OutputStream body = exchange.getResponseBody()) {
+                results.writeTsv(body);
+            }
+        } catch (IllegalArgumentException e) {
+            failedRequests.increment();
+            sendText(exchange, 400, e.getMessage() + "\n");
+        } catch (IOException | RuntimeException e) {
+            failedRequests.increment();
+            LOGGER.warn("Failed to process mapping request", e);
+            try {
+                sendText(exchange, 500, "Mapping failed\n");
+            } catch (IOException | RuntimeException sendError) {
+                // The response was already started, so the connection is just closed
+                exchange.close();
+            }
+        } finally {
+            latency.record(System.nanoTime() - start);
+        }
+    }
+
+    private List<String> readIds(HttpExchange exchange) throws IOException {
+        List<String> ids = new ArrayList<>();
+        InputStreamReader body = new InputStreamReader(exchange.getRequestBody(), UTF_8);
+        try (BufferedReader reader = new BufferedReader(body, 1 << 16)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String id = line.trim();
+                if (!id.isEmpty()) {
+                    if (ids.size() == maxIdsPerRequest) {
+                        return null;
+                    }
+                    ids.add(id);
+                }
+            }
+        }
+
+        return ids;
+    }
+
+    private void handleMetrics(HttpExchange exchange) throws IOException {
+        if (rejectIfOverloaded(exchange)) {
+            return;
+        }
+
+        StringBuilder metrics = new StringBuilder();
+        metric(metrics, "uniprot_map_requests_total", latency.getCount());
+        metric(metrics, "uniprot_map_requests_rejected_total", rejectedRequests.sum());
+        metric(metrics, "uniprot_map_requests_failed_total", failedRequests.sum());
+        metric(metrics, "uniprot_map_ids_total", mappedIds.sum());
+        for (String quantile : new String[] { "0.5", "0.9", "0.99", "0.999" }) {
+            metric(
+                metrics, "uniprot_map_latency_microseconds{quantile=\"" + quantile + "\"}",
+                latency.getQuantileMicros(Double.parseDouble(quantile))
+            );
+        }
+        metric(metrics, "uniprot_map_latency_microseconds_mean", Math.round(latency.getMeanMicros()));
+        metric(metrics, "uniprot_workers_active", workers.getActiveCount());
+        metric(metrics, "uniprot_workers_queued", workers.getQueue().size());
+
+        sendText(exchange, 200, metrics.toString());
+    }
+
+    private static void metric(StringBuilder metrics, String name, long value) {
+        metrics.append(name).append(' ').append(value).append('\n');
+    }
+
+    private static void sendText(HttpExchange exchange, int status, String text) throws IOException {
+        byte[] body = text.getBytes(UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    private static Map<String, String> parseQuery(String query) throws IOException {
+        Map<String, String> parameters = new HashMap<>();
+        if (query != null) {
+            for (String parameter : query.split("&")) {
+                int equals = parameter.indexOf('=');
+                if (equals > 0) {
+                    parameters.put(
+                        URLDecoder.decode(parameter.substring(0, equals), "UTF-8"),
+                        URLDecoder.decode(parameter.substring(equals + 1), "UTF-8")
+                    );
+                }
+            }
+        }
+
+        return parameters;
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("Usage: UniProtIdMappingServer <idmapping.dat> [port] [snapshot|-] [shard/shards]");
+            System.exit(2);
+        }
+
+        File mappingFile = new File(args[0]);
+        int port = args.length > 1 ? Integer.parseInt(args[1]) : 8080;
+        IdShard shard = args.length > 3 ? IdShard.parse(args[3]) : null;
+        UniProtIdLocalMapper localMapper = args.length > 2 && !args[2].equals("-")
+            ? UniProtIdLocalMapper.load(mappingFile, Paths.get(args[2]), false, shard)
+            : new UniProtIdLocalMapper(mappingFile, false, shard);
+
+        new UniProtIdMappingServer(localMapper, port).start();
+    }
+}
@@ -0,0 +1,220 @@
+/*
+ * #%L
+ * UniProt ID Mapping
+ * %%
+ * Copyright (C) 2024 Hugo López-Fernández
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+package org.sing_group.uniprot_id_mapping;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * In-process stand-in of the UniProt ID mapping REST API, which maps every identifier to itself with a
+ * {@code -m} suffix, except those starting with {@code X}, which are not mapped.
+ */
+public class FakeUniProtServer implements Closeable {
+  private final HttpServer server;
+  private final Map<String, List<String>> jobs = new HashMap<>();
+  private final AtomicInteger jobCounter = new AtomicInteger();
+
+  private final List<List<String>> submittedBatches = Collections.synchronizedList(new ArrayList<>());
+  private final List<String> pageRequests = Collections.synchronizedList(new ArrayList<>());
+  private final Map<Integer, Integer> pageFailures = new HashMap<>();
+  private volatile int maxIdsPerJob = Integer.MAX_VALUE;
+  private volatile long jobTime;
+
+  public FakeUniProtServer() throws IOException {
+    this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+    this.server.createContext("/idmapping/run", this::submit);
+    this.server.createContext("/idmapping/status/", this::status);
+    this.server.createContext("/idmapping/stream/", this::stream);
+    this.server.createContext("/idmapping/results/", this::page);
+    this.server.start();
+  }
+
+  public String getUrl() {
+    return "http://127.0.0.1:" + server.getAddress().getPort();
+  }
+
+  public List<List<String>> getSubmittedBatches() {
+    return submittedBatches;
+  }
+
+  public List<String> getPageRequests() {
+    return pageRequests;
+  }
+
+  public void failPage(int cursor, int times) {
+    synchronized (pageFailures) {
+      pageFailures.put(cursor, times);
+    }
+  }
+
+  public void setMaxIdsPerJob(int maxIdsPerJob) {
+    this.maxIdsPerJob = maxIdsPerJob;
+  }
+
+  public void setJobTime(long jobTime) {
+    this.jobTime = jobTime;
+  }
+
+  private void submit(HttpExchange exchange) throws IOException {
+    Map<String, String> form = parseQuery(new String(readAll(exchange.getRequestBody()), UTF_8));
+    List<String> ids = new ArrayList<>(Arrays.asList(form.get("ids").split(",")));
+    Collections.sort(ids);
+    if (ids.size() > maxIdsPerJob) {
+      respond(exchange, 400, "{\"url\":\"http://rest.uniprot.org/idmapping/run\",\"messages\":"
+        + "[\"Number of ids must be less than or equal to " + maxIdsPerJob + " ids\"]}");
+      return;
+    }
+
+    submittedBatches.add(ids);
+    String jobId = "job-" + jobCounter.incrementAndGet();
+    synchronized (jobs) {
+      jobs.put(jobId, ids);
+    }
+    respond(exchange, 200, "{\"jobId\":\"" + jobId + "\"}");
+  }
+
+  private void status(HttpExchange exchange) throws IOException {
+    try {
+      Thread.sleep(jobTime);
+    } catch (InterruptedException e) {
+      throw new RuntimeException(e);
+    }
+    respond(exchange, 200, "{\"jobStatus\":\"FINISHED\"}");
+  }
+
+  private void stream(HttpExchange exchange) throws IOException {
+    respond(exchange, 200, toJson(getResults(jobId(exchange, "/idmapping/stream/"))));
+  }
+
+  private void page(HttpExchange exchange) throws IOException {
+    Map<String, String> query = parseQuery(exchange.getRequestURI().getRawQuery());
+    int cursor = Integer.parseInt(query.getOrDefault("cursor", "0"));
+    int size = Integer.parseInt(query.get("size"));
+    pageRequests.add(exchange.getRequestURI().toString());
+
+    synchronized (pageFailures) {
+      int failures = pageFailures.getOrDefault(cursor, 0);
+      if (failures > 0) {
+        pageFailures.put(cursor, failures - 1);
+        respond(exchange, 503, "Service unavailable");
+        return;
+      }
+    }
+
+    String jobId = jobId(exchange, "/idmapping/results/");
+    List<String[]> results = getResults(jobId);
+    int end = Math.min(results.size(), cursor + size);
+    if (end < results.size()) {
+      exchange.getResponseHeaders().add("Link", "<" + getUrl() + "/idmapping/results/" + jobId + "?size=" + size
+        + "&format=json&cursor=" + end + ">; rel=\"next\"");
+    }
+    respond(exchange, 200, toJson(results.subList(cursor, end)));
+  }
+
+  private List<String[]> getResults(String jobId) {
+    List<String> ids;
+    synchronized (jobs) {
+      ids = jobs.get(jobId);
+    }
+    List<String[]> results = new ArrayList<>();
+    for (String id : ids) {
+      if (!id.startsWith("X")) {
+        results.add(new String[] { id, id + "-m" });
+      }
+    }
+
+    return results;
+  }
+
+  private static String jobId(HttpExchange exchange, String prefix) {
+    return exchange.getRequestURI().getPath().substring(prefix.length());
+  }
+
+  private static String toJson(List<String[]> results) {
+    StringBuilder json = new StringBuilder("{\"results\":[");
+    for (int i = 0; i < results.size(); i++) {
+      json.append(i == 0 ? "" : ",")
+        .append("{\"from\":\"").append(results.get(i)[0])
+        .append("\",\"to\":\"").append(results.get(i)[1]).append("\"}");
+    }
+
+    return json.append("]}").toString();
+  }
+
+  private static Map<String, String> parseQuery(String query) throws IOException {
+    Map<String, String> parameters = new HashMap<>();
+    if (query != null) {
+      for (String parameter : query.split("&")) {
+        int equals = parameter.indexOf('=');
+        parameters.put(parameter.substring(0, equals), URLDecoder.decode(parameter.substring(equals + 1), "UTF-8"));
+      }
+    }
+
+    return parameters;
+  }
+
+  private static byte[] readAll(InputStream in) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    byte[] buffer = new byte[8192];
+    int read;
+    while ((read = in.read(buffer)) > 0) {
+      out.write(buffer, 0, read);
+    }
+
+    return out.toByteArray();
+  }
+
+  private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+    byte[] bytes = body.getBytes(UTF_8);
+    exchange.getResponseHeaders().add("Content-Type", "application/json");
+    exchange.sendResponseHeaders(status, bytes.length);
+    try (OutputStream out = exchange.getResponseBody()) {
+      out.write(bytes);
+    }
+  }
+
+  @Override
+  public void close() {
+    server.stop(0);
+  }
+}
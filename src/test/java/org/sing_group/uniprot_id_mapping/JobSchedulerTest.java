@@ -0,0 +1,135 @@
+/*
+ * #%L
+ * UniProt ID Mapping
+ * %%
+ * Copyright (C) 2024 Hugo López-Fernández
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+package org.sing_group.uniprot_id_mapping;
+
+import static java.util.Arrays.asList;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.sing_group.uniprot_id_mapping.JobScheduler.Tenant;
+
+public class JobSchedulerTest {
+
+  @Test
+  public void testHigherPriorityFirst() throws InterruptedException {
+    JobScheduler scheduler = new JobScheduler(1, 0, 10);
+    Tenant bulk = new Tenant("bulk", 0, 1);
+    Tenant interactive = new Tenant("interactive", 1, 1);
+
+    List<String> grants = Collections.synchronizedList(new ArrayList<>());
+    List<Thread> threads = new ArrayList<>();
+    try (JobScheduler.Permit permit = scheduler.acquire(bulk)) {
+      threads.add(startJob(scheduler, bulk, grants));
+      awaitWaiting(scheduler, bulk, 1);
+      threads.add(startJob(scheduler, interactive, grants));
+      awaitWaiting(scheduler, interactive, 1);
+
+      Assert.assertEquals(10, scheduler.getBatchSizeLimit(bulk));
+      Assert.assertEquals(Integer.MAX_VALUE, scheduler.getBatchSizeLimit(interactive));
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+
+    Assert.assertEquals(asList("interactive", "bulk"), grants);
+    Assert.assertEquals(2, scheduler.getGrantedJobs(bulk));
+  }
+
+  @Test
+  public void testWeightedFairSharing() throws InterruptedException {
+    JobScheduler scheduler = new JobScheduler(1, 0, 10);
+    Tenant heavy = new Tenant("heavy", 0, 2);
+    Tenant light = new Tenant("light", 0, 1);
+
+    List<String> grants = Collections.synchronizedList(new ArrayList<>());
+    List<Thread> threads = new ArrayList<>();
+    try (JobScheduler.Permit permit = scheduler.acquire(new Tenant("first", 0, 1))) {
+      for (int i = 0; i < 6; i++) {
+        threads.add(startJob(scheduler, heavy, grants));
+        awaitWaiting(scheduler, heavy, i + 1);
+      }
+      for (int i = 0; i < 6; i++) {
+        threads.add(startJob(scheduler, light, grants));
+        awaitWaiting(scheduler, light, i + 1);
+      }
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+
+    Assert.assertEquals(4, Collections.frequency(grants.subList(0, 6), "heavy"));
+    Assert.assertEquals(12, grants.size());
+  }
+
+  @Test
+  public void testInterruptedWaitKeepsInterruptFlag() throws InterruptedException {
+    JobScheduler scheduler = new JobScheduler(1, 0, 10);
+    Tenant tenant = new Tenant("tenant", 0, 1);
+
+    AtomicBoolean interrupted = new AtomicBoolean();
+    JobScheduler.Permit permit = scheduler.acquire(tenant);
+    try {
+      Thread thread = new Thread(() -> {
+        try {
+          scheduler.acquire(tenant).close();
+        } catch (RuntimeException e) {
+          interrupted.set(Thread.currentThread().isInterrupted());
+        }
+      });
+      thread.start();
+      awaitWaiting(scheduler, tenant, 1);
+      thread.interrupt();
+      thread.join();
+    } finally {
+      permit.close();
+    }
+
+    Assert.assertTrue(interrupted.get());
+    Assert.assertEquals(0, scheduler.getWaitingJobs(tenant));
+  }
+
+  private static Thread startJob(JobScheduler scheduler, Tenant tenant, List<String> grants) {
+    Thread thread = new Thread(() -> {
+      try (JobScheduler.Permit permit = scheduler.acquire(tenant)) {
+        grants.add(tenant.getName());
+      }
+    });
+    thread.start();
+
+    return thread;
+  }
+
+  private static void awaitWaiting(JobScheduler scheduler, Tenant tenant, int jobs) throws InterruptedException {
+    while (scheduler.getWaitingJobs(tenant) < jobs) {
+      Thread.sleep(5);
+    }
+  }
+}
@@ -0,0 +1,305 @@
+/*
+ * #%L
+ * UniProt ID Mapping
+ * %%
+ * Copyright (C) 2024 Hugo López-Fernández
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+package org.sing_group.uniprot_id_mapping;
+
+import static java.util.Arrays.asList;
+import static java.util.Collections.singletonList;
+import static org.sing_group.uniprot_id_mapping.UniProtDbFrom.UNIPROTKB_AC_ID;
+import static org.sing_group.uniprot_id_mapping.UniProtDbTo.ENSEMBL;
+import static org.sing_group.uniprot_id_mapping.UniProtDbTo.GENEID;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.sing_group.uniprot_id_mapping.cache.PairedIdCache;
+import org.sing_group.uniprot_id_mapping.cache.VolatileIdCache;
+
+public class UniProtBatchProcessorTest {
+
+  @Test
+  public void testResumeFromCheckpoint() throws IOException {
+    Path checkpointFile = Files.createTempFile("uniprot-checkpoint", ".tsv");
+    try {
+      try (BatchCheckpoint checkpoint = new BatchCheckpoint(checkpointFile)) {
+        checkpoint.jobSubmitted(UNIPROTKB_AC_ID, GENEID, "job-1", asList("P32234", "P81928"));
+        checkpoint.jobCompleted("job-1", singletonMap("P32234", "36288"));
+        checkpoint.jobSubmitted(UNIPROTKB_AC_ID, GENEID, "job-2", asList("Q7KN62"));
+      }
+
+      FakeClient client = new FakeClient();
+      client.jobResults.put("job-2", singletonMap("Q7KN62", "12345"));
+
+      try (BatchCheckpoint checkpoint = new BatchCheckpoint(checkpointFile)) {
+        UniProtBatchProcessor processor = new UniProtBatchProcessor(
+          10, 10, client, new VolatileIdCache(), RetryPolicy.NONE, checkpoint
+        );
+        processor.setJobDelay(0);
+        Map<String, List<String>> result = processor.mapIds(
+          UNIPROTKB_AC_ID, GENEID, "P32234", "P81928", "Q7KN62", "O77134"
+        );
+
+        Assert.assertEquals(asList("36288"), result.get("P32234"));
+        Assert.assertEquals(asList("12345"), result.get("Q7KN62"));
+        Assert.assertEquals(asList("job-2"), client.reattachedJobs);
+        Assert.assertEquals(singletonList(asList("O77134")), client.submittedBatches);
+      }
+    } finally {
+      Files.deleteIfExists(checkpointFile);
+    }
+  }
+
+  @Test
+  public void testCheckpointResultsOfRequestedIdsOnly() throws IOException {
+    Path checkpointFile = Files.createTempFile("uniprot-checkpoint", ".tsv");
+    try {
+      FakeClient client = new FakeClient();
+      client.jobResults.put("job-11", singletonMap("P32234", "36288"));
+      client.jobResults.put("job-12", singletonMap("O77134", "12345"));
+
+      try (BatchCheckpoint checkpoint = new BatchCheckpoint(checkpointFile)) {
+        UniProtBatchProcessor processor = new UniProtBatchProcessor(
+          10, 10, client, new VolatileIdCache(), RetryPolicy.NONE, checkpoint
+        );
+        processor.setJobDelay(0);
+
+        Assert.assertEquals(
+          singletonMap("P32234", "36288"), processor.mapIds(UNIPROTKB_AC_ID, GENEID, "P32234", "P81928")
+        );
+        Assert.assertEquals(singletonMap("O77134", "12345"), processor.mapIds(UNIPROTKB_AC_ID, GENEID, "O77134"));
+      }
+
+      try (BatchCheckpoint checkpoint = new BatchCheckpoint(checkpointFile)) {
+        UniProtBatchProcessor processor = new UniProtBatchProcessor(
+          10, 10, client, new VolatileIdCache(), RetryPolicy.NONE, checkpoint
+        );
+        processor.setJobDelay(0);
+
+        Assert.assertEquals(singletonMap("O77134", "12345"), processor.mapIds(UNIPROTKB_AC_ID, GENEID, "O77134"));
+        Assert.assertEquals(2, client.submittedBatches.size());
+      }
+    } finally {
+      Files.deleteIfExists(checkpointFile);
+    }
+  }
+
+  @Test
+  public void testTransientFailuresAreRetried() {
+    FakeClient client = new FakeClient();
+    client.failuresBeforeSubmit = 2;
+
+    UniProtBatchProcessor processor = new UniProtBatchProcessor(
+      10, 10, client, new VolatileIdCache(), new RetryPolicy(3, 1, 1, 10, 1), null
+    );
+    processor.setJobDelay(0);
+    processor.mapIds(UNIPROTKB_AC_ID, GENEID, "O77134");
+
+    Assert.assertEquals(singletonList(asList("O77134")), client.submittedBatches);
+  }
+
+  @Test
+  public void testConcurrentJobs() {
+    FakeClient client = new FakeClient();
+    UniProtBatchProcessor processor = new UniProtBatchProcessor(
+      1, 1, 4, client, new VolatileIdCache(), RetryPolicy.NONE, null
+    );
+    processor.setJobDelay(0);
+    processor.mapIds(UNIPROTKB_AC_ID, GENEID, "P32234", "P81928", "Q7KN62", "O77134");
+
+    Assert.assertEquals(4, client.submittedBatches.size());
+  }
+
+  @Test
+  public void testBatchSizeGrowsAndShrinks() {
+    FakeClient client = new FakeClient();
+    UniProtBatchProcessor processor = new UniProtBatchProcessor(
+      2, 8, client, new VolatileIdCache(), RetryPolicy.NONE, null
+    );
+    processor.setJobDelay(0);
+
+    processor.mapIds(UNIPROTKB_AC_ID, GENEID, ids("A", 22));
+    Assert.assertEquals(asList(2, 4, 8, 8), batchSizes(client.submittedBatches));
+    Assert.assertEquals(8, processor.getBatchSize());
+
+    client.submittedBatches.clear();
+    client.jobTime = 20;
+    processor.setTargetJobTime(5);
+    processor.mapIds(UNIPROTKB_AC_ID, GENEID, ids("B", 16));
+    Assert.assertEquals(asList(8, 4, 2, 2), batchSizes(client.submittedBatches));
+    Assert.assertEquals(2, processor.getBatchSize());
+  }
+
+  @Test
+  public void testRejectedBatchIsSplit() {
+    FakeClient client = new FakeClient();
+    client.maxIdsPerJob = 3;
+    UniProtBatchProcessor processor = new UniProtBatchProcessor(
+      8, 8, client, new VolatileIdCache(), RetryPolicy.NONE, null
+    );
+    processor.setJobDelay(0);
+
+    processor.mapIds(UNIPROTKB_AC_ID, GENEID, ids("A", 8));
+    Assert.assertEquals(asList(2, 2, 2, 2), batchSizes(client.submittedBatches));
+    Assert.assertEquals(3, client.rejectedBatches);
+
+    // The maximum batch size is lowered, so later batches are not rejected again
+    processor.mapIds(UNIPROTKB_AC_ID, GENEID, ids("B", 4));
+    Assert.assertEquals(3, client.rejectedBatches);
+    Assert.assertEquals(2, processor.getBatchSize());
+  }
+
+  @Test
+  public void testMapIdsToSeveralTargets() {
+    PairedIdCache cache = new PairedIdCache((from, to) -> new VolatileIdCache());
+    cache.addToCache(UNIPROTKB_AC_ID, GENEID, "P32234", asList("36288"));
+
+    FakeClient client = new FakeClient();
+    UniProtBatchProcessor processor = new UniProtBatchProcessor(10, 10, client, cache, RetryPolicy.NONE, null);
+    processor.setJobDelay(0);
+    Map<UniProtDbTo, Map<String, List<String>>> results = processor.mapIds(
+      UNIPROTKB_AC_ID, EnumSet.of(GENEID, ENSEMBL), asList("P32234", "O77134")
+    );
+
+    Assert.assertEquals(asList("36288"), results.get(GENEID).get("P32234"));
+    Assert.assertNull(results.get(ENSEMBL).get("P32234"));
+    Assert.assertEquals(2, client.submittedBatches.size());
+    Assert.assertTrue(client.submittedBatches.contains(asList("O77134")));
+    Assert.assertTrue(client.submittedBatches.contains(asList("P32234", "O77134")));
+  }
+
+  @Test
+  public void testSeveralTargetsRequireCacheKeepingPairsApart() {
+    FakeClient client = new FakeClient();
+    UniProtBatchProcessor processor = new UniProtBatchProcessor(
+      10, 10, client, new VolatileIdCache(), RetryPolicy.NONE, null
+    );
+    processor.setJobDelay(0);
+
+    try {
+      processor.mapIds(UNIPROTKB_AC_ID, EnumSet.of(GENEID, ENSEMBL), asList("P32234"));
+      Assert.fail("A cache that does not keep the pairs apart must be rejected");
+    } catch (IllegalArgumentException e) {
+      Assert.assertTrue(client.submittedBatches.isEmpty());
+    }
+    Assert.assertEquals(1, processor.mapIds(UNIPROTKB_AC_ID, EnumSet.of(GENEID), asList("P32234")).size());
+  }
+
+  @Test
+  public void testBulkBatchesArePreempted() {
+    JobScheduler scheduler = new JobScheduler(2, 0, 2);
+    JobScheduler.Tenant bulk = new JobScheduler.Tenant("bulk", 0, 1);
+    JobScheduler.Tenant interactive = new JobScheduler.Tenant("interactive", 1, 1);
+
+    FakeClient client = new FakeClient();
+    UniProtBatchProcessor processor = new UniProtBatchProcessor(
+      10, 10, 1, client, new VolatileIdCache(), RetryPolicy.NONE, null, scheduler, bulk
+    );
+    processor.setJobDelay(0);
+    try (JobScheduler.Permit permit = scheduler.acquire(interactive)) {
+      processor.mapIds(UNIPROTKB_AC_ID, GENEID, "P32234", "P81928", "Q7KN62", "O77134", "P92177");
+    }
+
+    Assert.assertEquals(
+      asList(asList("P32234", "P81928"), asList("Q7KN62", "O77134"), asList("P92177")), client.submittedBatches
+    );
+    Assert.assertEquals(3, scheduler.getGrantedJobs(bulk));
+  }
+
+  private static List<String> ids(String prefix, int count) {
+    List<String> ids = new ArrayList<>();
+    for (int i = 0; i < count; i++) {
+      ids.add(prefix + i);
+    }
+
+    return ids;
+  }
+
+  private static List<Integer> batchSizes(List<List<String>> batches) {
+    List<Integer> sizes = new ArrayList<>();
+    batches.forEach(batch -> sizes.add(batch.size()));
+
+    return sizes;
+  }
+
+  private static Map<String, List<String>> singletonMap(String id, String mappedId) {
+    Map<String, List<String>> map = new HashMap<>();
+    map.put(id, new ArrayList<>(asList(mappedId)));
+
+    return map;
+  }
+
+  private static class FakeClient extends UniProtClient {
+    private final Map<String, Map<String, List<String>>> jobResults = new HashMap<>();
+    private final List<List<String>> submittedBatches = Collections.synchronizedList(new ArrayList<>());
+    private final List<String> reattachedJobs = new ArrayList<>();
+    private int failuresBeforeSubmit;
+    private int maxIdsPerJob = Integer.MAX_VALUE;
+    private int rejectedBatches;
+    private long jobTime;
+
+    @Override
+    public String submitIdMappingRequest(UniProtDbFrom from, UniProtDbTo to, List<String> ids) throws IOException {
+      if (failuresBeforeSubmit-- > 0) {
+        throw new UniProtClientException("Service unavailable", 503);
+      }
+      if (ids.size() > maxIdsPerJob) {
+        rejectedBatches++;
+        String error = "{\"url\":\"http://rest.uniprot.org/idmapping/run\",\"messages\":"
+          + "[\"Number of ids must be less than or equal to " + maxIdsPerJob + " ids\"]}";
+        throw new UniProtClientException(
+          "Failed to submit ID mapping: " + error, 400, UniProtClientException.parseErrorMessages(error)
+        );
+      }
+      synchronized (submittedBatches) {
+        submittedBatches.add(new ArrayList<>(ids));
+
+        return "job-" + (10 + submittedBatches.size());
+      }
+    }
+
+    @Override
+    public UniProtJob getJob(String jobId) throws IOException {
+      try {
+        Thread.sleep(jobTime);
+      } catch (InterruptedException e) {
+        throw new RuntimeException(e);
+      }
+      if (jobResults.containsKey(jobId)) {
+        reattachedJobs.add(jobId);
+      }
+
+      return new UniProtJob(jobId, JobStatus.FINISHED, jobResults.getOrDefault(jobId, new HashMap<>()));
+    }
+  }
+}
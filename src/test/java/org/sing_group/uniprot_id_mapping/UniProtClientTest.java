@@ -0,0 +1,176 @@
+/*
+ * #%L
+ * UniProt ID Mapping
+ * %%
+ * Copyright (C) 2024 Hugo López-Fernández
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+package org.sing_group.uniprot_id_mapping;
+
+import static java.util.Arrays.asList;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class UniProtClientTest {
+
+  @Test
+  public void testBuildIdMappingFromTsv() throws IOException {
+    Map<String, List<String>> result = UniProtClient.buildIdMappingFromTsv(
+      new StringReader("From\tTo\nP81928\t41720\nA0A0B4KFZ0\t41720\nP81928\t41721\n")
+    );
+
+    Assert.assertEquals(2, result.size());
+    Assert.assertEquals(asList("41720", "41721"), result.get("P81928"));
+    Assert.assertEquals(asList("41720"), result.get("A0A0B4KFZ0"));
+  }
+
+  @Test
+  public void testBuildIdMappingFromTsvAndJsonAreEquivalent() throws IOException {
+    Map<String, List<String>> fromJson = UniProtClient.buildIdMapping(
+      "{\"results\":[{\"from\":\"P32234\",\"to\":\"36288\"},{\"from\":\"P81928\",\"to\":\"41720\"}]}"
+    );
+    Map<String, List<String>> fromTsv = UniProtClient.buildIdMappingFromTsv(
+      new StringReader("From\tTo\nP32234\t36288\nP81928\t41720\n")
+    );
+
+    Assert.assertEquals(fromJson, fromTsv);
+  }
+
+  @Test
+  public void testIdMappingRequestEntityIsUrlEncoded() throws IOException {
+    List<String> ids = asList("ENSMUSG00000017843.15", "HostDB:ENSMUSG00000017843", "a b/ü");
+    IdMappingRequestEntity entity = new IdMappingRequestEntity(UniProtDbFrom.ENSEMBL, UniProtDbTo.UNIPROTKB, ids);
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    entity.writeTo(out);
+
+    String expected = "from=" + URLEncoder.encode("Ensembl", "UTF-8")
+      + "&to=" + URLEncoder.encode("UniProtKB", "UTF-8")
+      + "&ids=" + URLEncoder.encode(String.join(",", ids), "UTF-8");
+    Assert.assertEquals(expected, new String(out.toByteArray(), StandardCharsets.US_ASCII));
+    Assert.assertEquals(expected.length(), entity.getContentLength());
+  }
+
+  @Test
+  public void testTooManyIdsErrorIsRecognized() throws IOException {
+    try (FakeUniProtServer server = new FakeUniProtServer()) {
+      server.setMaxIdsPerJob(1);
+      UniProtClient client = new UniProtClient(server.getUrl(), 10, 0, ResultsFormat.JSON);
+      try {
+        client.submitIdMappingRequest(UniProtDbFrom.UNIPROTKB_AC_ID, UniProtDbTo.GENEID, asList("P1", "P2"));
+        Assert.fail("The request must be rejected");
+      } catch (UniProtClientException e) {
+        Assert.assertEquals(400, e.getStatusCode());
+        Assert.assertTrue(e.isTooManyIds());
+      }
+    }
+
+    String invalidIds = "{\"url\":\"http://rest.uniprot.org/idmapping/run\","
+      + "\"messages\":[\"The 'ids' value has invalid format. It should be a list of comma separated ids.\"]}";
+    Assert.assertFalse(
+      new UniProtClientException(invalidIds, 400, UniProtClientException.parseErrorMessages(invalidIds)).isTooManyIds()
+    );
+    Assert.assertFalse(new UniProtClientException("Too many ids, over the limit of 10", 400).isTooManyIds());
+    Assert.assertEquals(Collections.emptyList(), UniProtClientException.parseErrorMessages("Bad request"));
+  }
+
+  @Test
+  public void testPaginatedResultsFollowLinksAndPrefetch() throws IOException {
+    try (FakeUniProtServer server = new FakeUniProtServer()) {
+      UniProtClient client = new UniProtClient(server.getUrl(), 10, 2, ResultsFormat.JSON);
+      String jobId = client.submitIdMappingRequest(
+        UniProtDbFrom.UNIPROTKB_AC_ID, UniProtDbTo.GENEID, asList("P1", "P2", "P3", "P4", "P5", "X1")
+      );
+
+      List<Map<String, List<String>>> pages = new ArrayList<>();
+      client.getResults(jobId, page -> {
+        if (pages.isEmpty()) {
+          waitForPageRequests(server, 2);
+        }
+        pages.add(page);
+      });
+
+      Assert.assertEquals(3, pages.size());
+      Assert.assertEquals(new HashSet<>(asList("P1", "P2")), pages.get(0).keySet());
+      Assert.assertEquals(asList("P5-m"), pages.get(2).get("P5"));
+      Assert.assertEquals(3, server.getPageRequests().size());
+      Assert.assertTrue(server.getPageRequests().get(1).endsWith("cursor=2"));
+      Assert.assertTrue(server.getPageRequests().get(2).endsWith("cursor=4"));
+    }
+  }
+
+  @Test
+  public void testFailedPageIsRetriedFromItsCursor() throws IOException {
+    try (FakeUniProtServer server = new FakeUniProtServer()) {
+      UniProtClient client = new UniProtClient(server.getUrl(), 10_000, 2, ResultsFormat.JSON);
+      client.setPageRetryPolicy(new RetryPolicy(3, 1, 2, Integer.MAX_VALUE, 0));
+      String jobId = client.submitIdMappingRequest(
+        UniProtDbFrom.UNIPROTKB_AC_ID, UniProtDbTo.GENEID, asList("P1", "P2", "P3", "P4")
+      );
+      server.failPage(2, 2);
+
+      Map<String, List<String>> results = new HashMap<>();
+      long start = System.currentTimeMillis();
+      client.getResults(jobId, results::putAll);
+
+      Assert.assertTrue("The polling time must not delay retries", System.currentTimeMillis() - start < 5_000);
+      Assert.assertEquals(4, results.size());
+      Assert.assertEquals(4, server.getPageRequests().size());
+      Assert.assertTrue(server.getPageRequests().get(0).endsWith("size=2&format=json"));
+      for (String request : server.getPageRequests().subList(1, 4)) {
+        Assert.assertTrue(request.endsWith("cursor=2"));
+      }
+
+      server.failPage(2, 3);
+      try {
+        client.getResults(jobId, page -> {});
+        Assert.fail("The page must fail after the last attempt");
+      } catch (UniProtClientException e) {
+        Assert.assertEquals(503, e.getStatusCode());
+      }
+    }
+  }
+
+  private static void waitForPageRequests(FakeUniProtServer server, int count) {
+    long deadline = System.currentTimeMillis() + 5_000;
+    while (server.getPageRequests().size() < count && System.currentTimeMillis() < deadline) {
+      try {
+        Thread.sleep(5);
+      } catch (InterruptedException e) {
+        throw new RuntimeException(e);
+      }
+    }
+    Assert.assertEquals("The next page must be prefetched", count, server.getPageRequests().size());
+  }
+}
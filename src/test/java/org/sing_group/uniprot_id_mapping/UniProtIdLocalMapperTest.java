@@ -25,6 +25,7 @@
  */
 package org.sing_group.uniprot_id_mapping;
 
+import static java.nio.charset.StandardCharsets.UTF_8;
 import static java.util.Arrays.asList;
 import static org.sing_group.uniprot_id_mapping.UniProtDbFrom.ENSEMBL;
 import static org.sing_group.uniprot_id_mapping.UniProtDbFrom.FLYBASE;
@@ -32,10 +33,20 @@ import static org.sing_group.uniprot_id_mapping.UniProtDbFrom.UNIPROTKB_AC_ID;
 import static org.sing_group.uniprot_id_mapping.UniProtDbTo.GENEID;
 import static org.sing_group.uniprot_id_mapping.UniProtDbTo.UNIPROTKB;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.stream.Stream;
 
 import org.junit.Assert;
 import org.junit.Test;
@@ -80,4 +91,266 @@ public class UniProtIdLocalMapperTest {
     Assert.assertEquals(asList("Q60996", "A0A1Y7VIR0", "A0A1Y7VJC8"), result.get("ENSMUSG00000017843"));
     Assert.assertEquals(asList("Q60996", "A0A1Y7VIR0", "A0A1Y7VJC8"), result.get("ENSMUSG00000017843.15"));
   }
+
+  @Test
+  public void testMapEnsemblToUniProtKbWithAnyVersion() throws IOException {
+    UniProtIdLocalMapper musMusculusMapper = new UniProtIdLocalMapper(new File("src/test/resources/MOUSE_10090_idmapping_subset.dat"));
+    Map<String, List<String>> result = musMusculusMapper.mapIds(
+      ENSEMBL, UNIPROTKB, IdMatching.ANY_VERSION, "ENSMUSG00000017843", "ENSMUSG00000017843.12"
+    );
+
+    Assert.assertEquals(asList("Q60996", "A0A1Y7VIR0", "A0A1Y7VJC8"), result.get("ENSMUSG00000017843"));
+    Assert.assertEquals(asList("Q60996", "A0A1Y7VIR0", "A0A1Y7VJC8"), result.get("ENSMUSG00000017843.12"));
+  }
+
+  @Test
+  public void testMapByPrefix() throws IOException {
+    Map<String, List<String>> reverse = drosophilaMapper.mapIds(FLYBASE, UNIPROTKB, IdMatching.PREFIX, "FBgn001034");
+    Map<String, List<String>> forward = drosophilaMapper.mapIds(UNIPROTKB_AC_ID, GENEID, IdMatching.PREFIX, "P3223");
+
+    Assert.assertEquals(asList("P81928", "A0A0B4KFZ0"), reverse.get("FBgn001034"));
+    Assert.assertEquals(asList("36288"), forward.get("P3223"));
+  }
+
+  @Test
+  public void testParseStreamInSeveralBlocks() throws IOException {
+    StringBuilder lines = new StringBuilder();
+    lines.append("P00000\tGeneID\t1\n");
+    for (int i = 0; i < 50000; i++) {
+      lines.append(String.format("Q%05d\tGeneID\t%d\n", i, 100000 + i));
+    }
+    lines.append("P00000\tGeneID\t2\n");
+    UniProtIdLocalMapper mapper = new UniProtIdLocalMapper(new ByteArrayInputStream(lines.toString().getBytes(UTF_8)));
+
+    Assert.assertEquals(asList("1", "2"), mapper.mapIds(UNIPROTKB_AC_ID, GENEID, "P00000").get("P00000"));
+    Assert.assertEquals(asList("149999"), mapper.mapIds(UNIPROTKB_AC_ID, GENEID, "Q49999").get("Q49999"));
+    Assert.assertEquals(asList("P00000"), mapper.mapIds(UniProtDbFrom.GENEID, UNIPROTKB, "2").get("2"));
+    Assert.assertEquals(asList("Q16384"), mapper.mapIds(UniProtDbFrom.GENEID, UNIPROTKB, "116384").get("116384"));
+  }
+
+  @Test
+  public void testMapIdsBulkMatchesMapIds() throws IOException {
+    List<String> ids = asList("FBgn0010340", "FBgn0000000", "FBgn0010339", "FBgn0010340");
+    IdMappingTable result = drosophilaMapper.mapIdsBulk(FLYBASE, UNIPROTKB, ids, 2);
+
+    Assert.assertEquals(2, result.size());
+    Assert.assertEquals("FBgn0010339", result.getFrom(0));
+    Assert.assertEquals(drosophilaMapper.mapIds(FLYBASE, UNIPROTKB, ids), result.toMap());
+    Assert.assertEquals(
+      drosophilaMapper.mapIds(UNIPROTKB_AC_ID, GENEID, "P32234", "P81928", "P92177"),
+      drosophilaMapper.mapIdsBulk(UNIPROTKB_AC_ID, GENEID, asList("P92177", "P81928", "P32234"), 4).toMap()
+    );
+  }
+
+  @Test
+  public void testMapIdsTableTsvRoundTrip() throws IOException {
+    List<String> ids = asList("P92177", "P32234", "P81928");
+    IdMappingTable table = drosophilaMapper.mapIdsTable(UNIPROTKB_AC_ID, GENEID, ids);
+
+    ByteArrayOutputStream tsv = new ByteArrayOutputStream();
+    table.writeTsv(tsv);
+    IdMappingTable read = IdMappingTable.readTsv(new StringReader(new String(tsv.toByteArray(), UTF_8)));
+
+    Assert.assertTrue(tsv.toString("UTF-8").startsWith("From\tTo\nP32234\t"));
+    Assert.assertEquals(drosophilaMapper.mapIds(UNIPROTKB_AC_ID, GENEID, ids), read.toMap());
+    Assert.assertEquals(table.toMap(), read.sorted().toMap());
+  }
+
+  @Test
+  public void testSnapshotSaveAndLoad() throws IOException {
+    File source = new File("src/test/resources/DROME_7227_idmapping_subset.dat");
+    Path snapshot = Files.createTempFile("uniprot-snapshot", ".bin");
+    try {
+      Files.delete(snapshot);
+      UniProtIdLocalMapper built = UniProtIdLocalMapper.load(source, snapshot, false);
+      Assert.assertTrue(Files.exists(snapshot));
+
+      UniProtIdLocalMapper loaded = UniProtIdLocalMapper.load(source, snapshot, false);
+      Assert.assertEquals(built.getSourceFingerprint(), loaded.getSourceFingerprint());
+      Assert.assertEquals(
+        drosophilaMapper.mapIds(FLYBASE, UNIPROTKB, "FBgn0010339", "FBgn0010340"),
+        loaded.mapIds(FLYBASE, UNIPROTKB, "FBgn0010339", "FBgn0010340")
+      );
+      Assert.assertEquals(
+        drosophilaMapper.mapIds(UNIPROTKB_AC_ID, GENEID, "P32234", "P81928"),
+        loaded.mapIds(UNIPROTKB_AC_ID, GENEID, "P32234", "P81928")
+      );
+
+      byte[] corrupted = Files.readAllBytes(snapshot);
+      corrupted[corrupted.length / 2] ^= 1;
+      Files.write(snapshot, corrupted);
+      try {
+        UniProtIdLocalMapper.load(snapshot, false);
+        Assert.fail("Corrupted snapshot loaded");
+      } catch (IOException e) {
+        Assert.assertTrue(e.getMessage().startsWith("Corrupted"));
+      }
+    } finally {
+      Files.deleteIfExists(snapshot);
+    }
+  }
+
+  @Test
+  public void testMapSharedSnapshot() throws IOException {
+    File source = new File("src/test/resources/DROME_7227_idmapping_subset.dat");
+    Path directory = Files.createTempDirectory("uniprot-shared");
+    Path snapshot = directory.resolve("DROME.snapshot");
+    try {
+      UniProtIdLocalMapper mapped = UniProtIdLocalMapper.mapShared(source, snapshot, false);
+      long built = Files.getLastModifiedTime(snapshot).toMillis();
+      UniProtIdLocalMapper.mapShared(source, snapshot, false);
+
+      Assert.assertEquals(built, Files.getLastModifiedTime(snapshot).toMillis());
+      Assert.assertEquals(
+        drosophilaMapper.mapIds(FLYBASE, UNIPROTKB, "FBgn0010339", "FBgn0010340"),
+        mapped.mapIds(FLYBASE, UNIPROTKB, "FBgn0010339", "FBgn0010340")
+      );
+      Assert.assertEquals(
+        drosophilaMapper.mapIdsBulk(UNIPROTKB_AC_ID, GENEID, asList("P32234", "P81928"), 2).toMap(),
+        mapped.mapIdsBulk(UNIPROTKB_AC_ID, GENEID, asList("P32234", "P81928"), 2).toMap()
+      );
+    } finally {
+      Files.deleteIfExists(snapshot);
+      Files.deleteIfExists(directory.resolve("DROME.snapshot.lock"));
+      Files.delete(directory);
+    }
+  }
+
+  @Test
+  public void testBuildSnapshotWithMemoryBudget() throws IOException {
+    File source = new File("src/test/resources/MOUSE_10090_idmapping_subset.dat");
+    Path directory = Files.createTempDirectory("uniprot-external");
+    Path snapshot = directory.resolve("external.snapshot");
+    Path inMemorySnapshot = directory.resolve("memory.snapshot");
+    try {
+      // A tiny budget forces spilling to many runs
+      UniProtIdLocalMapper.buildSnapshot(source, snapshot, 2048, directory);
+      new UniProtIdLocalMapper(source).save(inMemorySnapshot);
+
+      Assert.assertArrayEquals(Files.readAllBytes(inMemorySnapshot), Files.readAllBytes(snapshot));
+    } finally {
+      Files.deleteIfExists(snapshot);
+      Files.deleteIfExists(inMemorySnapshot);
+      Files.delete(directory);
+    }
+  }
+
+  @Test
+  public void testFailedSnapshotBuildDeletesTemporaryFiles() throws IOException {
+    Path directory = Files.createTempDirectory("uniprot-snapshot-test");
+    try {
+      UniProtIdLocalMapper.buildSnapshot(
+        new File("src/test/resources/missing_idmapping.dat"), directory.resolve("external.snapshot"), 2048, directory
+      );
+      Assert.fail("The source file does not exist");
+    } catch (IOException e) {
+      try (Stream<Path> files = Files.list(directory)) {
+        Assert.assertEquals(0, files.count());
+      }
+    } finally {
+      Files.delete(directory);
+    }
+  }
+
+  @Test
+  public void testFiltersRejectAbsentIds() throws IOException {
+    File source = new File("src/test/resources/DROME_7227_idmapping_subset.dat");
+    UniProtIdLocalMapper filtered = new UniProtIdLocalMapper(source);
+    filtered.createFilters(0.01);
+
+    Assert.assertEquals(
+      drosophilaMapper.mapIds(FLYBASE, UNIPROTKB, "FBgn0010339", "FBgn0010340"),
+      filtered.mapIds(FLYBASE, UNIPROTKB, "FBgn0010339", "FBgn0010340")
+    );
+    Assert.assertEquals(
+      drosophilaMapper.mapIds(UNIPROTKB_AC_ID, GENEID, "P32234", "P81928"),
+      filtered.mapIds(UNIPROTKB_AC_ID, GENEID, "P32234", "P81928")
+    );
+
+    String[] absentIds = new String[1000];
+    for (int i = 0; i < absentIds.length; i++) {
+      absentIds[i] = "FBgn9" + i;
+    }
+    Assert.assertTrue(filtered.mapIds(FLYBASE, UNIPROTKB, absentIds).isEmpty());
+    Assert.assertEquals(1004, filtered.getFilterStatistics().getLookups());
+    Assert.assertTrue(filtered.getFilterStatistics().getRejected() > 950);
+
+    Path snapshot = Files.createTempFile("uniprot-snapshot", ".bin");
+    try {
+      filtered.save(snapshot);
+      UniProtIdLocalMapper loaded = UniProtIdLocalMapper.load(snapshot, false);
+      Assert.assertTrue(loaded.hasFilters());
+      Assert.assertTrue(loaded.mapIds(FLYBASE, UNIPROTKB, absentIds).isEmpty());
+      Assert.assertEquals(filtered.getFilterStatistics().getRejected(), loaded.getFilterStatistics().getRejected());
+    } finally {
+      Files.deleteIfExists(snapshot);
+      Files.deleteIfExists(snapshot.resolveSibling(snapshot.getFileName() + ".filters"));
+    }
+  }
+
+  @Test
+  public void testMapIdsToSeveralTargets() {
+    List<String> ids = asList("P32234", "P81928", "O77134", "UNKNOWN");
+    Set<UniProtDbTo> targets = EnumSet.of(GENEID, UniProtDbTo.REFSEQ_PROTEIN, UniProtDbTo.FLYBASE);
+
+    Map<UniProtDbTo, Map<String, List<String>>> results = drosophilaMapper.mapIds(UNIPROTKB_AC_ID, targets, ids);
+
+    Assert.assertEquals(targets, results.keySet());
+    for (UniProtDbTo target : targets) {
+      Assert.assertEquals(drosophilaMapper.mapIds(UNIPROTKB_AC_ID, target, ids), results.get(target));
+    }
+    Assert.assertEquals(asList("41720"), results.get(GENEID).get("P81928"));
+  }
+
+  @Test
+  public void testMergeTaggedFiles() throws IOException {
+    Path source = Paths.get("src/test/resources/DROME_7227_idmapping_subset.dat");
+    List<String> lines = Files.readAllLines(source, UTF_8);
+    int split = 0;
+    while (lines.get(split).startsWith("P32234\t")) {
+      split++;
+    }
+
+    Path directory = Files.createTempDirectory("uniprot-taxa");
+    Path first = Files.write(directory.resolve("first.dat"), lines.subList(0, split), UTF_8);
+    Path second = Files.write(directory.resolve("second.dat"), lines.subList(split, lines.size()), UTF_8);
+    Path snapshot = directory.resolve("merged.snapshot");
+    try {
+      Map<String, File> files = new LinkedHashMap<>();
+      files.put("first", first.toFile());
+      files.put("second", second.toFile());
+      UniProtIdLocalMapper merged = new UniProtIdLocalMapper(files, false);
+
+      List<String> accessions = asList("P32234", "P81928", "O77134", "A0A0B4KFZ0");
+      List<String> flyBaseIds = asList("FBgn0010339", "FBgn0010340");
+      Assert.assertEquals(
+        drosophilaMapper.mapIds(UNIPROTKB_AC_ID, GENEID, accessions), merged.mapIds(UNIPROTKB_AC_ID, GENEID, accessions)
+      );
+      Assert.assertEquals(
+        drosophilaMapper.mapIds(FLYBASE, UNIPROTKB, flyBaseIds), merged.mapIds(FLYBASE, UNIPROTKB, flyBaseIds)
+      );
+
+      Assert.assertEquals(asList("first", "second"), merged.getTaxa());
+      Assert.assertEquals("first", merged.getTaxon("P32234"));
+      Assert.assertEquals("second", merged.getTaxon("P81928"));
+      Assert.assertNull(merged.getTaxon("O77134"));
+      Assert.assertEquals(
+        merged.mapIds(UNIPROTKB_AC_ID, GENEID, "P81928"),
+        merged.mapIdsInTaxon(UNIPROTKB_AC_ID, GENEID, "second", accessions)
+      );
+      Assert.assertEquals(
+        merged.mapIds(FLYBASE, UNIPROTKB, "FBgn0010339"), merged.mapIdsInTaxon(FLYBASE, UNIPROTKB, "first", flyBaseIds)
+      );
+
+      merged.save(snapshot);
+      UniProtIdLocalMapper loaded = UniProtIdLocalMapper.load(snapshot, false);
+      Assert.assertEquals(merged.getTaxa(), loaded.getTaxa());
+      Assert.assertEquals("second", loaded.getTaxon("P81928"));
+    } finally {
+      for (String file : asList("first.dat", "second.dat", "merged.snapshot", "merged.snapshot.taxa")) {
+        Files.deleteIfExists(directory.resolve(file));
+      }
+      Files.deleteIfExists(directory);
+    }
+  }
 }
@@ -0,0 +1,100 @@
+/*
+ * #%L
+ * UniProt ID Mapping
+ * %%
+ * Copyright (C) 2024 Hugo López-Fernández
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+package org.sing_group.uniprot_id_mapping;
+
+import static java.util.Arrays.asList;
+import static java.util.Collections.singletonMap;
+import static org.sing_group.uniprot_id_mapping.UniProtDbFrom.ENSEMBL;
+import static org.sing_group.uniprot_id_mapping.UniProtDbFrom.UNIPROTKB_AC_ID;
+import static org.sing_group.uniprot_id_mapping.UniProtDbTo.GENEID;
+import static org.sing_group.uniprot_id_mapping.UniProtDbTo.PDB;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class UniProtIdTieredMapperTest {
+  private UniProtIdLocalMapper drosophilaMapper;
+
+  public UniProtIdTieredMapperTest() throws IOException {
+    this.drosophilaMapper = new UniProtIdLocalMapper(new File("src/test/resources/DROME_7227_idmapping_subset.dat"));
+  }
+
+  @Test
+  public void testMapUniProtKbToGeneIdWithRemoteFallback() {
+    List<String> remoteIds = new ArrayList<>();
+    UniProtIdMapper remoteMapper = (from, to, ids) -> {
+      remoteIds.addAll(ids);
+      return singletonMap("O77134", asList("12345"));
+    };
+
+    UniProtIdTieredMapper mapper = new UniProtIdTieredMapper(drosophilaMapper, remoteMapper);
+    Map<String, List<String>> result = mapper.mapIds(UNIPROTKB_AC_ID, GENEID, "P32234", "O77134", "O77134");
+
+    Assert.assertEquals(asList("O77134"), remoteIds);
+    Assert.assertEquals(asList("36288"), result.get("P32234"));
+    Assert.assertEquals(asList("12345"), result.get("O77134"));
+  }
+
+  @Test
+  public void testLocalMissesOfKnownIdsAreNotSentToRemote() {
+    UniProtIdMapper remoteMapper = (from, to, ids) -> {
+      throw new AssertionError("Unexpected remote query: " + ids);
+    };
+
+    UniProtIdTieredMapper mapper = new UniProtIdTieredMapper(drosophilaMapper, remoteMapper);
+    Map<String, List<String>> result = mapper.mapIds(UNIPROTKB_AC_ID, GENEID, "A0A0B4KFZ0");
+
+    Assert.assertTrue(result.isEmpty());
+  }
+
+  @Test
+  public void testUnsupportedPairsAreSentToRemote() {
+    List<String> remoteIds = new ArrayList<>();
+    UniProtIdMapper remoteMapper = (from, to, ids) -> {
+      remoteIds.addAll(ids);
+      return singletonMap(ids.get(0), asList("1ABC"));
+    };
+
+    UniProtIdTieredMapper mapper = new UniProtIdTieredMapper(drosophilaMapper, remoteMapper);
+
+    Assert.assertEquals(asList("1ABC"), mapper.mapIds(UNIPROTKB_AC_ID, PDB, "P32234").get("P32234"));
+    Assert.assertEquals(asList("1ABC"), mapper.mapIds(ENSEMBL, GENEID, "FBgn0010339").get("FBgn0010339"));
+
+    Map<UniProtDbTo, Map<String, List<String>>> results = mapper.mapIds(
+      UNIPROTKB_AC_ID, EnumSet.of(GENEID, PDB), asList("P32234")
+    );
+    Assert.assertEquals(asList("36288"), results.get(GENEID).get("P32234"));
+    Assert.assertEquals(asList("1ABC"), results.get(PDB).get("P32234"));
+    Assert.assertEquals(asList("P32234", "FBgn0010339", "P32234"), remoteIds);
+  }
+}
@@ -0,0 +1,108 @@
+/*
+ * #%L
+ * UniProt ID Mapping
+ * %%
+ * Copyright (C) 2024 Hugo López-Fernández
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+package org.sing_group.uniprot_id_mapping.cache;
+
+import static java.util.Arrays.asList;
+import static org.sing_group.uniprot_id_mapping.UniProtDbFrom.UNIPROTKB_AC_ID;
+import static org.sing_group.uniprot_id_mapping.UniProtDbTo.GENEID;
+import static org.sing_group.uniprot_id_mapping.UniProtDbTo.UNIPROTKB;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.sing_group.uniprot_id_mapping.index.BloomFilter;
+
+public class BloomFilteredIdCacheTest {
+  @Test
+  public void testRejectedLookupsAndFalsePositives() throws IOException {
+    Path cacheFile = Files.createTempFile("uniprot-cache", ".txt");
+    try {
+      PersistentIdCache persistentCache = new PersistentIdCache(cacheFile.toString());
+      for (int i = 0; i < 200; i++) {
+        persistentCache.addToCache("P" + i, "G" + i);
+      }
+
+      // A filter of a single 64-bit word is saturated by the cached identifiers, so absent ones pass it
+      BloomFilter saturatedFilter = BloomFilter.create(1, 0.99);
+      for (int i = 0; i < 200; i++) {
+        saturatedFilter.add("P" + i);
+      }
+      BloomFilteredIdCache saturated = new BloomFilteredIdCache(persistentCache, saturatedFilter);
+      BloomFilteredIdCache sized = new BloomFilteredIdCache(persistentCache, persistentCache.createFilter(0.001, 0));
+      for (int i = 0; i < 200; i++) {
+        saturated.getFromCache("P" + i);
+        saturated.getFromCache("Q" + i);
+        sized.getFromCache(UNIPROTKB_AC_ID, GENEID, "P" + i);
+        sized.getFromCache(UNIPROTKB_AC_ID, GENEID, "Q" + i);
+      }
+
+      BloomFilter.Statistics saturatedStatistics = saturated.getStatistics();
+      Assert.assertEquals(400, saturatedStatistics.getLookups());
+      Assert.assertTrue(saturatedStatistics.getFalsePositives() > 0);
+      Assert.assertEquals(200, saturatedStatistics.getRejected() + saturatedStatistics.getFalsePositives());
+
+      BloomFilter.Statistics sizedStatistics = sized.getStatistics();
+      Assert.assertEquals(400, sizedStatistics.getLookups());
+      Assert.assertTrue(sizedStatistics.getRejected() > 190);
+      Assert.assertEquals(200, sizedStatistics.getRejected() + sizedStatistics.getFalsePositives());
+    } finally {
+      Files.deleteIfExists(cacheFile);
+    }
+  }
+
+  @Test
+  public void testFilterOfEachPairIsPersisted() throws IOException {
+    PairedIdCache pairedCache = new PairedIdCache((from, to) -> new VolatileIdCache());
+    BloomFilteredIdCache cache = new BloomFilteredIdCache(pairedCache, 100, 0.001);
+    cache.addToCache(UNIPROTKB_AC_ID, GENEID, "P81928", asList("41720"));
+
+    Assert.assertEquals(asList("41720"), cache.getFromCache(UNIPROTKB_AC_ID, GENEID, "P81928"));
+    Assert.assertNull(cache.getFromCache(UNIPROTKB_AC_ID, UNIPROTKB, "P81928"));
+    Assert.assertEquals(1, cache.getStatistics().getRejected());
+    Assert.assertNotSame(cache.getFilter(UNIPROTKB_AC_ID, GENEID), cache.getFilter(UNIPROTKB_AC_ID, UNIPROTKB));
+
+    Path filters = Files.createTempFile("uniprot-cache", ".filters");
+    try {
+      cache.write(filters);
+      BloomFilteredIdCache reloaded = BloomFilteredIdCache.read(pairedCache, filters, 100, 0.001);
+
+      Assert.assertEquals(asList("41720"), reloaded.getFromCache(UNIPROTKB_AC_ID, GENEID, "P81928"));
+      Assert.assertNull(reloaded.getFromCache(UNIPROTKB_AC_ID, UNIPROTKB, "P81928"));
+      Assert.assertEquals(1, reloaded.getStatistics().getRejected());
+      Assert.assertEquals(0, reloaded.getStatistics().getFalsePositives());
+    } finally {
+      Files.deleteIfExists(filters);
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testSingleFilterIsRejectedForCachesKeepingPairsApart() {
+    new BloomFilteredIdCache(new PairedIdCache((from, to) -> new VolatileIdCache()), BloomFilter.create(10, 0.01));
+  }
+}
@@ -0,0 +1,98 @@
+/*
+ * #%L
+ * UniProt ID Mapping
+ * %%
+ * Copyright (C) 2024 Hugo López-Fernández
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+package org.sing_group.uniprot_id_mapping.cache;
+
+import static java.util.Arrays.asList;
+import static java.util.Collections.emptyList;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class CompactIdCacheTest {
+
+  @Test
+  public void testCodecRoundTrip() {
+    List<List<String>> lists = asList(
+      emptyList(),
+      asList("36288"),
+      asList("0", "007", "41720", "41720", "999999999999999999", "9999999999999999999"),
+      asList("ENSMUSG00000012345", "ENSMUSG00000012346", "ENSMUSG00000000001", "NP_001097004.1", "NP_001097004.2"),
+      asList("", "ñandú", "ñ", "1.5", "-12")
+    );
+    for (List<String> ids : lists) {
+      Assert.assertEquals(ids, IdListCodec.decode(IdListCodec.encode(ids)));
+      Assert.assertEquals(ids, IdListCodec.decode(IdListCodec.encode(ids, false)));
+      for (String id : ids) {
+        Assert.assertEquals(id, IdListCodec.decodeId(IdListCodec.encodeId(id)));
+      }
+    }
+
+    List<String> ensemblIds = new ArrayList<>();
+    for (int i = 0; i < 1000; i++) {
+      ensemblIds.add(String.format("ENSMUSG%011d", 10_000 + i * 3));
+    }
+    int textLength = String.join(",", ensemblIds).getBytes(StandardCharsets.UTF_8).length;
+    Assert.assertEquals(ensemblIds, IdListCodec.decode(IdListCodec.encode(ensemblIds)));
+    Assert.assertTrue(IdListCodec.encode(ensemblIds).length * 5 < textLength);
+  }
+
+  @Test
+  public void testPersistedCache() throws IOException {
+    Path cacheFile = Files.createTempFile("uniprot-cache", ".bin");
+    try {
+      Map<String, List<String>> mappings = new HashMap<>();
+      mappings.put("P32234", asList("36288"));
+      mappings.put("P81928", asList("41720", "41721"));
+
+      CompactIdCache cache = new CompactIdCache(cacheFile);
+      cache.addAllToCache(mappings);
+      cache.addToCache("Q7KN62", "FBgn0010339");
+      Assert.assertEquals(asList("41720", "41721"), cache.getFromCache("P81928"));
+      Assert.assertNull(cache.getFromCache("O77134"));
+
+      // A record interrupted while being written is discarded
+      byte[] data = Files.readAllBytes(cacheFile);
+      Files.write(cacheFile, new byte[] { 6, 'O', '7' }, StandardOpenOption.APPEND);
+
+      CompactIdCache reloaded = new CompactIdCache(cacheFile);
+      Assert.assertEquals(3, reloaded.size());
+      Assert.assertEquals(asList("FBgn0010339"), reloaded.getFromCache("Q7KN62"));
+      Assert.assertEquals(data.length, Files.size(cacheFile));
+    } finally {
+      Files.deleteIfExists(cacheFile);
+    }
+  }
+}
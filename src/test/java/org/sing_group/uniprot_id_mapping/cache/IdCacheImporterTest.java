@@ -0,0 +1,112 @@
+/*
+ * #%L
+ * UniProt ID Mapping
+ * %%
+ * Copyright (C) 2024 Hugo López-Fernández
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+package org.sing_group.uniprot_id_mapping.cache;
+
+import static java.util.Arrays.asList;
+import static org.sing_group.uniprot_id_mapping.UniProtDbFrom.FLYBASE;
+import static org.sing_group.uniprot_id_mapping.UniProtDbFrom.UNIPROTKB_AC_ID;
+import static org.sing_group.uniprot_id_mapping.UniProtDbTo.GENEID;
+import static org.sing_group.uniprot_id_mapping.UniProtDbTo.UNIPROTKB;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.sing_group.uniprot_id_mapping.UniProtIdLocalMapper;
+
+public class IdCacheImporterTest {
+  private static final Path SOURCE = Paths.get("src/test/resources/DROME_7227_idmapping_subset.dat");
+
+  @Test
+  public void testImportMatchesLocalMapper() throws IOException {
+    PairedIdCache cache = new PairedIdCache((from, to) -> new VolatileIdCache());
+    long imported = new IdCacheImporter(cache, 2)
+      .addPair(UNIPROTKB_AC_ID, GENEID)
+      .addPair(FLYBASE, UNIPROTKB)
+      .importFile(SOURCE);
+
+    UniProtIdLocalMapper localMapper = new UniProtIdLocalMapper(SOURCE.toFile());
+    List<String> accessions = asList("P32234", "P81928", "O77134", "Q7KN62");
+    List<String> flyBaseIds = asList("FBgn0010339", "FBgn0010340");
+
+    Assert.assertTrue(imported > 0);
+    localMapper.mapIds(UNIPROTKB_AC_ID, GENEID, accessions).forEach(
+      (id, mappedIds) -> Assert.assertEquals(mappedIds, cache.getFromCache(UNIPROTKB_AC_ID, GENEID, id))
+    );
+    localMapper.mapIds(FLYBASE, UNIPROTKB, flyBaseIds).forEach(
+      (id, mappedIds) -> Assert.assertEquals(mappedIds, cache.getFromCache(FLYBASE, UNIPROTKB, id))
+    );
+    Assert.assertNull(cache.getFromCache(UNIPROTKB_AC_ID, GENEID, "FBgn0010339"));
+  }
+
+  @Test
+  public void testSeveralPairsRequireCacheKeepingPairsApart() throws IOException {
+    VolatileIdCache cache = new VolatileIdCache();
+    IdCacheImporter importer = new IdCacheImporter(cache).addPair(UNIPROTKB_AC_ID, GENEID);
+    importer.addPair(UNIPROTKB_AC_ID, GENEID);
+
+    try {
+      importer.addPair(FLYBASE, UNIPROTKB);
+      Assert.fail("A second pair must be rejected by a cache that does not keep the pairs apart");
+    } catch (IllegalArgumentException e) {
+      importer.importFile(SOURCE);
+    }
+
+    Assert.assertEquals(asList("41720"), cache.getFromCache("P81928"));
+    Assert.assertNull(cache.getFromCache("FBgn0010339"));
+  }
+
+  @Test
+  public void testImportGzippedFileIntoPersistentCache() throws IOException {
+    Path directory = Files.createTempDirectory("uniprot-import");
+    Path gzipped = directory.resolve("idmapping.dat.gz");
+    File cacheFile = directory.resolve("cache.txt").toFile();
+    try {
+      try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(gzipped))) {
+        Files.copy(SOURCE, out);
+      }
+
+      long imported = new IdCacheImporter(new PersistentIdCache(cacheFile.getPath()))
+        .addPair(UNIPROTKB_AC_ID, GENEID)
+        .importFile(gzipped);
+
+      PersistentIdCache reloaded = new PersistentIdCache(cacheFile.getPath());
+      Assert.assertEquals(imported, Files.readAllLines(cacheFile.toPath()).size());
+      Assert.assertEquals(asList("41720"), reloaded.getFromCache("P81928"));
+    } finally {
+      Files.deleteIfExists(gzipped);
+      Files.deleteIfExists(cacheFile.toPath());
+      Files.deleteIfExists(directory);
+    }
+  }
+}
@@ -0,0 +1,183 @@
+/*
+ * #%L
+ * UniProt ID Mapping
+ * %%
+ * Copyright (C) 2024 Hugo López-Fernández
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+package org.sing_group.uniprot_id_mapping.cache;
+
+import static java.util.Arrays.asList;
+import static org.sing_group.uniprot_id_mapping.UniProtDbFrom.UNIPROTKB_AC_ID;
+import static org.sing_group.uniprot_id_mapping.UniProtDbTo.GENEID;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.sing_group.uniprot_id_mapping.JobStatus;
+import org.sing_group.uniprot_id_mapping.UniProtBatchProcessor;
+import org.sing_group.uniprot_id_mapping.UniProtClient;
+import org.sing_group.uniprot_id_mapping.UniProtDbFrom;
+import org.sing_group.uniprot_id_mapping.UniProtDbTo;
+import org.sing_group.uniprot_id_mapping.UniProtIdLocalMapper;
+import org.sing_group.uniprot_id_mapping.UniProtJob;
+
+public class IdCacheRevalidatorTest {
+  private static final Path SOURCE = Paths.get("src/test/resources/DROME_7227_idmapping_subset.dat");
+
+  @Test
+  public void testRevalidateAgainstLocalRelease() throws IOException {
+    Path cacheFile = Files.createTempFile("uniprot-cache", ".txt");
+    try {
+      PersistentIdCache cache = new PersistentIdCache(cacheFile.toString());
+      cache.addToCache("P32234", "1");
+      cache.addToCache("P81928", "41720");
+      cache.addToCache("P92177", "3");
+      cache.addToCache("P00000", "2");
+
+      IdCacheRevalidator revalidator = new IdCacheRevalidator(cache, UNIPROTKB_AC_ID, GENEID, 2);
+      UniProtIdLocalMapper release = new UniProtIdLocalMapper(SOURCE.toFile());
+      IdCacheRevalidator.Result result = revalidator.revalidate(release, "2024_01");
+
+      Assert.assertEquals(asList("P32234"), result.getChangedIds());
+      Assert.assertEquals(asList("P92177"), result.getRemovedIds());
+      Assert.assertEquals(asList("P00000"), result.getSkippedIds());
+      Assert.assertEquals(1, result.getUnchangedCount());
+      Assert.assertEquals(0, revalidator.revalidate(release, "2024_01").getCheckedCount());
+
+      PersistentIdCache reloaded = new PersistentIdCache(cacheFile.toString());
+      Assert.assertEquals(3, reloaded.size());
+      Assert.assertEquals(asList("36288"), reloaded.getFromCache("P32234"));
+      Assert.assertEquals("2024_01", reloaded.getRelease("P81928"));
+      Assert.assertNull(reloaded.getFromCache("P92177"));
+      Assert.assertEquals(asList("2"), reloaded.getFromCache("P00000"));
+      Assert.assertNull(reloaded.getRelease("P00000"));
+      Assert.assertEquals(4, Files.readAllLines(cacheFile).size());
+
+      // Unchanged entries are tagged without rewriting their mappings
+      reloaded.setCurrentRelease("2024_02");
+      reloaded.tagWithCurrentRelease(asList("P81928", "P92177"));
+      List<String> lines = Files.readAllLines(cacheFile);
+      Assert.assertEquals(asList("#release=2024_02", "#tagged=P81928"), lines.subList(4, lines.size()));
+      Assert.assertEquals("2024_02", new PersistentIdCache(cacheFile.toString()).getRelease("P81928"));
+      Assert.assertEquals(asList("41720"), new PersistentIdCache(cacheFile.toString()).getFromCache("P81928"));
+    } finally {
+      Files.deleteIfExists(cacheFile);
+    }
+  }
+
+  @Test
+  public void testFailedRemoteJobDoesNotRemoveEntries() throws IOException {
+    Path cacheFile = Files.createTempFile("uniprot-cache", ".txt");
+    try {
+      PersistentIdCache cache = new PersistentIdCache(cacheFile.toString());
+      cache.addToCache("P1", "1");
+      cache.addToCache("P2", "2");
+      cache.addToCache("P3", "3");
+      cache.addToCache("P4", "4");
+
+      // The first job maps P1 and finds no mappings for P2, and the second one fails
+      UniProtClient client = new UniProtClient() {
+        private int jobs;
+
+        @Override
+        public String submitIdMappingRequest(UniProtDbFrom from, UniProtDbTo to, List<String> ids) {
+          return "job-" + ++jobs;
+        }
+
+        @Override
+        public UniProtJob getJob(String jobId) {
+          Map<String, List<String>> results = new HashMap<>();
+          if (jobId.equals("job-1")) {
+            results.put("P1", asList("10"));
+            return new UniProtJob(jobId, JobStatus.FINISHED, results);
+          } else {
+            return new UniProtJob(jobId, JobStatus.ERROR, results);
+          }
+        }
+      };
+      UniProtBatchProcessor processor = new UniProtBatchProcessor(2, client, new VolatileIdCache());
+      processor.setJobDelay(0);
+
+      IdCacheRevalidator revalidator = new IdCacheRevalidator(cache, UNIPROTKB_AC_ID, GENEID);
+      IdCacheRevalidator.Result result = revalidator.revalidate(processor, "2024_01");
+
+      Assert.assertEquals(asList("P1"), result.getChangedIds());
+      Assert.assertEquals(asList(), result.getRemovedIds());
+      Assert.assertEquals(asList("P2", "P3", "P4"), result.getSkippedIds());
+      Assert.assertEquals(1, result.getCheckedCount());
+
+      PersistentIdCache reloaded = new PersistentIdCache(cacheFile.toString());
+      Assert.assertEquals(asList("10"), reloaded.getFromCache("P1"));
+      Assert.assertEquals("2024_01", reloaded.getRelease("P1"));
+      for (String id : asList("P2", "P3", "P4")) {
+        Assert.assertEquals(asList(id.substring(1)), reloaded.getFromCache(id));
+        Assert.assertNull(reloaded.getRelease(id));
+      }
+    } finally {
+      Files.deleteIfExists(cacheFile);
+    }
+  }
+
+  @Test
+  public void testRevalidateSamples() throws IOException {
+    Path cacheFile = Files.createTempFile("uniprot-cache", ".txt");
+    try {
+      PersistentIdCache cache = new PersistentIdCache(cacheFile.toString());
+      cache.setCurrentRelease("2023_05");
+      cache.addToCache("P32234", "36288");
+      cache.addToCache("P81928", "41720");
+      cache.setCurrentRelease(null);
+      cache.addToCache("HGNC:5", "1");
+
+      IdCacheRevalidator revalidator = new IdCacheRevalidator(cache, UNIPROTKB_AC_ID, GENEID);
+      UniProtIdLocalMapper release = new UniProtIdLocalMapper(SOURCE.toFile());
+      Random random = new Random(1);
+
+      // HGNC:5 is not in the release, so it is skipped and it stays in the following samples
+      int checked = 0;
+      for (int i = 0; i < 3; i++) {
+        IdCacheRevalidator.Result result = revalidator.revalidateSample(release, "2024_01", 2, random);
+        Assert.assertTrue(result.getCheckedCount() + result.getSkippedIds().size() <= 2);
+        checked += result.getCheckedCount();
+      }
+      Assert.assertEquals(2, checked);
+      Assert.assertEquals(asList("HGNC:5"), revalidator.revalidateSample(release, "2024_01", 2, random).getSkippedIds());
+
+      PersistentIdCache reloaded = new PersistentIdCache(cacheFile.toString());
+      Assert.assertEquals(new HashSet<>(asList("P32234", "P81928", "HGNC:5")), reloaded.getCachedIds());
+      Assert.assertEquals("2024_01", reloaded.getRelease("P32234"));
+      Assert.assertNull(reloaded.getRelease("HGNC:5"));
+      Assert.assertNull(reloaded.getCurrentRelease());
+    } finally {
+      Files.deleteIfExists(cacheFile);
+    }
+  }
+}
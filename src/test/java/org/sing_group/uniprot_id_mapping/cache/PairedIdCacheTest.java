@@ -0,0 +1,52 @@
+/*
+ * #%L
+ * UniProt ID Mapping
+ * %%
+ * Copyright (C) 2024 Hugo López-Fernández
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+package org.sing_group.uniprot_id_mapping.cache;
+
+import static java.util.Arrays.asList;
+import static java.util.Collections.singletonMap;
+import static org.sing_group.uniprot_id_mapping.UniProtDbFrom.UNIPROTKB_AC_ID;
+import static org.sing_group.uniprot_id_mapping.UniProtDbTo.GENEID;
+import static org.sing_group.uniprot_id_mapping.UniProtDbTo.UNIPROTKB;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class PairedIdCacheTest {
+  @Test
+  public void testMappingsWithoutDatabasesAreKeptApart() {
+    PairedIdCache cache = new PairedIdCache((from, to) -> new VolatileIdCache());
+    cache.addToCache(UNIPROTKB_AC_ID, GENEID, "P81928", asList("41720"));
+    cache.addToCache(UNIPROTKB_AC_ID, UNIPROTKB, "P81928", asList("P81928"));
+    cache.addToCache("P81928", "unpaired");
+    cache.addAllToCache(singletonMap("P32234", asList("36288")));
+
+    Assert.assertEquals(asList("41720"), cache.getFromCache(UNIPROTKB_AC_ID, GENEID, "P81928"));
+    Assert.assertEquals(asList("P81928"), cache.getFromCache(UNIPROTKB_AC_ID, UNIPROTKB, "P81928"));
+    Assert.assertEquals(asList("unpaired"), cache.getFromCache("P81928"));
+    Assert.assertEquals(singletonMap("P32234", asList("36288")), cache.getAllFromCache(asList("P32234", "O77134")));
+    Assert.assertNull(cache.getFromCache(UNIPROTKB_AC_ID, GENEID, "P32234"));
+  }
+}
@@ -0,0 +1,75 @@
+/*
+ * #%L
+ * UniProt ID Mapping
+ * %%
+ * Copyright (C) 2024 Hugo López-Fernández
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+package org.sing_group.uniprot_id_mapping.cache;
+
+import static java.util.Arrays.asList;
+import static org.sing_group.uniprot_id_mapping.UniProtDbFrom.UNIPROTKB_AC_ID;
+import static org.sing_group.uniprot_id_mapping.UniProtDbTo.ENSEMBL;
+import static org.sing_group.uniprot_id_mapping.UniProtDbTo.GENEID;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TwoLevelIdCacheTest {
+
+  @Test
+  public void testCachesShareTheBackend() throws IOException {
+    Path directory = Files.createTempDirectory("uniprot-shared-cache");
+    try {
+      TwoLevelIdCache node1 = new TwoLevelIdCache(new FileSharedIdCacheBackend(directory), 100);
+      TwoLevelIdCache node2 = new TwoLevelIdCache(new FileSharedIdCacheBackend(directory), 100);
+
+      Map<String, List<String>> mappings = new HashMap<>();
+      mappings.put("P32234", asList("36288"));
+      mappings.put("P81928", asList("41720"));
+      node1.addAllToCache(UNIPROTKB_AC_ID, GENEID, mappings);
+
+      Map<String, List<String>> cached = node2.getAllFromCache(
+        UNIPROTKB_AC_ID, GENEID, asList("P32234", "P81928", "O77134")
+      );
+      Assert.assertEquals(mappings, cached);
+      Assert.assertEquals(2, node2.getSharedHits());
+      Assert.assertEquals(1, node2.getMisses());
+
+      Assert.assertEquals(asList("36288"), node2.getFromCache(UNIPROTKB_AC_ID, GENEID, "P32234"));
+      Assert.assertNull(node2.getFromCache(UNIPROTKB_AC_ID, ENSEMBL, "P32234"));
+      Assert.assertEquals(1, node2.getNearHits());
+    } finally {
+      try (Stream<Path> files = Files.walk(directory)) {
+        files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+      }
+    }
+  }
+}
@@ -0,0 +1,133 @@
+/*
+ * #%L
+ * UniProt ID Mapping
+ * %%
+ * Copyright (C) 2024 Hugo López-Fernández
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+package org.sing_group.uniprot_id_mapping.cli;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Arrays.asList;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.sing_group.uniprot_id_mapping.FakeUniProtServer;
+
+public class UniProtIdMappingCliTest {
+
+  @Test
+  public void testLocalMappingFromStandardInput() throws Exception {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    ByteArrayOutputStream err = new ByteArrayOutputStream();
+
+    int exitCode = UniProtIdMappingCli.run(
+      new String[] {
+        "--from", "UNIPROTKB_AC_ID", "--to", "GeneID", "--chunk-size", "2",
+        "--local", "src/test/resources/DROME_7227_idmapping_subset.dat"
+      },
+      new ByteArrayInputStream("P81928\n\nP32234\nO00000\n".getBytes(UTF_8)),
+      out, new PrintStream(err, true, "UTF-8")
+    );
+
+    Assert.assertEquals(err.toString("UTF-8"), 0, exitCode);
+    Assert.assertEquals("From\tTo\nP32234\t36288\nP81928\t41720\n", out.toString("UTF-8"));
+  }
+
+  @Test
+  public void testRemoteMappingInChunksWithCheckpoint() throws Exception {
+    Path checkpoint = Files.createTempFile("uniprot-checkpoint", ".tsv");
+    try (FakeUniProtServer server = new FakeUniProtServer()) {
+      String[] args = new String[] {
+        "--from", "UNIPROTKB_AC_ID", "--to", "GeneID", "--chunk-size", "2", "--batch-size", "2",
+        "--checkpoint", checkpoint.toString(), "--api-url", server.getUrl(), "--job-delay", "0"
+      };
+      List<String> expected = asList("From\tTo", "P1\tP1-m", "P2\tP2-m", "P3\tP3-m", "P4\tP4-m", "P5\tP5-m");
+
+      Assert.assertEquals(expected, runSorted(args, "P1\nP2\nP3\nP4\nP5\nX1\n"));
+      Assert.assertEquals(3, server.getSubmittedBatches().size());
+
+      // A second run with the same checkpoint reuses the results of every chunk without submitting jobs
+      Assert.assertEquals(expected, runSorted(args, "P1\nP2\nP3\nP4\nP5\nX1\n"));
+      Assert.assertEquals(3, server.getSubmittedBatches().size());
+    } finally {
+      Files.deleteIfExists(checkpoint);
+    }
+  }
+
+  private static List<String> runSorted(String[] args, String input) throws Exception {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    ByteArrayOutputStream err = new ByteArrayOutputStream();
+    int exitCode = UniProtIdMappingCli.run(
+      args, new ByteArrayInputStream(input.getBytes(UTF_8)), out, new PrintStream(err, true, "UTF-8")
+    );
+    Assert.assertEquals(err.toString("UTF-8"), 0, exitCode);
+
+    List<String> lines = new ArrayList<>(asList(out.toString("UTF-8").split("\n")));
+    Collections.sort(lines);
+
+    return lines;
+  }
+
+  @Test
+  public void testUsageErrors() throws Exception {
+    ByteArrayOutputStream err = new ByteArrayOutputStream();
+
+    int exitCode = UniProtIdMappingCli.run(
+      new String[] { "--from", "UNIPROTKB_AC_ID" },
+      new ByteArrayInputStream(new byte[0]), new ByteArrayOutputStream(), new PrintStream(err, true, "UTF-8")
+    );
+
+    Assert.assertEquals(2, exitCode);
+    Assert.assertTrue(err.toString("UTF-8").contains("Missing required option --to"));
+
+    assertUsageError("Unknown option: --treads", "--treads", "8");
+    assertUsageError("Unknown option: --inflight", "--inflight", "4");
+    assertUsageError("--threads cannot be used with --any-version", "--any-version", "--threads", "2");
+  }
+
+  private static void assertUsageError(String message, String... options) throws Exception {
+    List<String> args = new ArrayList<>(asList(
+      "--from", "UNIPROTKB_AC_ID", "--to", "GeneID", "--local", "src/test/resources/DROME_7227_idmapping_subset.dat"
+    ));
+    args.addAll(asList(options));
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    ByteArrayOutputStream err = new ByteArrayOutputStream();
+
+    int exitCode = UniProtIdMappingCli.run(
+      args.toArray(new String[0]), new ByteArrayInputStream("P81928\n".getBytes(UTF_8)), out,
+      new PrintStream(err, true, "UTF-8")
+    );
+
+    Assert.assertEquals(2, exitCode);
+    Assert.assertTrue(err.toString("UTF-8").contains("Error: " + message));
+    Assert.assertEquals(0, out.size());
+  }
+}
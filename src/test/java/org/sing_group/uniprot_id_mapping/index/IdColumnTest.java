@@ -0,0 +1,132 @@
+/*
+ * #%L
+ * UniProt ID Mapping
+ * %%
+ * Copyright (C) 2024 Hugo López-Fernández
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+package org.sing_group.uniprot_id_mapping.index;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class IdColumnTest {
+  private static final Path SOURCE = Paths.get("src/test/resources/DROME_7227_idmapping_subset.dat");
+
+  @Test
+  public void testSegmentedColumn() throws IOException {
+    List<String> ids = new ArrayList<>();
+    for (int i = 0; i < 100; i++) {
+      ids.add(String.format("id-%03d", i));
+    }
+    Collections.shuffle(ids, new Random(7));
+
+    IdColumnBuilder builder = new IdColumnBuilder(4, 16);
+    ids.forEach(builder::add);
+    IdColumn column = builder.build();
+
+    Assert.assertEquals(50, column.getSegments().length);
+    Assert.assertEquals(ids.size(), column.size());
+    Assert.assertEquals(ids.size() * 6L, builder.getDataSize());
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    for (int i = 0; i < ids.size(); i++) {
+      Assert.assertEquals(ids.get(i), column.get(i));
+      Assert.assertEquals(6, column.length(i));
+      Assert.assertEquals(0, column.compareTo(i, IdColumn.encode(ids.get(i))));
+      Assert.assertTrue(column.startsWith(i, IdColumn.encode(ids.get(i).substring(0, 5))));
+      column.writeTo(i, out);
+    }
+    Assert.assertEquals(String.join("", ids), out.toString("UTF-8"));
+
+    IdColumnBuilder sortedBuilder = new IdColumnBuilder(4, 16);
+    for (int index : column.sortedOrder()) {
+      sortedBuilder.add(column, index);
+    }
+    IdColumn sorted = sortedBuilder.build();
+    Collections.sort(ids);
+    for (int i = 0; i < ids.size(); i++) {
+      Assert.assertEquals(ids.get(i), sorted.get(i));
+      Assert.assertEquals(i, sorted.indexOf(IdColumn.encode(ids.get(i))));
+    }
+    Assert.assertEquals(-1, sorted.indexOf(IdColumn.encode("id-100")));
+    Assert.assertEquals(10, sorted.gallop(IdColumn.encode("id-010"), 3));
+  }
+
+  @Test
+  public void testSegmentedSnapshotRoundTrip() throws IOException {
+    Path directory = Files.createTempDirectory("uniprot-index-test");
+    Path snapshot = directory.resolve("segmented.snapshot");
+    try {
+      MappingIndexBuilder inMemory = new MappingIndexBuilder(database -> true);
+      try (BufferedReader reader = Files.newBufferedReader(SOURCE)) {
+        inMemory.addLines(reader);
+      }
+      MappingIndex expected = inMemory.build();
+
+      try (
+        ExternalMappingIndexBuilder external = new ExternalMappingIndexBuilder(database -> true, 2048, directory, 24);
+        BufferedReader reader = Files.newBufferedReader(SOURCE)
+      ) {
+        external.addLines(reader);
+        external.build(SourceFingerprint.of(SOURCE), snapshot);
+      }
+
+      assertSameIndex(expected, MappingIndexSnapshot.read(snapshot).getIndex());
+      assertSameIndex(expected, MappingIndexSnapshot.map(snapshot).getIndex());
+    } finally {
+      Files.deleteIfExists(snapshot);
+      Files.delete(directory);
+    }
+  }
+
+  private static void assertSameIndex(MappingIndex expected, MappingIndex actual) {
+    Assert.assertTrue(actual.getAccessions().getSegments().length > 1);
+    assertSameColumn(expected.getAccessions(), actual.getAccessions());
+    Assert.assertEquals(expected.getSections().size(), actual.getSections().size());
+    for (EdgeSection section : expected.getSections()) {
+      EdgeSection actualSection = actual.getSection(section.getDatabase());
+      Assert.assertEquals(section.size(), actualSection.size());
+      assertSameColumn(section.getXrefs(), actualSection.getXrefs());
+      for (int edge = 0; edge < section.size(); edge++) {
+        Assert.assertEquals(section.getAccession(edge), actualSection.getAccession(edge));
+        Assert.assertEquals(section.getReverseEdge(edge), actualSection.getReverseEdge(edge));
+      }
+    }
+  }
+
+  private static void assertSameColumn(IdColumn expected, IdColumn actual) {
+    Assert.assertEquals(expected.size(), actual.size());
+    for (int i = 0; i < expected.size(); i++) {
+      Assert.assertEquals(expected.get(i), actual.get(i));
+    }
+  }
+}
@@ -0,0 +1,125 @@
+/*
+ * #%L
+ * UniProt ID Mapping
+ * %%
+ * Copyright (C) 2024 Hugo López-Fernández
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+package org.sing_group.uniprot_id_mapping.server;
+
+import static java.util.Arrays.asList;
+import static org.sing_group.uniprot_id_mapping.UniProtDbFrom.FLYBASE;
+import static org.sing_group.uniprot_id_mapping.UniProtDbFrom.UNIPROTKB_AC_ID;
+import static org.sing_group.uniprot_id_mapping.UniProtDbTo.GENEID;
+import static org.sing_group.uniprot_id_mapping.UniProtDbTo.UNIPROTKB;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.sing_group.uniprot_id_mapping.IdShard;
+import org.sing_group.uniprot_id_mapping.UniProtIdLocalMapper;
+
+public class ShardedIdMapperTest {
+  private static final File SOURCE = new File("src/test/resources/DROME_7227_idmapping_subset.dat");
+
+  @Test
+  public void testShardedServersMatchLocalMapper() throws IOException {
+    UniProtIdLocalMapper localMapper = new UniProtIdLocalMapper(SOURCE);
+    List<String> accessions = asList("P32234", "P81928", "O77134", "Q7KN62", "P92177", "UNKNOWN");
+    List<String> flyBaseIds = asList("FBgn0010339", "FBgn0010340", "FBgn0000000");
+
+    List<UniProtIdMappingServer> servers = new ArrayList<>();
+    List<String> urls = new ArrayList<>();
+    try {
+      for (int i = 0; i < 3; i++) {
+        UniProtIdLocalMapper shardMapper = new UniProtIdLocalMapper(SOURCE, false, new IdShard(i, 3));
+        UniProtIdMappingServer server = new UniProtIdMappingServer(
+          shardMapper, new InetSocketAddress("localhost", 0), 2, 16, 1000
+        ).start();
+        servers.add(server);
+        urls.add("http://localhost:" + server.getAddress().getPort());
+
+        // Each shard has all the mappings of the accessions it owns
+        for (String accession : accessions) {
+          if (IdShard.shardOf(accession, 3) == i) {
+            Assert.assertEquals(
+              localMapper.mapIds(UNIPROTKB_AC_ID, GENEID, accession),
+              shardMapper.mapIds(UNIPROTKB_AC_ID, GENEID, accession)
+            );
+          }
+        }
+      }
+
+      try (ShardedIdMapper mapper = ShardedIdMapper.ofServers(urls)) {
+        Assert.assertEquals(
+          localMapper.mapIds(UNIPROTKB_AC_ID, GENEID, accessions), mapper.mapIds(UNIPROTKB_AC_ID, GENEID, accessions)
+        );
+        Assert.assertEquals(
+          localMapper.mapIds(FLYBASE, UNIPROTKB, flyBaseIds), mapper.mapIds(FLYBASE, UNIPROTKB, flyBaseIds)
+        );
+      }
+    } finally {
+      servers.forEach(UniProtIdMappingServer::close);
+    }
+  }
+
+  @Test
+  public void testSnapshotsRecordTheirShard() throws IOException {
+    Path directory = Files.createTempDirectory("uniprot-shard-test");
+    Path shardSnapshot = directory.resolve("shard-1.snapshot");
+    Path fullSnapshot = directory.resolve("full.snapshot");
+    try {
+      IdShard shard = new IdShard(1, 3);
+      UniProtIdLocalMapper built = UniProtIdLocalMapper.load(SOURCE, shardSnapshot, false, shard);
+      UniProtIdLocalMapper loaded = UniProtIdLocalMapper.load(SOURCE, shardSnapshot, false, new IdShard(1, 3));
+      Assert.assertEquals(shard, built.getShard());
+      Assert.assertEquals(shard, loaded.getShard());
+      Assert.assertEquals(shard, UniProtIdLocalMapper.map(shardSnapshot, false).getShard());
+
+      assertSnapshotRejected(shardSnapshot, new IdShard(0, 3));
+      assertSnapshotRejected(shardSnapshot, null);
+
+      UniProtIdLocalMapper.load(SOURCE, fullSnapshot, false, null);
+      Assert.assertNull(UniProtIdLocalMapper.load(fullSnapshot, false).getShard());
+      assertSnapshotRejected(fullSnapshot, shard);
+    } finally {
+      Files.deleteIfExists(shardSnapshot);
+      Files.deleteIfExists(fullSnapshot);
+      Files.delete(directory);
+    }
+  }
+
+  private static void assertSnapshotRejected(Path snapshot, IdShard shard) throws IOException {
+    try {
+      UniProtIdLocalMapper.load(SOURCE, snapshot, false, shard);
+      Assert.fail("The snapshot of a different shard must be rejected");
+    } catch (IllegalArgumentException e) {
+      Assert.assertTrue(e.getMessage().contains(snapshot.toString()));
+    }
+  }
+}
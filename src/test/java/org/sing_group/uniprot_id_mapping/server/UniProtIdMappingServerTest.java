@@ -0,0 +1,168 @@
+/*
+ * #%L
+ * UniProt ID Mapping
+ * %%
+ * Copyright (C) 2024 Hugo López-Fernández
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+package org.sing_group.uniprot_id_mapping.server;
+
+import static java.util.Arrays.asList;
+import static org.sing_group.uniprot_id_mapping.UniProtDbFrom.FLYBASE;
+import static org.sing_group.uniprot_id_mapping.UniProtDbFrom.UNIPROTKB_AC_ID;
+import static org.sing_group.uniprot_id_mapping.UniProtDbTo.GENEID;
+import static org.sing_group.uniprot_id_mapping.UniProtDbTo.UNIPROTKB;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Scanner;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.sing_group.uniprot_id_mapping.UniProtDbFrom;
+import org.sing_group.uniprot_id_mapping.UniProtDbTo;
+import org.sing_group.uniprot_id_mapping.UniProtIdLocalMapper;
+import org.sing_group.uniprot_id_mapping.UniProtIdMapper;
+
+public class UniProtIdMappingServerTest {
+
+  @Test
+  public void testMapThroughServer() throws IOException {
+    UniProtIdLocalMapper localMapper = new UniProtIdLocalMapper(
+      new File("src/test/resources/DROME_7227_idmapping_subset.dat")
+    );
+
+    try (
+      UniProtIdMappingServer server = new UniProtIdMappingServer(
+        localMapper, new InetSocketAddress("localhost", 0), 2, 16, 1000
+      ).start()
+    ) {
+      String url = "http://localhost:" + server.getAddress().getPort();
+      HttpIdMapper mapper = new HttpIdMapper(url);
+
+      List<String> ids = asList("FBgn0010339", "FBgn0010340", "FBgn0000000");
+      Assert.assertEquals(localMapper.mapIds(FLYBASE, UNIPROTKB, ids), mapper.mapIds(FLYBASE, UNIPROTKB, ids));
+      Assert.assertEquals(
+        localMapper.mapIds(UNIPROTKB_AC_ID, GENEID, "P32234"), mapper.mapIds(UNIPROTKB_AC_ID, GENEID, "P32234")
+      );
+
+      try (
+        InputStream metrics = new URL(url + "/metrics").openStream();
+        Scanner scanner = new Scanner(metrics, "UTF-8")
+      ) {
+        String text = scanner.useDelimiter("\\A").next();
+        Assert.assertTrue(text, text.contains("uniprot_map_requests_total 2\n"));
+        Assert.assertTrue(text, text.contains("uniprot_map_ids_total 4\n"));
+      }
+    }
+  }
+
+  @Test
+  public void testOverloadedServerRejectsEveryEndpoint() throws Exception {
+    CountDownLatch started = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    UniProtIdMapper blockingMapper = new UniProtIdMapper() {
+      @Override
+      public Map<String, List<String>> mapIds(UniProtDbFrom from, UniProtDbTo to, List<String> ids) {
+        started.countDown();
+        try {
+          release.await();
+        } catch (InterruptedException e) {
+          throw new RuntimeException(e);
+        }
+
+        return new HashMap<>();
+      }
+    };
+
+    try (
+      UniProtIdMappingServer server = new UniProtIdMappingServer(
+        blockingMapper, new InetSocketAddress("localhost", 0), 1, 1, 1000
+      ).start()
+    ) {
+      String url = "http://localhost:" + server.getAddress().getPort();
+      String mapUrl = url + "/map?from=FlyBase&to=UniProtKB";
+      CompletableFuture<Integer> running = CompletableFuture.supplyAsync(() -> post(mapUrl));
+      Assert.assertTrue(started.await(10, TimeUnit.SECONDS));
+      CompletableFuture<Integer> queued = CompletableFuture.supplyAsync(() -> post(mapUrl));
+      for (int i = 0; i < 1000 && server.getQueuedRequests() == 0; i++) {
+        Thread.sleep(10);
+      }
+
+      Assert.assertEquals(503, get(url + "/map"));
+      Assert.assertEquals(503, get(url + "/health"));
+      Assert.assertEquals(503, get(url + "/metrics"));
+
+      release.countDown();
+      Assert.assertEquals(200, (int) running.get(10, TimeUnit.SECONDS));
+      Assert.assertEquals(200, (int) queued.get(10, TimeUnit.SECONDS));
+
+      // The worker may still be finishing the last exchange after its response was sent
+      int health = get(url + "/health");
+      for (int i = 0; i < 1000 && health == 503; i++) {
+        Thread.sleep(10);
+        health = get(url + "/health");
+      }
+      Assert.assertEquals(200, health);
+    } finally {
+      release.countDown();
+    }
+  }
+
+  private static int get(String url) throws IOException {
+    HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+    connection.setReadTimeout(10_000);
+    try {
+      return connection.getResponseCode();
+    } finally {
+      connection.disconnect();
+    }
+  }
+
+  private static int post(String url) {
+    try {
+      HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+      connection.setRequestMethod("POST");
+      connection.setDoOutput(true);
+      try (OutputStream body = connection.getOutputStream()) {
+        body.write("FBgn0010339\n".getBytes("UTF-8"));
+      }
+      try {
+        return connection.getResponseCode();
+      } finally {
+        connection.disconnect();
+      }
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+}